@@ -78,6 +78,14 @@ public class WarwickPlus {
         }
         System.out.println("\nFinished Loading...");
 
+        credits.freezeGraph(); // cast graph doesn't change much after loading
+        credits.trackStars(ratings); // star lists on the main screen come from the index from now on
+
+        ItemSimilarity similarity = new ItemSimilarity(ratings);
+        similarity.build();
+        ratings.addChangeListener(similarity); // only films with changed ratings are worked out again
+        FilmScreen.setSimilarity(similarity);
+
         setHomescreen(frame.getContentPane());
         
     }
@@ -18,6 +18,7 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 import javax.swing.JTextPane;
+import javax.swing.SwingUtilities;
 import javax.swing.border.TitledBorder;
 import javax.swing.event.MouseInputListener;
 import javax.swing.text.BadLocationException;
@@ -30,12 +31,20 @@ import stores.Company;
 import stores.Credits;
 import stores.Crew;
 import stores.Genre;
+import stores.ItemSimilarity;
 import stores.Movies;
 import utils.Constants;
 import utils.DisplayImage;
 import utils.IsoSearch;
 
 public class FilmScreen {
+    private static ItemSimilarity similarity = null; // set once the ratings have loaded
+    private static final int similarCount = 5;
+
+    public static void setSimilarity(ItemSimilarity itemSimilarity) {
+        similarity = itemSimilarity;
+    }
+
     public static void createPanel(JPanel panel, int filmID, Movies movies, Credits credits) {
         System.out.println("Film screen --> ID: " + filmID);
         panel.removeAll();
@@ -282,18 +291,79 @@ public class FilmScreen {
         }
         stats.setForeground(Constants.fontColor);
         stats.setBackground(Constants.highlight);
-        statsPanel.setBounds(5, (int) (panel.getHeight() * 0.2) + 60, (int) (panel.getWidth() * 0.4) - 10, (int) (panel.getHeight() * 0.4) + 5);
-        statsScroll.setMinimumSize(new Dimension((int) (panel.getWidth() * 0.4) - 25, (int) (panel.getHeight() * 0.4) - 30));
-        statsScroll.setPreferredSize(new Dimension((int) (panel.getWidth() * 0.4) - 25, (int) (panel.getHeight() * 0.4) - 30));
-        statsScroll.getViewport().setMinimumSize(new Dimension((int) (panel.getWidth() * 0.4) - 25, (int) (panel.getHeight() * 0.4) - 30));
-        statsScroll.getViewport().setPreferredSize(new Dimension((int) (panel.getWidth() * 0.4) - 25, (int) (panel.getHeight() * 0.4) - 30));
+        statsPanel.setBounds(5, (int) (panel.getHeight() * 0.2) + 60, (int) (panel.getWidth() * 0.4) - 10, (int) (panel.getHeight() * 0.25));
+        statsScroll.setMinimumSize(new Dimension((int) (panel.getWidth() * 0.4) - 25, (int) (panel.getHeight() * 0.25) - 35));
+        statsScroll.setPreferredSize(new Dimension((int) (panel.getWidth() * 0.4) - 25, (int) (panel.getHeight() * 0.25) - 35));
+        statsScroll.getViewport().setMinimumSize(new Dimension((int) (panel.getWidth() * 0.4) - 25, (int) (panel.getHeight() * 0.25) - 35));
+        statsScroll.getViewport().setPreferredSize(new Dimension((int) (panel.getWidth() * 0.4) - 25, (int) (panel.getHeight() * 0.25) - 35));
         statsScroll.setBorder(null);
-        stats.setSize(new Dimension((int) (panel.getWidth() * 0.4) - 25, (int) (panel.getHeight() * 0.4) - 10));
+        stats.setSize(new Dimension((int) (panel.getWidth() * 0.4) - 25, (int) (panel.getHeight() * 0.25) - 15));
         stats.setEditable(false);
         statsPanel.setBorder(statsBorder);
         statsPanel.add(statsScroll);
         System.out.println("\tStats/Key Infomation built");
 
+        //Add films that users who liked this one also liked
+        TitledBorder similarBorder;
+        similarBorder = BorderFactory.createTitledBorder(BorderFactory.createLineBorder(Constants.fontColor), "Users Also Liked");
+        similarBorder.setTitleJustification(TitledBorder.CENTER);
+        similarBorder.setTitleColor(Constants.fontColor);
+        JPanel similar = new JPanel();
+        similar.setForeground(Constants.fontColor);
+        similar.setBackground(Constants.highlight);
+        similar.setBounds(5, (int) (panel.getHeight() * 0.45) + 65, (int) (panel.getWidth() * 0.4) - 10, (int) (panel.getHeight() * 0.15));
+        similar.setBorder(similarBorder);
+
+        int[] similarIDs = similarity == null ? new int[0] : similarity.getSimilarMovies(filmID, similarCount);
+        int shown = 0;
+        for (int i = 0; i < similarIDs.length; i++) {
+            int similarID = similarIDs[i];
+            String similarTitle = movies.getTitle(similarID);
+            if (similarTitle == null) {
+                continue;
+            }
+            JPanel tmpPanel = new JPanel();
+            JLabel tmpLabel = new JLabel(similarTitle, JLabel.CENTER);
+            tmpLabel.setForeground(Constants.fontColor);
+            tmpPanel.setBackground(Constants.background);
+            tmpPanel.add(tmpLabel);
+            tmpPanel.addMouseListener(new MouseInputListener() {
+                @Override
+                public void mouseClicked(MouseEvent e) {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            FilmScreen.createPanel(panel, similarID, movies, credits);
+                        }
+                    });
+                }
+                @Override
+                public void mousePressed(MouseEvent e) {}
+                @Override
+                public void mouseReleased(MouseEvent e) {}
+                @Override
+                public void mouseEntered(MouseEvent e) {}
+                @Override
+                public void mouseExited(MouseEvent e) {}
+                @Override
+                public void mouseDragged(MouseEvent e) {}
+                @Override
+                public void mouseMoved(MouseEvent e) {}
+            });
+            similar.add(tmpPanel);
+            shown++;
+        }
+        if (shown == 0) {
+            similar.setLayout(new GridBagLayout());
+            JPanel tmpPanel = new JPanel();
+            JLabel tmpLabel = new JLabel("No similar films found", JLabel.CENTER);
+            tmpLabel.setForeground(Constants.fontColor);
+            tmpPanel.setBackground(Constants.highlight);
+            tmpPanel.add(tmpLabel);
+            similar.add(tmpPanel);
+        }
+        System.out.println("\tUsers Also Liked built");
+
         //Add Genres section
         TitledBorder genresBorder;
         genresBorder = BorderFactory.createTitledBorder(BorderFactory.createLineBorder(Constants.fontColor), "Genres");
@@ -617,6 +687,7 @@ public class FilmScreen {
         panel.add(tagline);
         panel.add(overview);
         panel.add(statsPanel);
+        panel.add(similar);
         panel.add(genres);
         panel.add(languages);
         panel.add(collection);
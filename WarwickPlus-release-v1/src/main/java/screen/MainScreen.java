@@ -9,6 +9,7 @@ import javax.swing.*;
 import javax.swing.border.*;
 
 import stores.*;
+import structures.PackedRatings;
 import utils.*;
 
 public class MainScreen {
@@ -345,13 +346,16 @@ public class MainScreen {
         resultsPanel.removeAll();
         resultsPanel.setLayout(new BoxLayout(resultsPanel, BoxLayout.Y_AXIS));
         resultsPanel.setSize(scrollPane.getWidth()-60, myMovies.length * (itemHeight + ((new JSeparator()).getHeight())));
+
+        // One batched query for every movie rather than one per movie
+        PackedRatings rangeRatings = ratings.getMovieRatingsBetween(myMovies, start, end);
     
         for (int i = 0; i < myMovies.length; i ++) {
             JPanel resultItem = new JPanel();
             resultItem.setSize(scrollPane.getWidth()-60, itemHeight);
 
             String resultString = "";
-            float[] currentRatings = ratings.getMovieRatingsBetween(myMovies[i], start, end);
+            float[] currentRatings = rangeRatings.getRatings(i);
             if (currentRatings.length == 0) {
                 resultString += "No ratings for the movie '" + movies.getTitle(myMovies[i]) + "' were found!";
             }
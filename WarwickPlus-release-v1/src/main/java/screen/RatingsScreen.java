@@ -186,8 +186,7 @@ class RecentMoviesRunnable implements Runnable {
             if (filmNameString == null){
                 filmNameString = "Unknown Film";
             } else {
-                float[] movieRatings = ratings.getMovieRatings(results[i]);
-                if (movieRatings == null || movieRatings.length == 0) {
+                if (ratings.getMovieRatingCount(results[i]) == 0) {
                     filmNameString = filmNameString + " (No ratings)";
                 } else {
                     filmNameString = filmNameString + " (" + new DecimalFormat("0.00").format(ratings.getMovieAverageRatings(results[i])) + "★)";
@@ -304,7 +303,7 @@ class MostRatedUsersRunnable implements Runnable {
             JPanel resultItem = new JPanel();
             resultItem.setSize(scrollPane.getWidth() - 40, itemHeight);
 
-            String resultString = "UID: " + userResults[i] + "\t " + new DecimalFormat("0.00").format(ratings.getUserAverageRatings(userResults[i])) + "★ (" + ratings.getUserRatings(userResults[i]).length + ")";
+            String resultString = "UID: " + userResults[i] + "\t " + new DecimalFormat("0.00").format(ratings.getUserAverageRatings(userResults[i])) + "★ (" + ratings.getUserRatingCount(userResults[i]) + ")";
 
             JTextArea title = new JTextArea(resultString);
             title.setBounds(0, (itemHeight * i), resultsPanel.getWidth(), itemHeight);
@@ -413,7 +412,7 @@ class TopRatedMoviesRunnable implements Runnable {
             if (filmNameString == null){
                 filmNameString = "Unknown Film";
             } else {
-                filmNameString = "  " + filmNameString + " (" + ratings.getMovieRatings(movieResults[i]).length + " ratings)  ";
+                filmNameString = "  " + filmNameString + " (" + ratings.getMovieRatingCount(movieResults[i]) + " ratings)  ";
             }
             JLabel textLabel = new JLabel(filmNameString);
 
@@ -1,5 +1,7 @@
 package stores;
 
+import java.util.Objects;
+
 import interfaces.ICast;
 
 public class Cast implements interfaces.ICast  {
@@ -79,6 +81,22 @@ public class Cast implements interfaces.ICast  {
         return ((Integer) id).compareTo(o.getID());
     }
 
+    // Two Cast objects are equal if they describe the same credit, Credits makes new ones on each call
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Cast)) return false;
+        Cast c = (Cast) o;
+        return elementID == c.elementID && gender == c.gender && id == c.id && order == c.order
+            && Objects.equals(character, c.character) && Objects.equals(creditID, c.creditID)
+            && Objects.equals(name, c.name) && Objects.equals(profilePath, c.profilePath);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(elementID, creditID, id);
+    }
+
     @Override
     public String toString() {
         return "Element ID: " + elementID + "\tName: " + name + "\tCharacter: " + character + "\tGender: " + gender + "\tCredit ID" + creditID + "\tID: " + id + "\tOrder: " + order + "\tProfile Path: " + profilePath;
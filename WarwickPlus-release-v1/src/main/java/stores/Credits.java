@@ -1,9 +1,11 @@
 package stores;
 
+import java.util.Arrays;
+
 import interfaces.ICredits;
 import structures.*;
 
-public class Credits implements ICredits {
+public class Credits implements ICredits, Ratings.ChangeListener {
 
     HashMap<Integer, Film> filmData; // Hashmap containing film ID as key and Film class as value
     HashMap<Integer, CastData> castData; // Hashmap containing cast ID as key and CastData class as value
@@ -12,51 +14,196 @@ public class Credits implements ICredits {
     // ArrayLists containing all unique IDs of films, cast members, and crew members respectively
     ArrayList<Integer> uFilms, uCast, uCrew;
 
-    // Graph containing the links between cast members based on movies they starred in
-    // Cast members in the same movies will have a link meaning they are adjacent in the graph
+    // Graph linking each film to its cast members, cast members in the same film are one hop apart
     // Used for findDistance function
     MyGraph castConnections = new MyGraph();
 
-    // Film class contains information on the cast and crew for each film
+    // Distances from a few well connected cast members, gives quick bounds on findDistance
+    private static final int NUM_LANDMARKS = 16;
+    LandmarkIndex landmarks = new LandmarkIndex(castConnections);
+
+    // Recent findDistance results, only used while the graph is at the version they were found at
+    private static final int PATH_CACHE_SIZE = 1024;
+    PathCache pathCache = new PathCache(PATH_CACHE_SIZE);
+
+    // Star index, see trackStars. Kept up to date for one Ratings store, guarded by starLock
+    private static final float STAR_RATING = 4; // average a film needs to count towards being a star
+    private static final int STAR_FILMS = 3; // films with that average needed to be a star
+    private final Object starLock = new Object();
+    private Ratings starRatings; // null if not tracking
+    private IntIntMap highFilms; // film ID -> 1 if its average rating is at least STAR_RATING
+    private IntIntMap highCount; // cast ID -> number of their films with that average
+    private IntIntMap starPos; // cast ID -> position in starList
+    private int[] starList;
+    private int numStars;
+    private int starVersion; // bumped whenever someone becomes or stops being a star
+    private int[] superStars; // last findSuperStarCastID result, for the versions below
+    private int superStarVersion, superGraphVersion;
+
+    // One record per cast or crew ID, shared by all their credits instead of repeated in each one
+    class Person{
+        private int id;
+        private String name;
+        private int gender;
+        private String profilePath;
+
+        Person(int id, String name, int gender, String profilePath){
+            this.id = id;
+            this.name = name;
+            this.gender = gender;
+            this.profilePath = profilePath;
+        }
+    }
+
+    // Person records, cast and crew IDs are looked up separately. Strings many credits share
+    // (characters, jobs, departments) are kept once in strings and stored as their pool numbers
+    ArrayList<Person> people;
+    IntIntMap castPeople, crewPeople; // cast or crew ID -> index in people
+    StringPool strings;
+
+    // Film class contains the cast and crew for each film as compact role tables, one entry per credit
+    // Cast and Crew objects are only made when asked for, from these and the person records
     class Film{
-        private Cast[] cast;
-        private Crew[] crew;
+        private int[] castPerson, castOrder, castElementID, castCharacter;
+        private String[] castCreditID; // different for every credit, so not pooled
+        private int[] crewPerson, crewJob, crewDepartment;
+        private String[] crewElementID;
 
         Film(Cast[] cast, Crew[] crew){
-            this.cast = cast;
-            this.crew = crew;
+            castPerson = new int[cast.length];
+            castOrder = new int[cast.length];
+            castElementID = new int[cast.length];
+            castCharacter = new int[cast.length];
+            castCreditID = new String[cast.length];
+            for(int i = 0; i < cast.length; i++){
+                castPerson[i] = personOf(castPeople, cast[i].getID(), cast[i].getName(), cast[i].getGender(), cast[i].getProfilePath());
+                castOrder[i] = cast[i].getOrder();
+                castElementID[i] = cast[i].getElementID();
+                castCharacter[i] = strings.intern(cast[i].getCharacter());
+                castCreditID[i] = cast[i].getCreditID();
+            }
+
+            crewPerson = new int[crew.length];
+            crewJob = new int[crew.length];
+            crewDepartment = new int[crew.length];
+            crewElementID = new String[crew.length];
+            for(int i = 0; i < crew.length; i++){
+                crewPerson[i] = personOf(crewPeople, crew[i].getID(), crew[i].getName(), crew[i].getGender(), crew[i].getProfilePath());
+                crewJob[i] = strings.intern(crew[i].getJob());
+                crewDepartment[i] = strings.intern(crew[i].getDepartment());
+                crewElementID[i] = crew[i].getElementID();
+            }
+        }
+
+        public int castSize(){
+            return castPerson.length;
+        }
+
+        public int crewSize(){
+            return crewPerson.length;
+        }
+
+        public int getCastID(int i){
+            return people.get(castPerson[i]).id;
+        }
+
+        public int getCrewID(int i){
+            return people.get(crewPerson[i]).id;
+        }
+
+        // Position of a cast member in this film, -1 if not in it
+        public int findCast(int castID){
+            for(int i = 0; i < castPerson.length; i++){
+                if(getCastID(i) == castID) return i;
+            }
+            return -1;
+        }
+
+        // Position of a crew member in this film, -1 if not in it
+        public int findCrew(int crewID){
+            for(int i = 0; i < crewPerson.length; i++){
+                if(getCrewID(i) == crewID) return i;
+            }
+            return -1;
+        }
+
+        public Cast getCast(int i){
+            Person p = people.get(castPerson[i]);
+            return new Cast(castElementID[i], strings.get(castCharacter[i]), castCreditID[i], p.gender, p.id, p.name, castOrder[i], p.profilePath);
+        }
+
+        public Crew getCrew(int i){
+            Person p = people.get(crewPerson[i]);
+            return new Crew(crewElementID[i], strings.get(crewDepartment[i]), p.gender, p.id, strings.get(crewJob[i]), p.name, p.profilePath);
         }
 
         public Cast[] getCast(){
+            Cast[] cast = new Cast[castPerson.length];
+            for(int i = 0; i < cast.length; i++){
+                cast[i] = getCast(i);
+            }
             return cast;
         }
 
         public Crew[] getCrew(){
+            Crew[] crew = new Crew[crewPerson.length];
+            for(int i = 0; i < crew.length; i++){
+                crew[i] = getCrew(i);
+            }
             return crew;
         }
 
     }
 
-    // CastData contains Cast class reference as well as an ArrayList of all movies starred in
+    // Index of the person record for an ID, making one if it's the first time the ID is seen
+    private int personOf(IntIntMap index, int id, String name, int gender, String profilePath){
+        int p = index.get(id);
+        if(p == -1){
+            p = people.size();
+            people.add(new Person(id, name, gender, profilePath));
+            index.put(id, p);
+        }
+        return p;
+    }
+
+    // CastData contains the cast member's person record as well as an ArrayList of all movies starred in
     class CastData{
-        private Cast cast;
+        private Person person;
         private ArrayList<Integer> movieIDs;
         
-        CastData(Cast cast){
-            this.cast = cast;
+        CastData(int castID){
+            this.person = people.get(castPeople.get(castID));
             movieIDs = new ArrayList<Integer>();
         }
 
+        public int getID(){
+            return person.id;
+        }
+
+        public String getName(){
+            return person.name;
+        }
+
+        // Cast object for their credit in the first of their films
         public Cast getInfo(){
-            return cast;
+            Film film = filmData.get(movieIDs.get(0));
+            int i = film.findCast(person.id);
+            if(i == -1) return new Cast(-1, null, null, person.gender, person.id, person.name, -1, person.profilePath);
+            return film.getCast(i);
         }
 
         public void addMovie(int id){
-            if(!movieIDs.contains(id)) movieIDs.add(id);
+            if(!movieIDs.contains(id)){
+                movieIDs.add(id);
+                castFilmChanged(person.id, id, 1);
+            }
         }
 
         public void removeMovie(int id){
-            movieIDs.removeIndex(movieIDs.indexOf(id));
+            int i = movieIDs.indexOf(id);
+            if(i == -1) return; // already removed, e.g. for a second role in the same film
+            movieIDs.removeIndex(i);
+            castFilmChanged(person.id, id, -1);
         }
 
         public ArrayList<Integer> getMovieIDs(){
@@ -65,18 +212,30 @@ public class Credits implements ICredits {
 
     }
 
-    // CrewData contains Crew class reference as well as an ArrayList of all movies involved in
+    // CrewData contains the crew member's person record as well as an ArrayList of all movies involved in
     class CrewData{
-        private Crew crew;
+        private Person person;
         private ArrayList<Integer> movieIDs;
         
-        CrewData(Crew crew){
-            this.crew = crew;
+        CrewData(int crewID){
+            this.person = people.get(crewPeople.get(crewID));
             movieIDs = new ArrayList<Integer>();
         }
 
+        public int getID(){
+            return person.id;
+        }
+
+        public String getName(){
+            return person.name;
+        }
+
+        // Crew object for their credit in the first of their films
         public Crew getInfo(){
-            return crew;
+            Film film = filmData.get(movieIDs.get(0));
+            int i = film.findCrew(person.id);
+            if(i == -1) return new Crew(null, null, person.gender, person.id, null, person.name, person.profilePath);
+            return film.getCrew(i);
         }
 
         public void addMovie(int id){
@@ -105,6 +264,11 @@ public class Credits implements ICredits {
         uFilms = new ArrayList<Integer>();
         uCast = new ArrayList<Integer>();
         uCrew = new ArrayList<Integer>();
+
+        people = new ArrayList<Person>();
+        castPeople = new IntIntMap();
+        crewPeople = new IntIntMap();
+        strings = new StringPool();
     }
 
     /**
@@ -118,7 +282,10 @@ public class Credits implements ICredits {
     @Override
     public boolean add(Cast[] cast, Crew[] crew, int id) {
 
-        // Create new Film class
+        // Make sure the star index knows whether this film is highly rated before its cast is added
+        refreshHighFilm(id);
+
+        // Create new Film class, this also makes person records for anyone new
         Film film = new Film(cast, crew);
         filmData.put(id, film);
 
@@ -135,22 +302,22 @@ public class Credits implements ICredits {
         // Iterate through cast and add to castData hashmap
         for(Cast c : cast){
             if(castData.get(c.getID()) == null){ // Doesnt exist, create new
-                CastData cData = new CastData(c);
+                CastData cData = new CastData(c.getID());
                 cData.addMovie(id);
                 castData.put(c.getID(), cData);
                 uCast.add(c.getID());
             } else {
                 castData.get(c.getID()).addMovie(id);
             }
-
-            // Add cast to graph
-            castConnections.addNode(c.getID(), castIDs);
         }
 
+        // Add film and its cast to graph
+        castConnections.addFilm(id, castIDs);
+
         // Iterate through crew and add to crewData hashmap
         for(Crew c : crew){
             if(crewData.get(c.getID()) == null){ // Doesnt exist, create new
-                CrewData cData = new CrewData(c);
+                CrewData cData = new CrewData(c.getID());
                 cData.addMovie(id);
                 crewData.put(c.getID(), cData);
                 uCrew.add(c.getID());
@@ -174,23 +341,25 @@ public class Credits implements ICredits {
 
         Film fData = filmData.get(id);
 
-        castConnections.removeNode(id);
+        castConnections.removeFilm(id);
 
-        for(Cast c : fData.getCast()){
-            CastData cData = castData.get(c.getID());
+        for(int i = 0; i < fData.castSize(); i++){
+            CastData cData = castData.get(fData.getCastID(i));
+            if(cData == null) continue; // already gone through an earlier role in this film
             cData.removeMovie(id);
             if(cData.getMovieIDs().size() == 0){ // remove from unique cast list if only movie is removed
-                int cid = cData.getInfo().getID();
+                int cid = cData.getID();
                 uCast.removeIndex(uCast.indexOf(cid));
                 castData.put(cid, null); // remove from hashmap
             }
         }
 
-        for(Crew c : fData.getCrew()){
-            CrewData cData = crewData.get(c.getID());
+        for(int i = 0; i < fData.crewSize(); i++){
+            CrewData cData = crewData.get(fData.getCrewID(i));
+            if(cData == null) continue; // already gone through an earlier job on this film
             cData.removeMovie(id);
             if(cData.getMovieIDs().size() == 0){ // remove from unique crew list if only movie is removed
-                int cid = cData.getInfo().getID();
+                int cid = cData.getID();
                 uCrew.removeIndex(uCrew.indexOf(cid));
                 crewData.put(cid, null); // remove from hashmap
             }
@@ -303,7 +472,7 @@ public class Credits implements ICredits {
     public int sizeOfCast(int filmID) {
         if(filmData.get(filmID) == null) return -1;
 
-        return filmData.get(filmID).getCast().length;
+        return filmData.get(filmID).castSize();
     }
 
     /**
@@ -317,7 +486,7 @@ public class Credits implements ICredits {
     public int sizeofCrew(int filmID) {
         if(filmData.get(filmID) == null) return -1;
 
-        return filmData.get(filmID).getCrew().length;
+        return filmData.get(filmID).crewSize();
     }
 
     /**
@@ -342,7 +511,7 @@ public class Credits implements ICredits {
         
         if(castData.get(castID) == null) return null;
 
-        return castData.get(castID).getInfo().getName();
+        return castData.get(castID).getName();
     }
 
     /**
@@ -356,7 +525,7 @@ public class Credits implements ICredits {
     public String getCrewName(int crewID) {
         if(crewData.get(crewID) == null) return null;
 
-        return crewData.get(crewID).getInfo().getName();
+        return crewData.get(crewID).getName();
     }
 
     /**
@@ -463,6 +632,13 @@ public class Credits implements ICredits {
      */
     @Override
     public int[] findStarCastID(Ratings ratings) {
+        if(ratings == starRatings){ // Use the star index
+            ratings.flushChanges();
+            synchronized(starLock){
+                return Arrays.copyOf(starList, numStars);
+            }
+        }
+
         ArrayList<Integer> starsArrList = new ArrayList<Integer>();
 
         // Iterate through cast
@@ -511,47 +687,149 @@ public class Credits implements ICredits {
         // Use findStarCastID to find stars
         int[] starCastArr = findStarCastID(ratings);
 
-        ArrayList<Integer> superStarsArrList = new ArrayList<Integer>();
+        if(ratings == starRatings){ // Reuse the last result if no stars or films have changed since
+            synchronized(starLock){
+                if(superStars != null && superStarVersion == starVersion && superGraphVersion == castConnections.version()){
+                    return superStars.clone();
+                }
+                starCastArr = Arrays.copyOf(starList, numStars);
+                superStars = castConnections.withTwoCloseOthers(starCastArr);
+                superStarVersion = starVersion;
+                superGraphVersion = castConnections.version();
+                return superStars.clone();
+            }
+        }
 
-        // Iterate through stars
-        for(int i = 0; i < starCastArr.length; i++){
-            
-            int currentStar = starCastArr[i];
-            int numOfMoviesWithStars = 0;
+        // A star is a superstar if findDistance to at least two other stars has length 1 or 2,
+        // worked out for every star in one pass over the graph instead of a search per pair
+        return castConnections.withTwoCloseOthers(starCastArr);
+    }
 
-            // Iterate through stars again to compare stars with other stars
-            for(int j = 0; j < starCastArr.length; j++){
-                int otherStar = starCastArr[j];
+    /**
+     * Starts keeping an index of stars for a ratings store, so findStarCastID and
+     * findSuperStarCastID with that store no longer scan every cast member. Each
+     * cast member has a count of their films with an average of at least 4, which
+     * changes when a film's average crosses 4 (told by the store in batches as a
+     * change listener) and when credits are added or removed. Replaces any store
+     * that was being tracked before
+     *
+     * @param ratings The ratings for all films
+     */
+    public void trackStars(Ratings ratings) {
+        Ratings previous;
+        synchronized(starLock){
+            previous = starRatings;
+            starRatings = ratings;
+            highFilms = new IntIntMap();
+            highCount = new IntIntMap();
+            starPos = new IntIntMap();
+            starList = new int[16];
+            numStars = 0;
+            starVersion++;
+            superStars = null;
+
+            for(int i = 0; i < uFilms.size(); i++){
+                int m = uFilms.get(i);
+                if(ratings.getMovieAverageRatings(m) >= STAR_RATING) highFilms.put(m, 1);
+            }
+
+            for(int i = 0; i < uCast.size(); i++){
+                int c = uCast.get(i);
+                ArrayList<Integer> movies = castData.get(c).getMovieIDs();
+                for(int j = 0; j < movies.size(); j++){
+                    if(highFilms.containsKey(movies.get(j))) bumpStar(c, 1);
+                }
+            }
+        }
 
-                if(otherStar == currentStar) continue; //ignore self
+        // Outside starLock, delivering a batch takes the store's lock and then starLock
+        if(previous != ratings){
+            if(previous != null) previous.removeChangeListener(this);
+            ratings.addChangeListener(this);
+        }
+    }
 
-                // Use findDistance method to determine if stars starred in the same movie
-                int movieDistance = findDistance(currentStar, otherStar).length;
+    /**
+     * Moves films whose average has crossed 4 in or out of the star counts of their
+     * cast. Called by the tracked ratings store
+     *
+     * @param movieIDs The movies whose ratings changed
+     * @param userIDs  The users whose ratings changed
+     */
+    @Override
+    public void ratingsChanged(int[] movieIDs, int[] userIDs) {
+        for(int i = 0; i < movieIDs.length; i++){
+            refreshHighFilm(movieIDs[i]);
+        }
+    }
 
-                // If they did, increment counter
-                if(movieDistance > 0 && movieDistance <= 2) numOfMoviesWithStars++;
+    // Checks a film's average against STAR_RATING and updates its cast's counts if it has crossed
+    private void refreshHighFilm(int movieID) {
+        synchronized(starLock){
+            if(starRatings == null) return;
+            boolean high = starRatings.getMovieAverageRatings(movieID) >= STAR_RATING;
+            if(high == highFilms.containsKey(movieID)) return;
+
+            int delta;
+            if(high){
+                highFilms.put(movieID, 1);
+                delta = 1;
+            } else {
+                highFilms.remove(movieID);
+                delta = -1;
             }
 
-            // If counter >= 2, then star is a superstar
-            if(numOfMoviesWithStars >= 2){
-                superStarsArrList.add(currentStar);
+            Film film = filmData.get(movieID);
+            if(film == null) return;
+            IntIntMap seen = new IntIntMap(); // someone can have more than one role
+            for(int i = 0; i < film.castSize(); i++){
+                int castID = film.getCastID(i);
+                if(seen.containsKey(castID)) continue;
+                seen.put(castID, 1);
+                CastData cData = castData.get(castID);
+                if(cData != null && cData.getMovieIDs().contains(movieID)) bumpStar(castID, delta);
             }
-
         }
+    }
 
-        int[] returnArr = new int[superStarsArrList.size()];
-
-        for(int i = 0; i < returnArr.length; i++){
-            returnArr[i] = superStarsArrList.get(i);
+    // Called when a film is added to or removed from a cast member's films
+    private void castFilmChanged(int castID, int movieID, int delta) {
+        synchronized(starLock){
+            if(starRatings != null && highFilms.containsKey(movieID)) bumpStar(castID, delta);
         }
+    }
 
-        return returnArr;
+    // Changes a cast member's count of highly rated films, adding or removing them as a star. Caller holds starLock
+    private void bumpStar(int castID, int delta) {
+        int before = Math.max(0, highCount.get(castID));
+        int after = before + delta;
+        if(after == 0){
+            highCount.remove(castID);
+        } else {
+            highCount.put(castID, after);
+        }
+
+        if(before < STAR_FILMS && after >= STAR_FILMS){
+            if(numStars == starList.length) starList = Arrays.copyOf(starList, numStars * 2);
+            starPos.put(castID, numStars);
+            starList[numStars++] = castID;
+            starVersion++;
+        } else if(before >= STAR_FILMS && after < STAR_FILMS){
+            int pos = starPos.get(castID); // swap the last star into its place
+            int last = starList[--numStars];
+            starList[pos] = last;
+            starPos.put(last, pos);
+            starPos.remove(castID);
+            starVersion++;
+        }
     }
 
     /**
      * Finds the distance between cast members A and B, by looking at common cast
      * members in films. For example, if A and B were in different movies, but both
      * started in a movie with cast member C, then there distance would be 1.
+     * Recent results are cached until the credits change, so the array returned
+     * may be shared and must not be changed.
      * 
      * @param castIDA The starting cast member
      * @param castIDB The finishing cast member
@@ -563,7 +841,128 @@ public class Credits implements ICredits {
      */
     @Override
     public int[] findDistance(int castIDA, int castIDB) {
-        return castConnections.findDistance(castIDA, castIDB); // Use findDistance method in MyGraph class
+        if(castIDA == castIDB) return new int[]{castIDB};
+
+        // Any add or remove changes the graph version, so older results are ignored
+        int version = castConnections.version();
+        int[] path = pathCache.get(castIDA, castIDB, version);
+        if(path != null) return path;
+
+        if(landmarks.lowerBound(castIDA, castIDB) == LandmarkIndex.UNREACHABLE){ // Different components, no need to search
+            path = new int[0];
+        } else if(landmarks.upperBound(castIDA, castIDB) == 1){ // Only a landmark and someone in a film with it can be 1 apart through it
+            path = new int[]{castIDB};
+        } else {
+            path = castConnections.findDistance(castIDA, castIDB); // Use findDistance method in MyGraph class
+        }
+
+        pathCache.put(castIDA, castIDB, version, path);
+        return path;
+    }
+
+    /**
+     * Finds how many hops a cast member is from every other cast member, where one
+     * hop is a shared film, as in findDistance
+     * 
+     * @param castID The cast member to start from
+     * @return The distances, histogram and cast members at each level, or null if
+     *         the cast member cannot be found
+     */
+    public HopDistances getCastDistances(int castID) {
+        return castConnections.allDistances(castID);
+    }
+
+    /**
+     * Gets everyone within a number of hops of a cast member
+     * 
+     * @param castID The cast member
+     * @param hops   The most hops away
+     * @return Their cast IDs, nearest first, not including castID. If the cast
+     *         member cannot be found, return an empty array
+     */
+    public int[] getCastWithinHops(int castID, int hops) {
+        HopDistances distances = castConnections.allDistances(castID);
+        return distances == null ? new int[0] : distances.getWithin(hops);
+    }
+
+    /**
+     * Estimates the average degrees of separation between cast members, from
+     * searches out of a random sample of them run in parallel
+     * 
+     * @param samples How many cast members to search from
+     * @return The mean number of hops between connected cast members, 0 if there
+     *         are none
+     */
+    public double getAverageSeparation(int samples) {
+        long[] histogram = castConnections.sampleSeparation(samples, 126L);
+        long pairs = 0, total = 0;
+        for(int h = 1; h < histogram.length; h++){
+            pairs += histogram[h];
+            total += h * histogram[h];
+        }
+        return pairs == 0 ? 0 : (double)total / pairs;
+    }
+
+    /**
+     * Gets the number of separate groups of cast members, where everyone in a
+     * group is linked to everyone else by some chain of shared films
+     * 
+     * @return The number of groups
+     */
+    public int getCastComponentCount() {
+        return castConnections.componentCount();
+    }
+
+    /**
+     * Gets the size of every separate group of cast members
+     * 
+     * @return The number of cast members in each group, biggest first
+     */
+    public int[] getCastComponentSizes() {
+        return castConnections.componentSizes();
+    }
+
+    /**
+     * Gets the size of the group a cast member is in
+     * 
+     * @param castID The cast member
+     * @return The number of cast members in their group, including them, or 0 if
+     *         the cast member cannot be found
+     */
+    public int getCastComponentSize(int castID) {
+        return castConnections.componentSize(castID);
+    }
+
+    /**
+     * Smallest number of hops findDistance could return between two cast members,
+     * from the landmark distances. Takes O(landmarks)
+     *
+     * @return The bound, LandmarkIndex.UNREACHABLE if there is no connection, or 0
+     *         if the graph has changed since the landmarks were built
+     */
+    public int castDistanceLowerBound(int castIDA, int castIDB) {
+        return landmarks.lowerBound(castIDA, castIDB);
+    }
+
+    /**
+     * Largest number of hops findDistance could return between two cast members,
+     * from the landmark distances. Takes O(landmarks)
+     *
+     * @return The bound, or LandmarkIndex.UNKNOWN if no landmark reaches both or
+     *         the graph has changed since the landmarks were built
+     */
+    public int castDistanceUpperBound(int castIDA, int castIDB) {
+        return landmarks.upperBound(castIDA, castIDB);
+    }
+
+    /**
+     * Packs the cast graph into flat arrays so findDistance runs faster, then
+     * rebuilds the landmark distances in parallel. Films added or removed
+     * afterwards still work, call again after a large batch of changes
+     */
+    public void freezeGraph() {
+        castConnections.freeze();
+        landmarks.build(NUM_LANDMARKS);
     }
 
 }
@@ -1,5 +1,7 @@
 package stores;
 
+import java.util.Objects;
+
 import interfaces.ICrew;
 
 public class Crew implements interfaces.ICrew {
@@ -67,6 +69,22 @@ public class Crew implements interfaces.ICrew {
         return ((Integer) id).compareTo(o.getID());
     }
 
+    // Two Crew objects are equal if they describe the same credit, Credits makes new ones on each call
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Crew)) return false;
+        Crew c = (Crew) o;
+        return gender == c.gender && id == c.id && Objects.equals(elementID, c.elementID)
+            && Objects.equals(department, c.department) && Objects.equals(job, c.job)
+            && Objects.equals(name, c.name) && Objects.equals(profilePath, c.profilePath);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(elementID, id);
+    }
+
     @Override
     public String toString() {
         return "Element ID: " + elementID + "\tName: " + name + "\tDepartment : " + department + "\tJob: " + job + "\tGender: " + gender + "\tID: " + id + "\tProfile Path: " + profilePath;
@@ -0,0 +1,452 @@
+package stores;
+
+import java.util.Arrays;
+
+import structures.IntIntMap;
+import structures.SparseRatingMatrix;
+import structures.TopKHeap;
+import utils.Parallel;
+
+/*
+ * Item-item recommendations ("users who liked this also liked") over a Ratings store.
+ * Similarity is adjusted cosine: each rating has its user's average taken off first, so users
+ * who rate everything highly don't make every pair of films look alike. It is then shrunk by
+ * the number of users who rated both films, coRatings / (coRatings + SHRINKAGE), so pairs only
+ * a few users have seen together rank below well supported ones.
+ * Only the best K neighbours of each film are kept, in flat arrays (row i's neighbours are at
+ * i*K .. i*K + counts[i]), so asking for the films similar to X is O(K).
+ * When a rating changes (ratingChanged, or a batch from Ratings when registered with
+ * addChangeListener) the movie and user are queued, and a background worker brings the tables
+ * up to date from a SparseRatingMatrix copy of the store, so the thread reporting the change
+ * never does the work. A changed user's average moves, which changes the centred ratings and
+ * norm of every film they rated (the affected films), and with them the similarity of those
+ * films to every film sharing a rater with them. So the affected films and every film sharing
+ * a rater with one are worked out again, the same way build() does, and the result matches a
+ * full build. If that is more than a quarter of the films everything is worked out again.
+ * New tables are filled in on the side and swapped in holding this object, so queries only
+ * read them. Builds and updates hold updateLock, one at a time.
+*/
+public class ItemSimilarity implements Ratings.ChangeListener {
+
+    public static final int DEFAULT_NEIGHBOURS = 20;
+    private static final float SHRINKAGE = 10f;
+    private static final int MIN_BLOCK = 16; // fewest movies worth handing to another thread
+
+    private final Ratings ratings;
+    private final int k;
+    private volatile boolean built;
+    private final Object updateLock = new Object(); // one build or update at a time
+
+    // The tables, only replaced whole while holding this object
+    private IntIntMap movieIndex; // movie ID -> row in the tables
+    private int[] movieIDs; // row -> movie ID
+    private int numMovies;
+    private int[] neighbours; // k slots per row, most similar first
+    private float[] scores; // similarity of each neighbour
+    private int[] counts; // slots used in each row
+
+    // Changes waiting for the worker, guarded by pendingLock
+    private final Object pendingLock = new Object();
+    private IntIntMap pendingMovies, pendingUsers;
+    private boolean updateQueued; // a worker is running or about to
+
+    // Ratings of one copy of the store with each user's average taken off, and each movie's norm
+    private static class Centred {
+        SparseRatingMatrix matrix;
+        float[] rowDev, colDev; // lined up with the matrix's row and column values
+        float[] norms;
+    }
+
+    /**
+     * Creates a recommender keeping DEFAULT_NEIGHBOURS neighbours per film. Nothing
+     * is worked out until build() is called or the first query is made
+     *
+     * @param ratings The ratings to recommend from
+     */
+    public ItemSimilarity(Ratings ratings) {
+        this(ratings, DEFAULT_NEIGHBOURS);
+    }
+
+    /**
+     * Creates a recommender keeping up to k neighbours per film
+     *
+     * @param ratings The ratings to recommend from
+     * @param k       The number of neighbours kept for each film
+     */
+    public ItemSimilarity(Ratings ratings, int k) {
+        if(k < 1) throw new IllegalArgumentException("k must be at least 1");
+        this.ratings = ratings;
+        this.k = k;
+        this.built = false;
+        movieIndex = new IntIntMap();
+        movieIDs = new int[0];
+        neighbours = new int[0];
+        scores = new float[0];
+        counts = new int[0];
+        pendingMovies = new IntIntMap();
+        pendingUsers = new IntIntMap();
+    }
+
+    private static float similarity(double dot, float normA, float normB, int coRatings){
+        if(normA == 0 || normB == 0) return 0;
+        return (float)(dot / ((double)normA * normB) * coRatings / (coRatings + SHRINKAGE));
+    }
+
+    // Takes each user's average off their ratings, down the rows and the columns, in parallel
+    private static Centred centre(SparseRatingMatrix matrix){
+        int numUsers = matrix.numUsers();
+        int n = matrix.numMovies();
+        int[] rowOffsets = matrix.getRowOffsets();
+        float[] rowValues = matrix.getRowValues();
+        int[] colOffsets = matrix.getColOffsets();
+        int[] colUsers = matrix.getColUsers();
+        float[] colValues = matrix.getColValues();
+
+        Centred c = new Centred();
+        c.matrix = matrix;
+        float[] userMean = new float[numUsers];
+        float[] rowDev = new float[rowValues.length];
+        Parallel.forRange(0, numUsers, 256, (from, to) -> {
+            for(int u = from; u < to; u++){
+                int start = rowOffsets[u];
+                int end = rowOffsets[u + 1];
+                double sum = 0;
+                for(int p = start; p < end; p++) sum += rowValues[p];
+                float mean = (float)(sum / (end - start));
+                userMean[u] = mean;
+                for(int p = start; p < end; p++) rowDev[p] = rowValues[p] - mean;
+            }
+        });
+
+        // Same again down the columns, along with each movie's norm
+        float[] colDev = new float[colValues.length];
+        float[] norms = new float[n];
+        Parallel.forRange(0, n, 256, (from, to) -> {
+            for(int m = from; m < to; m++){
+                double sq = 0;
+                for(int p = colOffsets[m]; p < colOffsets[m + 1]; p++){
+                    float d = colValues[p] - userMean[colUsers[p]];
+                    colDev[p] = d;
+                    sq += d * d;
+                }
+                norms[m] = (float)Math.sqrt(sq);
+            }
+        });
+
+        c.rowDev = rowDev;
+        c.colDev = colDev;
+        c.norms = norms;
+        return c;
+    }
+
+    // Works out the neighbours of the given movie indexes into the tables, in parallel blocks that
+    // walk movie -> users -> movies to count co-ratings
+    private void computeRows(Centred c, int[] rows, int numRows, int[] outNeighbours, float[] outScores, int[] outCounts){
+        SparseRatingMatrix matrix = c.matrix;
+        int n = matrix.numMovies();
+        int[] rowOffsets = matrix.getRowOffsets();
+        int[] rowMovies = matrix.getRowMovies();
+        int[] colOffsets = matrix.getColOffsets();
+        int[] colUsers = matrix.getColUsers();
+        float[] rowDev = c.rowDev;
+        float[] colDev = c.colDev;
+        float[] norms = c.norms;
+
+        // Each block needs O(movies) scratch space, so blocks are kept to a few per thread
+        int block = Math.max(MIN_BLOCK, numRows / (Parallel.threads() * 8) + 1);
+        Parallel.forRange(0, numRows, block, (from, to) -> {
+            double[] dot = new double[n];
+            int[] co = new int[n];
+            int[] touched = new int[n];
+            TopKHeap heap = new TopKHeap(k);
+
+            for(int r = from; r < to; r++){
+                int m = rows[r];
+                int numTouched = 0;
+                for(int p = colOffsets[m]; p < colOffsets[m + 1]; p++){
+                    int u = colUsers[p];
+                    float d = colDev[p];
+                    for(int q = rowOffsets[u]; q < rowOffsets[u + 1]; q++){
+                        int j = rowMovies[q];
+                        if(j == m) continue;
+                        if(co[j] == 0) touched[numTouched++] = j;
+                        co[j]++;
+                        dot[j] += d * rowDev[q];
+                    }
+                }
+
+                for(int t = 0; t < numTouched; t++){
+                    int j = touched[t];
+                    float sim = similarity(dot[j], norms[m], norms[j], co[j]);
+                    if(sim > 0) heap.offer(matrix.movieID(j), sim);
+                    dot[j] = 0;
+                    co[j] = 0;
+                }
+                outCounts[m] = heap.drain(outNeighbours, outScores, m * k);
+            }
+        });
+    }
+
+    // Swaps in new tables, rows in the matrix's movie order
+    private synchronized void swapTables(SparseRatingMatrix matrix, int[] newNeighbours, float[] newScores, int[] newCounts){
+        int n = matrix.numMovies();
+        IntIntMap index = new IntIntMap(Math.max(16, n));
+        int[] ids = new int[n];
+        for(int m = 0; m < n; m++){
+            ids[m] = matrix.movieID(m);
+            index.put(ids[m], m);
+        }
+        movieIndex = index;
+        movieIDs = ids;
+        numMovies = n;
+        neighbours = newNeighbours;
+        scores = newScores;
+        counts = newCounts;
+    }
+
+    /**
+     * Works out the neighbours of every film from scratch, from a sparse copy of
+     * the ratings. Movies are split into blocks that run in parallel
+     */
+    public void build() {
+        synchronized(updateLock){
+            Centred c = centre(ratings.toSparseMatrix());
+            int n = c.matrix.numMovies();
+            int[] rows = new int[n];
+            for(int m = 0; m < n; m++) rows[m] = m;
+
+            int[] outNeighbours = new int[n * k];
+            float[] outScores = new float[n * k];
+            int[] outCounts = new int[n];
+            computeRows(c, rows, n, outNeighbours, outScores, outCounts);
+            swapTables(c.matrix, outNeighbours, outScores, outCounts);
+            built = true;
+        }
+    }
+
+    // Brings the tables up to date after ratings of the given movies and by the given users
+    // changed. Caller holds updateLock
+    private void update(int[] changedMovies, int[] changedUsers){
+        if(!built) return; // the first build will see them anyway
+
+        Centred c = centre(ratings.toSparseMatrix());
+        SparseRatingMatrix matrix = c.matrix;
+        int n = matrix.numMovies();
+        int[] rowOffsets = matrix.getRowOffsets();
+        int[] rowMovies = matrix.getRowMovies();
+        int[] colOffsets = matrix.getColOffsets();
+        int[] colUsers = matrix.getColUsers();
+
+        // Films whose centred ratings changed: the changed films and everything a changed user rated
+        boolean[] affected = new boolean[n];
+        int[] affectedList = new int[16];
+        int numAffected = 0;
+        for(int i = 0; i < changedMovies.length + changedUsers.length; i++){
+            int from, to;
+            if(i < changedMovies.length){
+                int m = matrix.movieIndex(changedMovies[i]);
+                if(m < 0) continue; // no ratings left, so the film drops out of the tables
+                from = -1;
+                to = m;
+            } else {
+                int u = matrix.userIndex(changedUsers[i - changedMovies.length]);
+                if(u < 0) continue;
+                from = rowOffsets[u];
+                to = rowOffsets[u + 1];
+            }
+            for(int q = from; q < to; q++){
+                int m = from == -1 ? to : rowMovies[q];
+                if(affected[m]) continue;
+                affected[m] = true;
+                if(numAffected == affectedList.length) affectedList = Arrays.copyOf(affectedList, numAffected * 2);
+                affectedList[numAffected++] = m;
+                if(from == -1) break;
+            }
+        }
+
+        // Rows to work out again: the affected films, every film sharing a rater with one, and
+        // films new to the tables
+        boolean[] dirty = new boolean[n];
+        boolean[] userSeen = new boolean[matrix.numUsers()];
+        int numDirty = 0;
+        for(int a = 0; a < numAffected; a++){
+            int m = affectedList[a];
+            if(!dirty[m]){
+                dirty[m] = true;
+                numDirty++;
+            }
+            for(int p = colOffsets[m]; p < colOffsets[m + 1]; p++){
+                int u = colUsers[p];
+                if(userSeen[u]) continue;
+                userSeen[u] = true;
+                for(int q = rowOffsets[u]; q < rowOffsets[u + 1]; q++){
+                    if(!dirty[rowMovies[q]]){
+                        dirty[rowMovies[q]] = true;
+                        numDirty++;
+                    }
+                }
+            }
+        }
+        IntIntMap oldIndex;
+        int[] oldNeighbours, oldCounts;
+        float[] oldScores;
+        synchronized(this){
+            oldIndex = movieIndex;
+            oldNeighbours = neighbours;
+            oldScores = scores;
+            oldCounts = counts;
+        }
+        for(int m = 0; m < n; m++){
+            if(!dirty[m] && oldIndex.get(matrix.movieID(m)) < 0){
+                dirty[m] = true;
+                numDirty++;
+            }
+        }
+
+        // Past a quarter of the films it's cheaper to just do them all
+        boolean all = numDirty * 4 > n;
+        int[] rows = new int[all ? n : numDirty];
+        int numRows = 0;
+        int[] outNeighbours = new int[n * k];
+        float[] outScores = new float[n * k];
+        int[] outCounts = new int[n];
+        for(int m = 0; m < n; m++){
+            if(all || dirty[m]){
+                rows[numRows++] = m;
+                continue;
+            }
+            int old = oldIndex.get(matrix.movieID(m));
+            System.arraycopy(oldNeighbours, old * k, outNeighbours, m * k, oldCounts[old]);
+            System.arraycopy(oldScores, old * k, outScores, m * k, oldCounts[old]);
+            outCounts[m] = oldCounts[old];
+        }
+        computeRows(c, rows, numRows, outNeighbours, outScores, outCounts);
+        swapTables(matrix, outNeighbours, outScores, outCounts);
+    }
+
+    // Queues changes for the worker, starting one if none is running
+    private void queue(int[] changedMovies, int[] changedUsers){
+        synchronized(pendingLock){
+            for(int i = 0; i < changedMovies.length; i++) pendingMovies.put(changedMovies[i], 1);
+            for(int i = 0; i < changedUsers.length; i++) pendingUsers.put(changedUsers[i], 1);
+            if(updateQueued) return;
+            updateQueued = true;
+        }
+
+        Thread worker = new Thread(this::runUpdates, "item-similarity-update");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    // Takes the queued changes and applies them, returning false if there were none.
+    // Caller holds updateLock, so a batch taken is always applied before anyone else gets the lock
+    private boolean applyPending(boolean worker){
+        int[] changedMovies, changedUsers;
+        synchronized(pendingLock){
+            if(pendingMovies.size() == 0 && pendingUsers.size() == 0){
+                if(worker) updateQueued = false;
+                return false;
+            }
+            changedMovies = pendingMovies.keys();
+            changedUsers = pendingUsers.keys();
+            pendingMovies.clear();
+            pendingUsers.clear();
+        }
+        update(changedMovies, changedUsers);
+        return true;
+    }
+
+    // The worker, keeps applying batches until none are left
+    private void runUpdates(){
+        boolean more = true;
+        while(more){
+            synchronized(updateLock){
+                more = applyPending(true);
+            }
+        }
+    }
+
+    /**
+     * Waits until every change told to the recommender so far is in the tables,
+     * applying any still queued on the calling thread
+     */
+    public void waitForUpdates() {
+        synchronized(updateLock){
+            applyPending(false);
+        }
+    }
+
+    /**
+     * Tells the recommender that a user's rating of a film was added, changed or
+     * removed. The tables are brought up to date in the background, see
+     * waitForUpdates
+     *
+     * @param userID  The user ID
+     * @param movieID The movie ID
+     */
+    public void ratingChanged(int userID, int movieID) {
+        queue(new int[]{movieID}, new int[]{userID});
+    }
+
+    /**
+     * Takes a batch of changes from Ratings and queues them for the background
+     * worker, so the delivering thread doesn't wait on the update
+     *
+     * @param movieIDs The movies whose ratings changed
+     * @param userIDs  The users whose ratings changed
+     */
+    @Override
+    public void ratingsChanged(int[] movieIDs, int[] userIDs) {
+        queue(movieIDs, userIDs);
+    }
+
+    // The first query builds the tables if build() hasn't been called yet
+    private void ensureBuilt(){
+        if(built) return;
+        synchronized(updateLock){
+            if(!built) build();
+        }
+    }
+
+    /**
+     * Gets the films most similar to a given film, i.e. the ones users who liked
+     * this film also liked
+     *
+     * @param movieID The movie ID
+     * @param num     The maximum number of films to return
+     * @return The movie IDs, most similar first. If the film cannot be found or
+     *         has no similar films, return an empty array
+     */
+    public int[] getSimilarMovies(int movieID, int num) {
+        ensureBuilt();
+        synchronized(this){
+            int i = movieIndex.get(movieID);
+            if(i < 0 || num <= 0) return new int[0];
+            return Arrays.copyOfRange(neighbours, i * k, i * k + Math.min(num, counts[i]));
+        }
+    }
+
+    /**
+     * Gets the similarity scores of the films most similar to a given film, in
+     * the same order as getSimilarMovies
+     *
+     * @param movieID The movie ID
+     * @param num     The maximum number of scores to return
+     * @return The scores, between 0 and 1. If the film cannot be found or has no
+     *         similar films, return an empty array
+     */
+    public float[] getSimilarityScores(int movieID, int num) {
+        ensureBuilt();
+        synchronized(this){
+            int i = movieIndex.get(movieID);
+            if(i < 0 || num <= 0) return new float[0];
+            return Arrays.copyOfRange(scores, i * k, i * k + Math.min(num, counts[i]));
+        }
+    }
+
+    // Number of neighbours kept per film
+    public int getNeighbourCount() {
+        return k;
+    }
+
+}
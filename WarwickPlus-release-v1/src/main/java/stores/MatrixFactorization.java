@@ -0,0 +1,270 @@
+package stores;
+
+import java.util.Random;
+import java.util.concurrent.atomic.DoubleAdder;
+
+import structures.SparseRatingMatrix;
+import structures.TopKHeap;
+import utils.Parallel;
+
+/*
+ * Predicts the rating a user would give a film using matrix factorization with biases:
+ *     prediction = mean + userBias + movieBias + userFactors . movieFactors
+ * Trained by stochastic gradient descent over a copy of the ratings held in float arrays.
+ * Each epoch visits the ratings in a new random order, split across every core with no locking
+ * at all (Hogwild). Two threads only clash when they update the same user or movie at once,
+ * which is rare with sparse ratings, and a lost update just costs a little accuracy.
+ * Users and movies are stored by the dense indexes of the SparseRatingMatrix, with each one's
+ * factors next to each other in one flat array so an update reads a single cache-friendly run.
+*/
+public class MatrixFactorization {
+
+    public static final int DEFAULT_FACTORS = 20;
+    private static final float DEFAULT_LEARNING_RATE = 0.01f;
+    private static final float DEFAULT_REGULARISATION = 0.05f;
+    private static final int MIN_CHUNK = 4096; // fewest ratings worth handing to another thread
+    private static final float MIN_RATING = 0f;
+    private static final float MAX_RATING = 5f;
+
+    private final Ratings ratings;
+    private final int factors;
+    private final float learningRate, regularisation;
+    private final long seed;
+
+    // Training data, one entry per rating
+    private SparseRatingMatrix matrix;
+    private int[] tripleUsers, tripleMovies;
+    private float[] tripleValues;
+
+    // The model
+    private float mean;
+    private float[] userBias, movieBias;
+    private float[] userFactors, movieFactors; // factors per user/movie, laid out one after another
+
+    // Stats for each epoch of the last call to train
+    private float[] epochRMSE;
+    private double[] epochThroughput; // ratings per second per core
+
+    /**
+     * Creates a model with DEFAULT_FACTORS factors and the default learning rate
+     * and regularisation. Nothing is trained until train is called
+     *
+     * @param ratings The ratings to train from
+     */
+    public MatrixFactorization(Ratings ratings) {
+        this(ratings, DEFAULT_FACTORS, DEFAULT_LEARNING_RATE, DEFAULT_REGULARISATION, 126L);
+    }
+
+    /**
+     * Creates a model with the given settings
+     *
+     * @param ratings        The ratings to train from
+     * @param factors        Number of hidden factors per user and movie
+     * @param learningRate   Step size of each gradient descent update
+     * @param regularisation How strongly factors and biases are pulled towards 0
+     * @param seed           Seed for the starting factors and shuffles
+     */
+    public MatrixFactorization(Ratings ratings, int factors, float learningRate, float regularisation, long seed) {
+        if(factors < 1) throw new IllegalArgumentException("factors must be at least 1");
+        this.ratings = ratings;
+        this.factors = factors;
+        this.learningRate = learningRate;
+        this.regularisation = regularisation;
+        this.seed = seed;
+        this.epochRMSE = new float[0];
+        this.epochThroughput = new double[0];
+    }
+
+    // Copies the ratings out and starts the model from small random factors
+    private void initialise(Random random){
+        matrix = ratings.toSparseMatrix();
+        int numUsers = matrix.numUsers();
+        int numMovies = matrix.numMovies();
+        int[] rowOffsets = matrix.getRowOffsets();
+
+        int count = matrix.size();
+        tripleUsers = new int[count];
+        tripleMovies = matrix.getRowMovies();
+        tripleValues = matrix.getRowValues();
+        double sum = 0;
+        for(int u = 0; u < numUsers; u++){
+            for(int p = rowOffsets[u]; p < rowOffsets[u + 1]; p++){
+                tripleUsers[p] = u;
+                sum += tripleValues[p];
+            }
+        }
+        mean = count == 0 ? 0 : (float)(sum / count);
+
+        userBias = new float[numUsers];
+        movieBias = new float[numMovies];
+        userFactors = new float[numUsers * factors];
+        movieFactors = new float[numMovies * factors];
+        float scale = 0.1f / (float)Math.sqrt(factors);
+        for(int i = 0; i < userFactors.length; i++) userFactors[i] = (float)random.nextGaussian() * scale;
+        for(int i = 0; i < movieFactors.length; i++) movieFactors[i] = (float)random.nextGaussian() * scale;
+    }
+
+    /**
+     * Trains the model from scratch on the current ratings, recording the RMSE and
+     * throughput of every epoch for getEpochRMSE and getEpochThroughput. Ratings made
+     * while training are picked up by the next call
+     *
+     * @param epochs Number of passes over the ratings
+     * @return The training RMSE after the last epoch, or 0 if there are no ratings
+     */
+    public synchronized float train(int epochs) {
+        Random random = new Random(seed);
+        initialise(random);
+
+        int count = tripleValues.length;
+        int threads = Parallel.threads();
+        int chunk = Math.max(MIN_CHUNK, count / (threads * 4) + 1);
+        int[] order = new int[count];
+        for(int i = 0; i < count; i++) order[i] = i;
+
+        epochRMSE = new float[Math.max(0, epochs)];
+        epochThroughput = new double[Math.max(0, epochs)];
+
+        for(int epoch = 0; epoch < epochs; epoch++){
+            // Fisher-Yates shuffle so each epoch sees the ratings in a different order
+            for(int i = count - 1; i > 0; i--){
+                int j = random.nextInt(i + 1);
+                int tmp = order[i];
+                order[i] = order[j];
+                order[j] = tmp;
+            }
+
+            long start = System.nanoTime();
+            Parallel.forRange(0, count, chunk, (from, to) -> {
+                for(int i = from; i < to; i++){
+                    update(order[i]);
+                }
+            });
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            epochRMSE[epoch] = rmse();
+            epochThroughput[epoch] = seconds > 0 ? count / seconds / threads : 0;
+        }
+
+        return epochs > 0 ? epochRMSE[epochs - 1] : rmse();
+    }
+
+    // One gradient descent step on a single rating. Runs unlocked on many threads at once
+    private void update(int index){
+        int u = tripleUsers[index];
+        int m = tripleMovies[index];
+        int uOff = u * factors;
+        int mOff = m * factors;
+
+        float dot = 0;
+        for(int f = 0; f < factors; f++){
+            dot += userFactors[uOff + f] * movieFactors[mOff + f];
+        }
+        float error = tripleValues[index] - (mean + userBias[u] + movieBias[m] + dot);
+
+        userBias[u] += learningRate * (error - regularisation * userBias[u]);
+        movieBias[m] += learningRate * (error - regularisation * movieBias[m]);
+        for(int f = 0; f < factors; f++){
+            float pu = userFactors[uOff + f];
+            float qm = movieFactors[mOff + f];
+            userFactors[uOff + f] += learningRate * (error * qm - regularisation * pu);
+            movieFactors[mOff + f] += learningRate * (error * pu - regularisation * qm);
+        }
+    }
+
+    // Root mean squared error over the training ratings
+    private float rmse(){
+        int count = tripleValues == null ? 0 : tripleValues.length;
+        if(count == 0) return 0;
+
+        DoubleAdder total = new DoubleAdder();
+        Parallel.forRange(0, count, MIN_CHUNK, (from, to) -> {
+            double sum = 0;
+            for(int i = from; i < to; i++){
+                float error = tripleValues[i] - predictIndex(tripleUsers[i], tripleMovies[i]);
+                sum += error * error;
+            }
+            total.add(sum);
+        });
+        return (float)Math.sqrt(total.sum() / count);
+    }
+
+    // Unclamped prediction for dense indexes, -1 meaning unknown
+    private float predictIndex(int u, int m){
+        float prediction = mean;
+        if(u >= 0) prediction += userBias[u];
+        if(m >= 0) prediction += movieBias[m];
+        if(u >= 0 && m >= 0){
+            int uOff = u * factors;
+            int mOff = m * factors;
+            for(int f = 0; f < factors; f++){
+                prediction += userFactors[uOff + f] * movieFactors[mOff + f];
+            }
+        }
+        return prediction;
+    }
+
+    /**
+     * Predicts the rating a user would give a film. A user or film that wasn't in
+     * the ratings when the model was trained just uses the biases that are known
+     *
+     * @param userID  The user ID
+     * @param movieID The movie ID
+     * @return The predicted rating between 0 and 5. If the model has not been
+     *         trained, return 0
+     */
+    public synchronized float predict(int userID, int movieID) {
+        if(matrix == null) return 0;
+        float prediction = predictIndex(matrix.userIndex(userID), matrix.movieIndex(movieID));
+        return Math.max(MIN_RATING, Math.min(MAX_RATING, prediction));
+    }
+
+    /**
+     * Gets the films with the highest predicted ratings for a user, leaving out
+     * the films they had already rated when the model was trained
+     *
+     * @param userID The user ID
+     * @param num    The maximum number of films to return
+     * @return The movie IDs, highest predicted rating first. If the user was not in
+     *         the trained ratings, return an empty array
+     */
+    public synchronized int[] recommendForUser(int userID, int num) {
+        if(matrix == null || num <= 0) return new int[0];
+        int u = matrix.userIndex(userID);
+        if(u < 0) return new int[0];
+
+        // The user's row is sorted by movie index, so rated films can be skipped in one pass
+        int[] rowOffsets = matrix.getRowOffsets();
+        int[] rowMovies = matrix.getRowMovies();
+        int p = rowOffsets[u];
+
+        TopKHeap heap = new TopKHeap(Math.min(num, matrix.numMovies())); // num can be far more than there are films
+        for(int m = 0; m < matrix.numMovies(); m++){
+            if(p < rowOffsets[u + 1] && rowMovies[p] == m){
+                p++;
+                continue;
+            }
+            heap.offer(matrix.movieID(m), predictIndex(u, m));
+        }
+
+        int[] recommended = new int[heap.size()];
+        heap.drain(recommended, null, 0);
+        return recommended;
+    }
+
+    /**
+     * Gets the training RMSE after each epoch of the last call to train
+     */
+    public synchronized float[] getEpochRMSE() {
+        return epochRMSE.clone();
+    }
+
+    /**
+     * Gets the training throughput of each epoch of the last call to train, in
+     * ratings per second per core
+     */
+    public synchronized double[] getEpochThroughput() {
+        return epochThroughput.clone();
+    }
+
+}
@@ -1,22 +1,152 @@
 package stores;
 
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 import interfaces.IRatings;
 import structures.*;
+import utils.Parallel;
 
 public class Ratings implements IRatings {
 
-    private int numOfRatings; // total number of ratings
+    private AtomicInteger numOfRatings; // total number of ratings
+
+    // Concurrent mode: writers lock the user's stripe, then the movie's stripe, then sharedLock
+    // (always in that order so they can't deadlock). Totals over every rating are kept per movie
+    // stripe (see Stripe), so a writer only updates the ones its movie's lock already guards and
+    // readers merge the stripes together. sharedLock only guards the rankings, and is held for
+    // O(log n) updates and O(log n + N) top N reads of them. When not concurrent there is one
+    // stripe, the locks are null and nothing is locked.
+    private final boolean concurrent;
+    private final StripedLock userLocks, movieLocks;
+    private final ReentrantLock sharedLock;
+
+    // Totals of the ratings of the movies in one movie stripe, guarded by that stripe's lock
+    class Stripe{
+        // Day, month and year totals, for charts over time
+        RollupCube rollups;
+        volatile int rollupVersion; // bumped whenever rollups changes
+
+        // KLL quantile sketch of every rating made in each month (keyed like the MONTH rollups), merged
+        // together to answer percentiles over a range of months. Sketches can't have a rating taken out,
+        // so months that lost one are listed in staleMonths and rebuilt on the next query.
+        HashMap<Integer, KllSketch> monthSketches;
+        IntIntMap staleMonths;
+
+        // HyperLogLog sketches of the distinct users and movies rated in each day and month (keyed like
+        // the DAY and MONTH rollups), merged together to count distinct IDs over any window.
+        // They count rating activity, so a rating that is later removed or changed still counts where it was made.
+        HashMap<Integer, HyperLogLog> dayUsers, dayMovies, monthUsers, monthMovies;
+
+        IntIntMap movieIDs; // every movie in the stripe
+        IntIntMap changedMovies, changedUsers; // changed since the last batch was delivered, only while there are listeners
+
+        Stripe(){
+            rollups = new RollupCube();
+            monthSketches = new HashMap<Integer, KllSketch>();
+            staleMonths = new IntIntMap();
+            dayUsers = new HashMap<Integer, HyperLogLog>();
+            dayMovies = new HashMap<Integer, HyperLogLog>();
+            monthUsers = new HashMap<Integer, HyperLogLog>();
+            monthMovies = new HashMap<Integer, HyperLogLog>();
+            movieIDs = new IntIntMap();
+            changedMovies = new IntIntMap();
+            changedUsers = new IntIntMap();
+        }
+    }
+    private final Stripe[] stripes;
+    private final IntIntMap[] userIDs; // every user in each user stripe, guarded by that stripe's lock
+
+    // Merged copy of every stripe's rollups that readers use in concurrent mode instead of locking
+    class RollupSnapshot{
+        int[] versions; // rollupVersion of each stripe when it was copied
+        RollupCube[] copies; // only read, see RollupCube.copy
+        RollupCube merged;
+    }
+    private volatile RollupSnapshot rollupSnapshot;
+
+    // IDs of all movies and users ordered by their number of ratings, most first
+    // Someone whose ratings are all removed stays in with a count of 0
+    private OrderStatisticTree mostRatedMovies, mostRatedUsers;
+
+    // Movies ordered by their weighted (bayesian) rating, kept up to date on every change
+    private OrderStatisticTree topRatedTree;
+    private float priorMean; // rating a movie is pulled towards when it has few ratings
+    private int priorWeight; // how many ratings the prior mean counts as
+
+    // Granularities for the rollup queries
+    public static final int DAY = RollupCube.DAY;
+    public static final int MONTH = RollupCube.MONTH;
+    public static final int YEAR = RollupCube.YEAR;
+    public static final int WEEK = 3; // seven day windows, only for the distinct count queries
+
+    // Movies ordered by recent activity. A rating made at time t adds 2^((t - now) / halfLife) to
+    // a movie's activity, so it halves every halfLife seconds. Every movie decays at the same rate,
+    // so the order never changes with time and only needs updating when a rating changes.
+    // Scores are stored as log2(sum of 2^(t / halfLife)) so they don't overflow.
+    private OrderStatisticTree trendingTree;
+    private long trendingHalfLife; // in seconds
+    private static final double MIN_TRENDING_ACTIVITY = 0.01; // less than this at the time asked is not trending
+
+    private static final int BATCH_CHUNK = 64; // movies per task in the batched range queries
+
+    // Versioned snapshots, off until enableSnapshots(). Every write is then appended to changeLog
+    // under sharedLock, and a snapshot is snapshotBase (a compacted snapshot at an earlier version)
+    // plus the log entries since. Only snapshot() reads the log, under snapshotLock, so writers never wait on it
+    private volatile RatingLog changeLog;
+    private RatingsSnapshot snapshotBase;
+    private final Object snapshotLock = new Object();
+    private static final int MIN_COMPACTION = 4096; // fewest changes worth merging into a new base
+
+    /*
+     * Receives batches of rating changes, see addChangeListener. Each movie and user changed since
+     * the last batch appears once however many times it changed. The arrays are shared between
+     * listeners, so they must not be changed.
+    */
+    public interface ChangeListener {
+        void ratingsChanged(int[] movieIDs, int[] userIDs);
+    }
+
+    // Movies and users changed since the last batch are kept in each stripe, see Stripe
+    private volatile ChangeListener[] listeners;
+    private final AtomicInteger pendingChanges;
+    private int changeBatchSize;
+    private final Object deliveryLock = new Object(); // batches are delivered one at a time, in order
 
-    // Contains IDs of all movies and users, in order of most ratings - multipurpose
-    private ArrayList<Integer> topMoviesArray, topUsersArray;
+    // Ratings are given in half steps between 0 and 5, so a histogram of 11 buckets covers every value
+    public static final int HISTOGRAM_BUCKETS = 11;
 
     /*
      * The RatingData class stores ratings for a single user or movie.
     */
     public class RatingData{
-        private float sumOfRatings; // stores total of ratings made, used for finding average
+        // Running totals, the count is size(). Kept as doubles so a float sum doesn't drift
+        // after many adds and removes
+        private double sumOfRatings; // stores total of ratings made, used for finding average
+        private double sumOfSquares; // stores total of squared ratings, used for finding variance
+
+        // Ratings with the mean taken off, and also divided by the standard deviation, in the same
+        // order as getUserRatings. Worked out on first use and dropped on the next write
+        private float[] centredCache, zScoreCache;
+
+        // Number of ratings in each half step bucket, e.g. histogram[7] is the number of 3.5 ratings
+        private int[] histogram;
+
+        // Score this movie is currently stored under in topRatedTree, only used for movies
+        private double weightedScore;
+        private boolean inTopRated;
+
+        // Day, month and year totals of this movie's ratings, created on first use, only used for movies
+        private RollupCube rollups;
+
+        // log2 activity score this movie is stored under in trendingTree, only used for movies
+        private double trendingScore = Double.NEGATIVE_INFINITY;
+
+        // Quantile sketch of this movie's ratings, rebuilt on the next query once a rating is taken out, only used for movies
+        private KllSketch sketch;
+        private boolean sketchStale;
         
         //stores ID of rater as key and a Rating class as value
         // e.g. if RatingData belonged to a userID, otherID's key would be a movieID and the value would be a rating.
@@ -27,6 +157,8 @@ public class Ratings implements IRatings {
 
         RatingData(){
             sumOfRatings = 0;
+            sumOfSquares = 0;
+            histogram = new int[HISTOGRAM_BUCKETS];
             otherIDs = new HashMap<Integer, Rating>();
             IDsTimeOrder = new ArrayList<Integer>();
         }
@@ -48,7 +180,11 @@ public class Ratings implements IRatings {
             rd.rating = rating;
             rd.timestamp = timestamp;
             otherIDs.put(id, rd);
+            centredCache = null;
+            zScoreCache = null;
             sumOfRatings += rating;
+            sumOfSquares += (double)rating * rating;
+            histogram[bucketOf(rating)]++;
 
             // Add to IDsTimeOrder array based on timestamp
             int arrSize = IDsTimeOrder.size();
@@ -69,8 +205,17 @@ public class Ratings implements IRatings {
 
         // Removing a rating
         public void remove(int id){
-            sumOfRatings -= otherIDs.get(id).rating;
+            float rating = otherIDs.get(id).rating;
+            sumOfRatings -= rating;
+            sumOfSquares -= (double)rating * rating;
+            histogram[bucketOf(rating)]--;
             otherIDs.remove(id);
+            centredCache = null;
+            zScoreCache = null;
+            if(otherIDs.size() == 0){ // start again from exactly 0 rather than keep any rounding left over
+                sumOfRatings = 0;
+                sumOfSquares = 0;
+            }
 
             for(int i = 0; i < IDsTimeOrder.size(); i++){
                 if(IDsTimeOrder.get(i) == id){
@@ -90,11 +235,80 @@ public class Ratings implements IRatings {
         }
 
         public float getAverageRating(){
-            return sumOfRatings/(float)size();
+            return (float)(sumOfRatings/size());
+        }
+
+        // Population variance from the running sums, no need to go through the ratings
+        public float getVariance(){
+            int n = size();
+            if(n == 0) return 0;
+            double mean = sumOfRatings / n;
+            double variance = sumOfSquares / n - mean * mean;
+            return variance < 0 ? 0 : (float)variance; // rounding can leave a tiny negative value
+        }
+
+        // Walks the 11 histogram buckets until the requested share of ratings has been passed
+        // Result is to the nearest half step, as that is the resolution of the histogram
+        public float getPercentile(float percentile){
+            int n = size();
+            if(n == 0) return 0;
+
+            int target = (int)Math.ceil(Math.max(0, Math.min(100, percentile)) / 100.0 * n);
+            if(target < 1) target = 1;
+
+            int seen = 0;
+            for(int i = 0; i < HISTOGRAM_BUCKETS; i++){
+                seen += histogram[i];
+                if(seen >= target) return i * 0.5f;
+            }
+            return (HISTOGRAM_BUCKETS - 1) * 0.5f;
+        }
+
+        // Fills the normalised caches if a write has dropped them
+        private void normalise(){
+            if(centredCache != null) return;
+
+            int n = IDsTimeOrder.size();
+            double mean = n == 0 ? 0 : sumOfRatings / n;
+            double stdDev = Math.sqrt(getVariance());
+            centredCache = new float[n];
+            zScoreCache = new float[n];
+            for(int i = 0; i < n; i++){
+                double centred = otherIDs.get(IDsTimeOrder.get(i)).rating - mean;
+                // flip order
+                centredCache[n-(i+1)] = (float)centred;
+                zScoreCache[n-(i+1)] = stdDev == 0 ? 0 : (float)(centred / stdDev);
+            }
+        }
+
+        public float[] getCentredRatings(){
+            normalise();
+            return Arrays.copyOf(centredCache, centredCache.length);
+        }
+
+        public float[] getZScores(){
+            normalise();
+            return Arrays.copyOf(zScoreCache, zScoreCache.length);
+        }
+
+        public int[] getHistogram(){
+            int[] copy = new int[HISTOGRAM_BUCKETS];
+            for(int i = 0; i < HISTOGRAM_BUCKETS; i++){
+                copy[i] = histogram[i];
+            }
+            return copy;
         }
 
     }
 
+    // Rounds a rating to its nearest half step bucket, clamped to the 0-5 range
+    private static int bucketOf(float rating){
+        int bucket = Math.round(rating * 2);
+        if(bucket < 0) return 0;
+        if(bucket >= HISTOGRAM_BUCKETS) return HISTOGRAM_BUCKETS - 1;
+        return bucket;
+    }
+
     private HashMap<Integer, RatingData> userRatings, movieRatings; // contains which users rated which movies, and vice versa 
     // user ratings: user id , (num of Ratings, movies seperated by commas)
 
@@ -103,11 +317,460 @@ public class Ratings implements IRatings {
      * initialise your data structures.
      */
     public Ratings() {
+        this(false);
+    }
+
+    /**
+     * Creates a Ratings data store that can optionally be used by several threads
+     * at once. In concurrent mode writes to different users and movies run in
+     * parallel, and the global rollup queries read a snapshot without waiting for
+     * writers
+     * 
+     * @param concurrent TRUE to make the store thread-safe
+     */
+    public Ratings(boolean concurrent) {
+        this.concurrent = concurrent;
+        if(concurrent){
+            // Same number of stripes as the hashmaps have buckets, so a stripe also guards its bucket
+            userLocks = new StripedLock(HashMap.BUCKETS);
+            movieLocks = new StripedLock(HashMap.BUCKETS);
+            sharedLock = new ReentrantLock();
+        } else {
+            userLocks = null;
+            movieLocks = null;
+            sharedLock = null;
+        }
+        int numStripes = concurrent ? HashMap.BUCKETS : 1;
+        stripes = new Stripe[numStripes];
+        userIDs = new IntIntMap[numStripes];
+        for(int s = 0; s < numStripes; s++){
+            stripes[s] = new Stripe();
+            userIDs[s] = new IntIntMap();
+        }
+
         userRatings = new HashMap<Integer, RatingData>();
         movieRatings = new HashMap<Integer, RatingData>();
-        numOfRatings = 0;
-        topMoviesArray = new ArrayList<Integer>();
-        topUsersArray = new ArrayList<Integer>();
+        numOfRatings = new AtomicInteger(0);
+        mostRatedMovies = new OrderStatisticTree();
+        mostRatedUsers = new OrderStatisticTree();
+        topRatedTree = new OrderStatisticTree();
+        priorMean = 3.5f;
+        priorWeight = 10;
+        trendingTree = new OrderStatisticTree();
+        trendingHalfLife = 7L * 24 * 60 * 60; // one week
+        listeners = new ChangeListener[0];
+        pendingChanges = new AtomicInteger(0);
+        changeBatchSize = 1024;
+    }
+
+    private void lockUser(int userID){
+        if(concurrent) userLocks.get(userID).lock();
+    }
+
+    private void unlockUser(int userID){
+        if(concurrent) userLocks.get(userID).unlock();
+    }
+
+    private void lockMovie(int movieID){
+        if(concurrent) movieLocks.get(movieID).lock();
+    }
+
+    private void unlockMovie(int movieID){
+        if(concurrent) movieLocks.get(movieID).unlock();
+    }
+
+    private void lockShared(){
+        if(concurrent) sharedLock.lock();
+    }
+
+    private void unlockShared(){
+        if(concurrent) sharedLock.unlock();
+    }
+
+    // Stripe an ID belongs to, the same for users and movies
+    private int stripeOf(int id){
+        return concurrent ? movieLocks.stripeOf(id) : 0;
+    }
+
+    private void lockStripe(int stripe){
+        if(concurrent) movieLocks.getStripe(stripe).lock();
+    }
+
+    private void unlockStripe(int stripe){
+        if(concurrent) movieLocks.getStripe(stripe).unlock();
+    }
+
+    // Gets the latest merged copy of the stripes' rollups. Only stripes that changed are copied
+    // again, and a stripe a writer holds keeps its old copy rather than waiting
+    private RollupCube rollupSnapshot(){
+        RollupSnapshot snap = rollupSnapshot;
+        boolean changed = snap == null;
+        for(int s = 0; s < stripes.length && !changed; s++){
+            changed = snap.versions[s] != stripes[s].rollupVersion;
+        }
+        if(!changed) return snap.merged;
+
+        RollupSnapshot next = new RollupSnapshot();
+        next.versions = snap == null ? new int[stripes.length] : snap.versions.clone();
+        next.copies = snap == null ? new RollupCube[stripes.length] : snap.copies.clone();
+        for(int s = 0; s < stripes.length; s++){
+            if(next.copies[s] != null && next.versions[s] == stripes[s].rollupVersion) continue;
+
+            ReentrantLock lock = movieLocks.getStripe(s);
+            if(next.copies[s] == null){
+                lock.lock(); // nothing to fall back on yet
+            } else if(!lock.tryLock()){
+                continue;
+            }
+            try {
+                next.versions[s] = stripes[s].rollupVersion;
+                next.copies[s] = stripes[s].rollups.copy();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        RollupCube merged = new RollupCube();
+        for(int s = 0; s < stripes.length; s++){
+            merged.merge(next.copies[s]);
+        }
+        next.merged = merged.copy(); // builds the prefix sums, so readers only read it
+        rollupSnapshot = next;
+        return next.merged;
+    }
+
+    // Rollups of every rating, see rollupSnapshot
+    private RollupCube rollups(){
+        return concurrent ? rollupSnapshot() : stripes[0].rollups;
+    }
+
+    // Moves an ID to its new number of ratings in one of the most rated trees. Caller holds sharedLock
+    private static void updateMostRated(OrderStatisticTree tree, int id, int oldCount, int newCount){
+        tree.remove(id, oldCount);
+        tree.insert(id, newCount, 0);
+    }
+
+    // Every user ID in the store, one stripe at a time
+    private int[] allUserIDs(){
+        return allIDs(userIDs, userLocks);
+    }
+
+    // Every movie ID in the store, one stripe at a time
+    private int[] allMovieIDs(){
+        IntIntMap[] movieIDs = new IntIntMap[stripes.length];
+        for(int s = 0; s < stripes.length; s++){
+            movieIDs[s] = stripes[s].movieIDs;
+        }
+        return allIDs(movieIDs, movieLocks);
+    }
+
+    private int[] allIDs(IntIntMap[] byStripe, StripedLock locks){
+        int[][] parts = new int[byStripe.length][];
+        int total = 0;
+        for(int s = 0; s < byStripe.length; s++){
+            if(concurrent) locks.getStripe(s).lock();
+            try {
+                parts[s] = byStripe[s].keys();
+            } finally {
+                if(concurrent) locks.getStripe(s).unlock();
+            }
+            total += parts[s].length;
+        }
+
+        int[] ids = new int[total];
+        int pos = 0;
+        for(int s = 0; s < parts.length; s++){
+            System.arraycopy(parts[s], 0, ids, pos, parts[s].length);
+            pos += parts[s].length;
+        }
+        return ids;
+    }
+
+    // Adds a rating to its movie's and stripe's rollups. Caller holds the movie's lock
+    private void addToRollups(int movieID, float rating, Calendar timestamp){
+        RatingData rd = movieRatings.get(movieID);
+        if(rd.rollups == null) rd.rollups = new RollupCube();
+        rd.rollups.add(timestamp, rating);
+        Stripe stripe = stripes[stripeOf(movieID)];
+        stripe.rollups.add(timestamp, rating);
+        stripe.rollupVersion++;
+    }
+
+    // Takes a rating back out of its movie's and stripe's rollups. Caller holds the movie's lock
+    private void removeFromRollups(int movieID, float rating, Calendar timestamp){
+        RatingData rd = movieRatings.get(movieID);
+        if(rd.rollups != null) rd.rollups.remove(timestamp, rating);
+        Stripe stripe = stripes[stripeOf(movieID)];
+        stripe.rollups.remove(timestamp, rating);
+        stripe.rollupVersion++;
+    }
+
+    // Adds a rating to the movie's and its stripe's month quantile sketches. Caller holds the movie's lock
+    private void addToSketches(int movieID, float rating, Calendar timestamp){
+        RatingData rd = movieRatings.get(movieID);
+        if(rd.sketch == null) rd.sketch = new KllSketch();
+        if(!rd.sketchStale) rd.sketch.update(rating);
+
+        Stripe stripe = stripes[stripeOf(movieID)];
+        int month = RollupCube.keyOf(MONTH, timestamp);
+        KllSketch monthSketch = stripe.monthSketches.get(month);
+        if(monthSketch == null){
+            monthSketch = new KllSketch();
+            stripe.monthSketches.put(month, monthSketch);
+        }
+        if(!stripe.staleMonths.containsKey(month)) monthSketch.update(rating);
+    }
+
+    // Sketches can't take a rating back out, so the movie and month are marked to be rebuilt instead
+    private void removeFromSketches(int movieID, Calendar timestamp){
+        movieRatings.get(movieID).sketchStale = true;
+        stripes[stripeOf(movieID)].staleMonths.put(RollupCube.keyOf(MONTH, timestamp), 1);
+    }
+
+    // The movie's sketch, rebuilt from its ratings if one was taken out. Caller holds the movie's lock
+    private KllSketch movieSketch(RatingData rd){
+        if(rd.sketch == null || rd.sketchStale){
+            KllSketch sketch = new KllSketch();
+            for(int i = rd.IDsTimeOrder.size() - 1; i >= 0; i--){ // oldest first, same as they were added
+                sketch.update(rd.otherIDs.get(rd.IDsTimeOrder.get(i)).rating);
+            }
+            rd.sketch = sketch;
+            rd.sketchStale = false;
+        }
+        return rd.sketch;
+    }
+
+    // Rebuilds every stale month sketch of a stripe in one pass over its movies' ratings
+    // Caller holds the stripe's lock
+    private void rebuildStaleMonths(Stripe stripe){
+        IntIntMap staleMonths = stripe.staleMonths;
+        int[] months = staleMonths.keys();
+        for(int i = 0; i < months.length; i++){
+            stripe.monthSketches.put(months[i], new KllSketch());
+        }
+
+        int[] movies = stripe.movieIDs.keys();
+        for(int i = 0; i < movies.length; i++){
+            RatingData rd = movieRatings.get(movies[i]);
+            for(int j = rd.IDsTimeOrder.size() - 1; j >= 0; j--){
+                RatingData.Rating r = rd.otherIDs.get(rd.IDsTimeOrder.get(j));
+                int month = RollupCube.keyOf(MONTH, r.timestamp);
+                if(staleMonths.containsKey(month)) stripe.monthSketches.get(month).update(r.rating);
+            }
+        }
+        staleMonths.clear();
+    }
+
+    // Adds a rating's user and movie to the distinct count sketches of its day and month, in the
+    // movie's stripe. Caller holds the movie's lock
+    private void addToDistinct(int userID, int movieID, Calendar timestamp){
+        Stripe stripe = stripes[stripeOf(movieID)];
+        int day = RollupCube.keyOf(DAY, timestamp);
+        int month = RollupCube.keyOf(MONTH, timestamp);
+        addToBucket(stripe.dayUsers, day, userID);
+        addToBucket(stripe.dayMovies, day, movieID);
+        addToBucket(stripe.monthUsers, month, userID);
+        addToBucket(stripe.monthMovies, month, movieID);
+    }
+
+    private static void addToBucket(HashMap<Integer, HyperLogLog> buckets, int key, int id){
+        HyperLogLog hll = buckets.get(key);
+        if(hll == null){
+            hll = new HyperLogLog();
+            buckets.put(key, hll);
+        }
+        hll.add(id);
+    }
+
+    // Merges one stripe's sketches for every day from start to end, inclusive, into merged. Whole
+    // calendar months in the window use their month sketch instead, so a long window costs about one
+    // merge per month. Caller holds the stripe's lock
+    private static void mergeDistinct(HyperLogLog merged, HashMap<Integer, HyperLogLog> days, HashMap<Integer, HyperLogLog> months, Calendar start, Calendar end){
+        int lastDay = RollupCube.keyOf(DAY, end);
+
+        Calendar cursor = (Calendar)start.clone();
+        while(RollupCube.keyOf(DAY, cursor) <= lastDay){
+            if(cursor.get(Calendar.DAY_OF_MONTH) == 1){
+                Calendar monthEnd = (Calendar)cursor.clone();
+                monthEnd.add(Calendar.MONTH, 1);
+                monthEnd.add(Calendar.DAY_OF_MONTH, -1);
+                if(RollupCube.keyOf(DAY, monthEnd) <= lastDay){
+                    merged.merge(months.get(RollupCube.keyOf(MONTH, cursor)));
+                    cursor.add(Calendar.MONTH, 1);
+                    continue;
+                }
+            }
+            merged.merge(days.get(RollupCube.keyOf(DAY, cursor)));
+            cursor.add(Calendar.DAY_OF_MONTH, 1);
+        }
+    }
+
+    // Estimated distinct users (or movies) from start to end, merged over every stripe
+    private int distinctBetween(boolean users, Calendar start, Calendar end){
+        HyperLogLog merged = new HyperLogLog();
+        for(int s = 0; s < stripes.length; s++){
+            lockStripe(s);
+            try {
+                Stripe stripe = stripes[s];
+                if(users){
+                    mergeDistinct(merged, stripe.dayUsers, stripe.monthUsers, start, end);
+                } else {
+                    mergeDistinct(merged, stripe.dayMovies, stripe.monthMovies, start, end);
+                }
+            } finally {
+                unlockStripe(s);
+            }
+        }
+        return (int)merged.estimate();
+    }
+
+    // Distinct users (or movies) estimate for each day, week or month from start to end, inclusive,
+    // merged over every stripe
+    private int[] distinctPer(boolean users, int unit, Calendar start, Calendar end){
+        int from, to, step;
+        boolean daily;
+        switch(unit){
+            case DAY:
+                from = RollupCube.keyOf(DAY, start);
+                to = RollupCube.keyOf(DAY, end);
+                step = 1;
+                daily = true;
+                break;
+            case WEEK:
+                from = RollupCube.keyOf(DAY, start);
+                to = RollupCube.keyOf(DAY, end);
+                step = 7;
+                daily = true;
+                break;
+            case MONTH:
+                from = RollupCube.keyOf(MONTH, start);
+                to = RollupCube.keyOf(MONTH, end);
+                step = 1;
+                daily = false;
+                break;
+            default:
+                throw new IllegalArgumentException("Distinct counts are only kept per DAY, WEEK or MONTH");
+        }
+        if(to < from) return new int[0];
+
+        HyperLogLog[] merged = new HyperLogLog[(to - from) / step + 1];
+        for(int i = 0; i < merged.length; i++){
+            merged[i] = new HyperLogLog();
+        }
+        for(int s = 0; s < stripes.length; s++){
+            lockStripe(s);
+            try {
+                Stripe stripe = stripes[s];
+                HashMap<Integer, HyperLogLog> buckets;
+                if(daily){
+                    buckets = users ? stripe.dayUsers : stripe.dayMovies;
+                } else {
+                    buckets = users ? stripe.monthUsers : stripe.monthMovies;
+                }
+                for(int i = 0; i < merged.length; i++){
+                    int bucketStart = from + i * step;
+                    for(int key = bucketStart; key < bucketStart + step && key <= to; key++){
+                        merged[i].merge(buckets.get(key));
+                    }
+                }
+            } finally {
+                unlockStripe(s);
+            }
+        }
+
+        int[] counts = new int[merged.length];
+        for(int i = 0; i < counts.length; i++){
+            counts[i] = (int)merged[i].estimate();
+        }
+        return counts;
+    }
+
+    // log2(2^a + 2^b) without overflowing
+    private static double logAdd(double a, double b){
+        if(a == Double.NEGATIVE_INFINITY) return b;
+        if(b == Double.NEGATIVE_INFINITY) return a;
+        double max = Math.max(a, b);
+        return max + Math.log1p(Math.pow(2, Math.min(a, b) - max)) / Math.log(2);
+    }
+
+    // log2(2^a - 2^b), or negative infinity if b is (roughly) the whole of a
+    private static double logSubtract(double a, double b){
+        if(b == Double.NEGATIVE_INFINITY) return a;
+        double remaining = 1 - Math.pow(2, b - a);
+        if(remaining < 1e-9) return Double.NEGATIVE_INFINITY;
+        return a + Math.log(remaining) / Math.log(2);
+    }
+
+    // Exponent a rating at this time adds to a movie's log2 activity score
+    private double trendingExponent(Calendar timestamp){
+        return (timestamp.getTimeInMillis() / 1000.0) / trendingHalfLife;
+    }
+
+    // Adds or takes away one rating's activity from a movie and moves it in trendingTree
+    private void updateTrending(int movieID, Calendar timestamp, boolean adding){
+        RatingData rd = movieRatings.get(movieID);
+        if(rd == null) return;
+
+        boolean wasInTree = rd.trendingScore != Double.NEGATIVE_INFINITY;
+        if(wasInTree){
+            trendingTree.remove(movieID, rd.trendingScore);
+        }
+
+        double exponent = trendingExponent(timestamp);
+        rd.trendingScore = adding ? logAdd(rd.trendingScore, exponent) : logSubtract(rd.trendingScore, exponent);
+        if(rd.size() == 0) rd.trendingScore = Double.NEGATIVE_INFINITY;
+
+        if(rd.trendingScore != Double.NEGATIVE_INFINITY){
+            trendingTree.insert(movieID, rd.trendingScore, rd.size());
+        }
+    }
+
+    // Weighted rating, as used by IMDb: (v*R + m*C) / (v + m)
+    // v = number of ratings, R = average rating, m = prior weight, C = prior mean
+    private double weightedRating(RatingData rd){
+        int v = rd.size();
+        return (rd.sumOfRatings + (double)priorWeight * priorMean) / (v + priorWeight);
+    }
+
+    // Moves a movie to its new position in topRatedTree, called whenever its ratings change
+    private void updateTopRated(int movieID){
+        RatingData rd = movieRatings.get(movieID);
+        if(rd == null) return;
+
+        if(rd.inTopRated){
+            topRatedTree.remove(movieID, rd.weightedScore);
+            rd.inTopRated = false;
+        }
+
+        if(rd.size() > 0){
+            rd.weightedScore = weightedRating(rd);
+            topRatedTree.insert(movieID, rd.weightedScore, rd.size());
+            rd.inTopRated = true;
+        }
+    }
+
+    // Records a change in the movie's stripe for the next batch if anyone is listening
+    // Caller holds the movie's lock
+    private void noteChange(int userID, int movieID){
+        if(listeners.length == 0) return;
+        Stripe stripe = stripes[stripeOf(movieID)];
+        stripe.changedMovies.put(movieID, 1);
+        stripe.changedUsers.put(userID, 1);
+        pendingChanges.incrementAndGet();
+    }
+
+    // Delivers the pending changes once a full batch has built up. Not while this thread still holds
+    // the user's stripe (set calling add), so listeners can read the store without breaking the lock order
+    private void maybeDeliver(int userID){
+        if(pendingChanges.get() < changeBatchSize) return;
+        if(concurrent && userLocks.get(userID).isHeldByCurrentThread()) return;
+        flushChanges();
+    }
+
+    // Appends a change to the snapshot log if snapshots are on. Caller holds sharedLock
+    private void logChange(int userID, int movieID, float rating, Calendar timestamp){
+        RatingLog log = changeLog;
+        if(log != null) log.append(userID, movieID, rating, timestamp.getTimeInMillis());
     }
 
     /**
@@ -123,77 +786,65 @@ public class Ratings implements IRatings {
      */
     @Override
     public boolean add(int userID, int movieID, float rating, Calendar timestamp) {
-
-        // Avoid duplicates
-        if(userRatings.get(userID) != null && userRatings.get(userID).otherIDs.get(movieID) != null){
-            return false;
-        }
-        
-        if(userRatings.get(userID) == null) { // Check if user doesnt exist on database
-            // Create new RatingData for new userID
-            RatingData userRD = new RatingData();
-            userRD.setRating(movieID, rating, timestamp);
-            userRatings.put(userID, userRD);
-        } else {
-            // else, just set rating for existing RatingData class in HashMap
-            userRatings.get(userID).setRating(movieID, rating, timestamp);
-        }
-
-        // Add user to top user array based on number of ratings
-        if(!topUsersArray.contains(userID)){
-            // If user not in array, add to start of array
-            topUsersArray.addX(0, userID); 
-        } else {
-            // If user in array, move in top users array if number of ratings is now more than the next element
-            int currentUserRatings = userRatings.get(userID).size();
-            topUsersArray.removeIndex(topUsersArray.indexOf(userID));
-            boolean addedToArr = false;
-            for(int i = 0; i < topUsersArray.size(); i++){ // Ascending order
-                if(currentUserRatings > userRatings.get(topUsersArray.get(i)).size()){
-                    continue;
-                } else {
-                    topUsersArray.addX(i, userID);
-                    addedToArr = true;
-                    break;
-                }
+        lockUser(userID);
+        lockMovie(movieID);
+        try {
+            // Avoid duplicates
+            if(userRatings.get(userID) != null && userRatings.get(userID).otherIDs.get(movieID) != null){
+                return false;
             }
-            if(!addedToArr){ // If reached end of array, add to end
-                topUsersArray.add(userID);
+            
+            if(userRatings.get(userID) == null) { // Check if user doesnt exist on database
+                // Create new RatingData for new userID
+                RatingData userRD = new RatingData();
+                userRD.setRating(movieID, rating, timestamp);
+                userRatings.put(userID, userRD);
+                userIDs[stripeOf(userID)].put(userID, 1);
+            } else {
+                // else, just set rating for existing RatingData class in HashMap
+                userRatings.get(userID).setRating(movieID, rating, timestamp);
             }
-        }
-
-        // REPEAT WITH MOVIES
-        if(movieRatings.get(movieID) == null) {
-            RatingData movieRD = new RatingData();
-            movieRD.setRating(userID, rating, timestamp);
-            movieRatings.put(movieID, movieRD);
-        } else {
-            movieRatings.get(movieID).setRating(userID, rating, timestamp);
-        }
 
-        if(!topMoviesArray.contains(movieID)){
-            topMoviesArray.addX(0, movieID);
-        } else {
-            int currentMovieRatings = movieRatings.get(movieID).size();
-            topMoviesArray.removeIndex(topMoviesArray.indexOf(movieID));
-            boolean addedToArr = false;
-            for(int i = 0; i < topMoviesArray.size(); i++){ // ascending
-                if(currentMovieRatings > movieRatings.get(topMoviesArray.get(i)).size()){
-                    continue;
-                } else {
-                    topMoviesArray.addX(i, movieID);
-                    addedToArr = true;
-                    break;
-                }
+            // REPEAT WITH MOVIES
+            if(movieRatings.get(movieID) == null) {
+                RatingData movieRD = new RatingData();
+                movieRD.setRating(userID, rating, timestamp);
+                movieRatings.put(movieID, movieRD);
+                stripes[stripeOf(movieID)].movieIDs.put(movieID, 1);
+            } else {
+                movieRatings.get(movieID).setRating(userID, rating, timestamp);
             }
-            if(!addedToArr){
-                topMoviesArray.add(movieID);
+
+            // Totals are kept in the movie's stripe, whose lock is already held
+            addToRollups(movieID, rating, timestamp);
+            addToSketches(movieID, rating, timestamp);
+            addToDistinct(userID, movieID, timestamp);
+            noteChange(userID, movieID);
+
+            // Both stripes are held, so these counts can't change under us
+            int userCount = userRatings.get(userID).size();
+            int movieCount = movieRatings.get(movieID).size();
+
+            // Rankings are shared between all users and movies
+            lockShared();
+            try {
+                updateMostRated(mostRatedUsers, userID, userCount - 1, userCount);
+                updateMostRated(mostRatedMovies, movieID, movieCount - 1, movieCount);
+                updateTopRated(movieID);
+                updateTrending(movieID, timestamp, true);
+                logChange(userID, movieID, rating, timestamp);
+            } finally {
+                unlockShared();
             }
-        }
 
-        numOfRatings++;
+            numOfRatings.incrementAndGet();
 
-        return true;
+            return true;
+        } finally {
+            unlockMovie(movieID);
+            unlockUser(userID);
+            maybeDeliver(userID);
+        }
     }
 
     /**
@@ -206,17 +857,44 @@ public class Ratings implements IRatings {
      */
     @Override
     public boolean remove(int userID, int movieID) {
+        lockUser(userID);
+        lockMovie(movieID);
+        try {
+            // If rating doesn't exist, return false
+            if(userRatings.get(userID) == null) return false;
+            if(userRatings.get(userID).otherIDs.get(movieID) == null) return false;
+
+            RatingData.Rating old = userRatings.get(userID).otherIDs.get(movieID);
+
+            userRatings.get(userID).remove(movieID);
+            movieRatings.get(movieID).remove(userID);
+
+            int userCount = userRatings.get(userID).size();
+            int movieCount = movieRatings.get(movieID).size();
+
+            removeFromRollups(movieID, old.rating, old.timestamp);
+            removeFromSketches(movieID, old.timestamp);
+            noteChange(userID, movieID);
+
+            lockShared();
+            try {
+                updateMostRated(mostRatedUsers, userID, userCount + 1, userCount);
+                updateMostRated(mostRatedMovies, movieID, movieCount + 1, movieCount);
+                updateTopRated(movieID);
+                updateTrending(movieID, old.timestamp, false);
+                logChange(userID, movieID, Float.NaN, old.timestamp);
+            } finally {
+                unlockShared();
+            }
 
-        // If rating doesn't exist, return false
-        if(userRatings.get(userID) == null) return false;
-        if(userRatings.get(userID).otherIDs.get(movieID) == null) return false;
-
-        userRatings.get(userID).remove(movieID);
-        movieRatings.get(movieID).remove(userID);
-
-        numOfRatings--;
+            numOfRatings.decrementAndGet();
 
-        return true;
+            return true;
+        } finally {
+            unlockMovie(movieID);
+            unlockUser(userID);
+            maybeDeliver(userID);
+        }
     }
 
     /**
@@ -234,9 +912,45 @@ public class Ratings implements IRatings {
      */
     @Override
     public boolean set(int userID, int movieID, float rating, Calendar timestamp) {
-        userRatings.get(userID).setRating(movieID, rating, timestamp);
-        movieRatings.get(movieID).setRating(userID, rating, timestamp);
-        return true;
+        lockUser(userID);
+        lockMovie(movieID);
+        try {
+            // Not rated yet, so this is just an add
+            if(userRatings.get(userID) == null || userRatings.get(userID).otherIDs.get(movieID) == null){
+                return add(userID, movieID, rating, timestamp);
+            }
+
+            RatingData.Rating old = userRatings.get(userID).otherIDs.get(movieID);
+            float oldRating = old.rating;
+            Calendar oldTimestamp = old.timestamp;
+
+            // setRating removes the old rating first, so the histograms stay correct
+            userRatings.get(userID).setRating(movieID, rating, timestamp);
+            movieRatings.get(movieID).setRating(userID, rating, timestamp);
+
+            removeFromRollups(movieID, oldRating, oldTimestamp);
+            addToRollups(movieID, rating, timestamp);
+            removeFromSketches(movieID, oldTimestamp);
+            addToSketches(movieID, rating, timestamp);
+            addToDistinct(userID, movieID, timestamp);
+            noteChange(userID, movieID);
+
+            lockShared();
+            try {
+                updateTopRated(movieID);
+                updateTrending(movieID, oldTimestamp, false);
+                updateTrending(movieID, timestamp, true);
+                logChange(userID, movieID, rating, timestamp);
+            } finally {
+                unlockShared();
+            }
+
+            return true;
+        } finally {
+            unlockMovie(movieID);
+            unlockUser(userID);
+            maybeDeliver(userID);
+        }
     }
 
     /**
@@ -253,18 +967,27 @@ public class Ratings implements IRatings {
     public float[] getRatingsBetween(Calendar start, Calendar end) {
         ArrayList<Float> newArr = new ArrayList<Float>();
 
+        // Copy the user IDs out first, as more may be added while going through them
+        int[] users = allUserIDs();
+        int numOfUsers = users.length;
+
         // Go through all users, use their IDsTimeOrder array and find ratings made between start and end
         // As it goes through all users and their ratings, it must return all ratings between
-        for(int i = 0; i < topUsersArray.size(); i++){
-            int userID = topUsersArray.get(i);
-            ArrayList<Integer> arr = userRatings.get(userID).IDsTimeOrder;
-            
-            // Go through IDsTimeOrder ArrayList
-            for(int j = 0; j < arr.size(); j++){
-                Calendar currTime = userRatings.get(userID).otherIDs.get(arr.get(j)).timestamp;
-                if(currTime.after(start) && currTime.before(end)){ // Compare Times
-                    newArr.add(userRatings.get(userID).otherIDs.get(arr.get(j)).rating);
+        for(int i = 0; i < numOfUsers; i++){
+            int userID = users[i];
+            lockUser(userID);
+            try {
+                ArrayList<Integer> arr = userRatings.get(userID).IDsTimeOrder;
+                
+                // Go through IDsTimeOrder ArrayList
+                for(int j = 0; j < arr.size(); j++){
+                    Calendar currTime = userRatings.get(userID).otherIDs.get(arr.get(j)).timestamp;
+                    if(currTime.after(start) && currTime.before(end)){ // Compare Times
+                        newArr.add(userRatings.get(userID).otherIDs.get(arr.get(j)).rating);
+                    }
                 }
+            } finally {
+                unlockUser(userID);
             }
         }
 
@@ -290,26 +1013,142 @@ public class Ratings implements IRatings {
      */
     @Override
     public float[] getMovieRatingsBetween(int movieID, Calendar start, Calendar end) {
+        lockMovie(movieID);
+        try {
+            // Access IDsTimeOrder for movieID's RatingData
+            ArrayList<Integer> arr = movieRatings.get(movieID).IDsTimeOrder;
+            ArrayList<Float> newArr = new ArrayList<Float>();
+
+            // Go through the IDsTimeOrder and return ratings between start and end
+            for(int i = 0; i < arr.size(); i++){
+                Calendar currTime = movieRatings.get(movieID).otherIDs.get(arr.get(i)).timestamp;
+                System.out.println(currTime);
+                if(currTime.after(start) && currTime.before(end)){
+                    newArr.add(movieRatings.get(movieID).otherIDs.get(arr.get(i)).rating);
+                }
+            }
 
-        // Access IDsTimeOrder for movieID's RatingData
-        ArrayList<Integer> arr = movieRatings.get(movieID).IDsTimeOrder;
-        ArrayList<Float> newArr = new ArrayList<Float>();
+            float[] returnArr = new float[newArr.size()]; // convert array list to array
+            for(int i = 0; i < returnArr.length; i++){
+                returnArr[i] = newArr.get(i);
+            }
+
+            return returnArr;
 
-        // Go through the IDsTimeOrder and return ratings between start and end
-        for(int i = 0; i < arr.size(); i++){
-            Calendar currTime = movieRatings.get(movieID).otherIDs.get(arr.get(i)).timestamp;
-            System.out.println(currTime);
-            if(currTime.after(start) && currTime.before(end)){
-                newArr.add(movieRatings.get(movieID).otherIDs.get(arr.get(i)).rating);
+        } finally {
+            unlockMovie(movieID);
+        }
+    }
+
+    /**
+     * Find all ratings for each of several films, between a given start date and
+     * end date, in one call. Each film's ratings are found by binary searching its
+     * time ordered ratings rather than checking every one, and large batches are
+     * split across cores. If a rating falls exactly on start or end it is not
+     * included
+     *
+     * @param movieIDs The movie IDs
+     * @param start    The start time for the range
+     * @param end      The end time for the range
+     * @return The ratings of every film packed into one array, in the order of
+     *         movieIDs and newest first within each film. Films that cannot be
+     *         found have no ratings
+     */
+    public PackedRatings getMovieRatingsBetween(int[] movieIDs, Calendar start, Calendar end) {
+        return movieRatingsBetween(movieIDs, start, end, true);
+    }
+
+    /**
+     * Find the number and mean of the ratings for each of several films, between a
+     * given start date and end date, without copying the ratings out
+     *
+     * @param movieIDs The movie IDs
+     * @param start    The start time for the range
+     * @param end      The end time for the range
+     * @return A summary only PackedRatings with each film's count and mean, in the
+     *         order of movieIDs
+     */
+    public PackedRatings getMovieRatingSummariesBetween(int[] movieIDs, Calendar start, Calendar end) {
+        return movieRatingsBetween(movieIDs, start, end, false);
+    }
+
+    // Position in a movie's IDsTimeOrder of its newest rating made before endMs
+    // The list is newest first, so this is a binary search. Caller holds the movie's lock
+    private static int firstBefore(RatingData rd, long endMs){
+        int lo = 0;
+        int hi = rd.IDsTimeOrder.size();
+        while(lo < hi){
+            int mid = (lo + hi) >>> 1;
+            if(rd.otherIDs.get(rd.IDsTimeOrder.get(mid)).timestamp.getTimeInMillis() < endMs){
+                hi = mid;
+            } else {
+                lo = mid + 1;
             }
         }
+        return lo;
+    }
 
-        float[] returnArr = new float[newArr.size()]; // convert array list to array
-        for(int i = 0; i < returnArr.length; i++){
-            returnArr[i] = newArr.get(i);
+    // Movies are handed out in chunks of BATCH_CHUNK. Each chunk fills its own buffer, and as a
+    // chunk's movies are next to each other its buffer is copied into the result in one go
+    private PackedRatings movieRatingsBetween(int[] movieIDs, Calendar start, Calendar end, boolean withValues){
+        long startMs = start.getTimeInMillis();
+        long endMs = end.getTimeInMillis();
+        int n = movieIDs.length;
+        int numChunks = (n + BATCH_CHUNK - 1) / BATCH_CHUNK;
+
+        int[] counts = new int[n];
+        double[] sums = new double[n];
+        float[][] chunkValues = new float[withValues ? numChunks : 0][];
+        int[] chunkSizes = new int[numChunks];
+
+        Parallel.forRange(0, numChunks, 1, (fromChunk, toChunk) -> {
+            for(int c = fromChunk; c < toChunk; c++){
+                float[] buffer = withValues ? new float[64] : null;
+                int used = 0;
+
+                for(int i = c * BATCH_CHUNK; i < Math.min(n, (c + 1) * BATCH_CHUNK); i++){
+                    lockMovie(movieIDs[i]);
+                    try {
+                        RatingData rd = movieRatings.get(movieIDs[i]);
+                        if(rd == null) continue;
+
+                        // Walk back from the newest rating before end until reaching start
+                        for(int j = firstBefore(rd, endMs); j < rd.IDsTimeOrder.size(); j++){
+                            RatingData.Rating r = rd.otherIDs.get(rd.IDsTimeOrder.get(j));
+                            if(r.timestamp.getTimeInMillis() <= startMs) break;
+
+                            counts[i]++;
+                            sums[i] += r.rating;
+                            if(withValues){
+                                if(used == buffer.length) buffer = Arrays.copyOf(buffer, used * 2);
+                                buffer[used] = r.rating;
+                            }
+                            used++;
+                        }
+                    } finally {
+                        unlockMovie(movieIDs[i]);
+                    }
+                }
+
+                if(withValues) chunkValues[c] = buffer;
+                chunkSizes[c] = used;
+            }
+        });
+
+        int[] offsets = new int[n + 1];
+        for(int i = 0; i < n; i++){
+            offsets[i + 1] = offsets[i] + counts[i];
         }
 
-        return returnArr;
+        float[] values = null;
+        if(withValues){
+            values = new float[offsets[n]];
+            for(int c = 0; c < numChunks; c++){
+                System.arraycopy(chunkValues[c], 0, values, offsets[c * BATCH_CHUNK], chunkSizes[c]);
+            }
+        }
+
+        return new PackedRatings(Arrays.copyOf(movieIDs, n), offsets, values, sums);
     }
 
     /**
@@ -325,25 +1164,30 @@ public class Ratings implements IRatings {
      */
     @Override
     public float[] getUserRatingsBetween(int userID, Calendar start, Calendar end) {
-        
-        // Access IDsTimeOrder for movieID's RatingData
-        ArrayList<Integer> arr = userRatings.get(userID).IDsTimeOrder;
-        ArrayList<Float> newArr = new ArrayList<Float>();
+        lockUser(userID);
+        try {
+            // Access IDsTimeOrder for movieID's RatingData
+            ArrayList<Integer> arr = userRatings.get(userID).IDsTimeOrder;
+            ArrayList<Float> newArr = new ArrayList<Float>();
 
-        // Go through the IDsTimeOrder and return ratings between start and end
-        for(int i = 0; i < arr.size(); i++){
-            Calendar currTime = userRatings.get(userID).otherIDs.get(arr.get(i)).timestamp;
-            if(currTime.after(start) && currTime.before(end)){
-                newArr.add(userRatings.get(userID).otherIDs.get(arr.get(i)).rating);
+            // Go through the IDsTimeOrder and return ratings between start and end
+            for(int i = 0; i < arr.size(); i++){
+                Calendar currTime = userRatings.get(userID).otherIDs.get(arr.get(i)).timestamp;
+                if(currTime.after(start) && currTime.before(end)){
+                    newArr.add(userRatings.get(userID).otherIDs.get(arr.get(i)).rating);
+                }
             }
-        }
 
-        float[] returnArr = new float[newArr.size()]; // convert array list to array
-        for(int i = 0; i < returnArr.length; i++){
-            returnArr[i] = newArr.get(i);
-        }
+            float[] returnArr = new float[newArr.size()]; // convert array list to array
+            for(int i = 0; i < returnArr.length; i++){
+                returnArr[i] = newArr.get(i);
+            }
 
-        return returnArr;
+            return returnArr;
+
+        } finally {
+            unlockUser(userID);
+        }
     }
 
     /**
@@ -355,20 +1199,25 @@ public class Ratings implements IRatings {
      */
     @Override
     public float[] getMovieRatings(int movieID) {
+        lockMovie(movieID);
+        try {
+            if(movieRatings.get(movieID) == null) return new float[0];
+
+            // All ratinsg would be stored in IDsTimeOrder arrayList as it contains all userID's and their ratings for the movie
+            ArrayList<Integer> otherIDsArr = movieRatings.get(movieID).IDsTimeOrder;
+
+            // Convert arrayList to array
+            float[] mRatings = new float[otherIDsArr.size()];
+            for(int i = 0; i < otherIDsArr.size(); i++){
+                // flip order
+                mRatings[otherIDsArr.size()-(i+1)] = movieRatings.get(movieID).otherIDs.get(otherIDsArr.get(i)).rating;
+            }
 
-        if(movieRatings.get(movieID) == null) return new float[0];
-
-        // All ratinsg would be stored in IDsTimeOrder arrayList as it contains all userID's and their ratings for the movie
-        ArrayList<Integer> otherIDsArr = movieRatings.get(movieID).IDsTimeOrder;
+            return mRatings;
 
-        // Convert arrayList to array
-        float[] mRatings = new float[otherIDsArr.size()];
-        for(int i = 0; i < otherIDsArr.size(); i++){
-            // flip order
-            mRatings[otherIDsArr.size()-(i+1)] = movieRatings.get(movieID).otherIDs.get(otherIDsArr.get(i)).rating;
+        } finally {
+            unlockMovie(movieID);
         }
-
-        return mRatings;
     }
 
     /**
@@ -380,33 +1229,100 @@ public class Ratings implements IRatings {
      */
     @Override
     public float[] getUserRatings(int userID) {
+        lockUser(userID);
+        try {
+            if(userRatings.get(userID) == null) return new float[0];
+
+            // All ratinsg would be stored in IDsTimeOrder arrayList as it contains all movieID's and their ratings
+            ArrayList<Integer> otherIDsArr = userRatings.get(userID).IDsTimeOrder;
+
+            // Convert arrayList to array
+            float[] uRatings = new float[otherIDsArr.size()];
+            for(int i = 0; i < otherIDsArr.size(); i++){
+                // flip order
+                uRatings[otherIDsArr.size()-(i+1)] = userRatings.get(userID).otherIDs.get(otherIDsArr.get(i)).rating;
+            }
 
-        if(userRatings.get(userID) == null) return new float[0];
-
-        // All ratinsg would be stored in IDsTimeOrder arrayList as it contains all movieID's and their ratings
-        ArrayList<Integer> otherIDsArr = userRatings.get(userID).IDsTimeOrder;
+            return uRatings;
 
-        // Convert arrayList to array
-        float[] uRatings = new float[otherIDsArr.size()];
-        for(int i = 0; i < otherIDsArr.size(); i++){
-            // flip order
-            uRatings[otherIDsArr.size()-(i+1)] = userRatings.get(userID).otherIDs.get(otherIDsArr.get(i)).rating;
+        } finally {
+            unlockUser(userID);
         }
-
-        return uRatings;
     }
 
     /**
-     * Get the average rating for a given film
-     * 
+     * Get the IDs of every user who rated a given film, in the same order as
+     * getMovieRatings
+     *
      * @param movieID The movie ID
-     * @return Produces the average rating for a given film. If the film cannot be
-     *         found, or there are no rating, return 0
+     * @return An array of user IDs. If there are no ratings or the film cannot be
+     *         found, then return an empty array
      */
-    @Override
+    public int[] getMovieUserIDs(int movieID) {
+        lockMovie(movieID);
+        try {
+            if(movieRatings.get(movieID) == null) return new int[0];
+
+            ArrayList<Integer> otherIDsArr = movieRatings.get(movieID).IDsTimeOrder;
+
+            int[] userIDs = new int[otherIDsArr.size()];
+            for(int i = 0; i < otherIDsArr.size(); i++){
+                // flip order
+                userIDs[otherIDsArr.size()-(i+1)] = otherIDsArr.get(i);
+            }
+
+            return userIDs;
+
+        } finally {
+            unlockMovie(movieID);
+        }
+    }
+
+    /**
+     * Get the IDs of every film a given user rated, in the same order as
+     * getUserRatings
+     *
+     * @param userID The user ID
+     * @return An array of movie IDs. If there are no ratings or the user cannot be
+     *         found, then return an empty array
+     */
+    public int[] getUserMovieIDs(int userID) {
+        lockUser(userID);
+        try {
+            if(userRatings.get(userID) == null) return new int[0];
+
+            ArrayList<Integer> otherIDsArr = userRatings.get(userID).IDsTimeOrder;
+
+            int[] movieIDs = new int[otherIDsArr.size()];
+            for(int i = 0; i < otherIDsArr.size(); i++){
+                // flip order
+                movieIDs[otherIDsArr.size()-(i+1)] = otherIDsArr.get(i);
+            }
+
+            return movieIDs;
+
+        } finally {
+            unlockUser(userID);
+        }
+    }
+
+    /**
+     * Get the average rating for a given film
+     * 
+     * @param movieID The movie ID
+     * @return Produces the average rating for a given film. If the film cannot be
+     *         found, or there are no rating, return 0
+     */
+    @Override
     public float getMovieAverageRatings(int movieID) {
-        // Returns 0 if movieID is null, else return average
-        return movieRatings.get(movieID) == null ? 0 : movieRatings.get(movieID).getAverageRating();
+        lockMovie(movieID);
+        try {
+            // Returns 0 if movieID is null, else return average
+            return movieRatings.get(movieID) == null ? 0 : movieRatings.get(movieID).getAverageRating();
+
+        } finally {
+            unlockMovie(movieID);
+        }
     }
 
     /**
@@ -418,8 +1334,14 @@ public class Ratings implements IRatings {
      */
     @Override
     public float getUserAverageRatings(int userID) {
-        // Returns 0 if userID is null, else return average
-        return userRatings.get(userID) == null ? 0 : userRatings.get(userID).getAverageRating();
+        lockUser(userID);
+        try {
+            // Returns 0 if userID is null, else return average
+            return userRatings.get(userID) == null ? 0 : userRatings.get(userID).getAverageRating();
+
+        } finally {
+            unlockUser(userID);
+        }
     }
 
     /**
@@ -434,17 +1356,12 @@ public class Ratings implements IRatings {
     public int[] getTopMovies(int num) {
         if(num == 0) return new int[0];
 
-        //Creates new return array based on num input. Array size is topMoviesArray max
-        int[] topMovies = new int[Math.min(num, topMoviesArray.size())];
-        int count = 0;
-
-        // Convert topMoviesArray list to array
-        while(count < topMovies.length){
-            count++;
-            topMovies[count-1] = topMoviesArray.get(topMoviesArray.size() - count);
-            
+        lockShared();
+        try {
+            return mostRatedMovies.top(num, 0);
+        } finally {
+            unlockShared();
         }
-        return topMovies;
     }
 
     /**
@@ -460,18 +1377,885 @@ public class Ratings implements IRatings {
 
         if(num == 0) return new int[0];
 
-        //Creates new return array based on num input. Array size is topUsersArray max
-        int[] topUsers = new int[Math.min(num, topUsersArray.size())];
-        int count = 0;
+        lockShared();
+        try {
+            return mostRatedUsers.top(num, 0);
+        } finally {
+            unlockShared();
+        }
+    }
 
-        // Convert topUsersArray list to array
-        while(count < topUsers.length){
-            count++;
-            topUsers[count-1] = topUsersArray.get(topUsersArray.size() - count);
-            
+    /**
+     * Gets the number of ratings made in each day, month or year from the one
+     * containing start to the one containing end, inclusive. Answered from the
+     * rollups, so the cost is the number of buckets rather than the number of
+     * ratings
+     * 
+     * @param unit  Ratings.DAY, Ratings.MONTH or Ratings.YEAR
+     * @param start A time in the first bucket
+     * @param end   A time in the last bucket
+     * @return One count per bucket, in time order. Empty if end is before start
+     */
+    public int[] getRatingCountsPer(int unit, Calendar start, Calendar end) {
+        return rollups().countSeries(unit, start, end);
+    }
+
+    /**
+     * Gets the average rating in each day, month or year from the one containing
+     * start to the one containing end, inclusive
+     * 
+     * @param unit  Ratings.DAY, Ratings.MONTH or Ratings.YEAR
+     * @param start A time in the first bucket
+     * @param end   A time in the last bucket
+     * @return One average per bucket, in time order, 0 where there are no ratings
+     */
+    public float[] getAverageRatingsPer(int unit, Calendar start, Calendar end) {
+        return rollups().averageSeries(unit, start, end);
+    }
+
+    /**
+     * Gets the number of ratings for a film in each day, month or year from the
+     * one containing start to the one containing end, inclusive
+     * 
+     * @param movieID The movie ID
+     * @param unit    Ratings.DAY, Ratings.MONTH or Ratings.YEAR
+     * @param start   A time in the first bucket
+     * @param end     A time in the last bucket
+     * @return One count per bucket, in time order. All 0 if the film cannot be found
+     */
+    public int[] getMovieRatingCountsPer(int movieID, int unit, Calendar start, Calendar end) {
+        lockMovie(movieID);
+        try {
+            RatingData rd = movieRatings.get(movieID);
+            if(rd == null || rd.rollups == null) return new RollupCube().countSeries(unit, start, end);
+            return rd.rollups.countSeries(unit, start, end);
+
+        } finally {
+            unlockMovie(movieID);
+        }
+    }
+
+    /**
+     * Gets the average rating for a film in each day, month or year from the one
+     * containing start to the one containing end, inclusive
+     * 
+     * @param movieID The movie ID
+     * @param unit    Ratings.DAY, Ratings.MONTH or Ratings.YEAR
+     * @param start   A time in the first bucket
+     * @param end     A time in the last bucket
+     * @return One average per bucket, in time order, 0 where there are no ratings
+     */
+    public float[] getMovieAverageRatingsPer(int movieID, int unit, Calendar start, Calendar end) {
+        lockMovie(movieID);
+        try {
+            RatingData rd = movieRatings.get(movieID);
+            if(rd == null || rd.rollups == null) return new RollupCube().averageSeries(unit, start, end);
+            return rd.rollups.averageSeries(unit, start, end);
+
+        } finally {
+            unlockMovie(movieID);
+        }
+    }
+
+    /**
+     * Gets the totals of all ratings in the days, months or years from the one
+     * containing start to the one containing end, inclusive. Answered from prefix
+     * sums in O(log buckets)
+     * 
+     * @param unit  Ratings.DAY, Ratings.MONTH or Ratings.YEAR
+     * @param start A time in the first bucket
+     * @param end   A time in the last bucket
+     * @return {count, sum, sum of squares} of the ratings in the range
+     */
+    public double[] getRatingTotals(int unit, Calendar start, Calendar end) {
+        return rollups().total(unit, start, end);
+    }
+
+    /**
+     * Gets the totals of a film's ratings in the days, months or years from the one
+     * containing start to the one containing end, inclusive
+     * 
+     * @param movieID The movie ID
+     * @param unit    Ratings.DAY, Ratings.MONTH or Ratings.YEAR
+     * @param start   A time in the first bucket
+     * @param end     A time in the last bucket
+     * @return {count, sum, sum of squares} of the ratings in the range, all 0 if the
+     *         film cannot be found
+     */
+    public double[] getMovieRatingTotals(int movieID, int unit, Calendar start, Calendar end) {
+        lockMovie(movieID);
+        try {
+            RatingData rd = movieRatings.get(movieID);
+            if(rd == null || rd.rollups == null) return new double[3];
+            return rd.rollups.total(unit, start, end);
+
+        } finally {
+            unlockMovie(movieID);
+        }
+    }
+
+    /**
+     * Gets the top N films with the best weighted rating, in order from best to
+     * worst. The weighted rating pulls the average of films with few ratings
+     * towards the prior mean, so a film with one 5 star rating does not beat a
+     * film with hundreds of 4.5 star ratings
+     * 
+     * @param num      The number of films that should be returned
+     * @param minVotes The minimum number of ratings a film needs to be included
+     * @return A sorted array of film IDs. The array should be no larger than num
+     */
+    public int[] getTopRatedMovies(int num, int minVotes) {
+        lockShared();
+        try {
+            return topRatedTree.top(num, minVotes);
+        } finally {
+            unlockShared();
+        }
+    }
+
+    /**
+     * Changes the prior used for the weighted rating in getTopRatedMovies. Every
+     * film has to be re-scored, so this is O(n log n)
+     * 
+     * @param mean   The rating films with few ratings are pulled towards
+     * @param weight The number of ratings the prior counts as
+     */
+    public void setTopRatedPrior(float mean, int weight) {
+        // Every movie is read, so take all the movie stripes before sharedLock to keep the lock order
+        if(concurrent) movieLocks.lockAll();
+        lockShared();
+        try {
+            priorMean = mean;
+            priorWeight = Math.max(0, weight);
+
+            topRatedTree = new OrderStatisticTree();
+            int[] movies = allMovieIDs();
+            for(int i = 0; i < movies.length; i++){
+                RatingData rd = movieRatings.get(movies[i]);
+                if(rd != null) rd.inTopRated = false;
+                updateTopRated(movies[i]);
+            }
+        } finally {
+            unlockShared();
+            if(concurrent) movieLocks.unlockAll();
         }
+    }
+
+    /**
+     * Gets the top N films with the most recent rating activity. Each rating counts
+     * for less the older it is, halving every half life (one week by default)
+     * 
+     * @param num          The number of films that should be returned
+     * @param nowEpochSec  The current time, in seconds since 1970. The order of
+     *                     films does not depend on it, but films whose activity
+     *                     has decayed to almost nothing by then are left out
+     * @return A sorted array of film IDs, most trending first. The array should be
+     *         no larger than num
+     */
+    public int[] getTrendingMovies(int num, long nowEpochSec) {
+        if(num <= 0) return new int[0];
+
+        lockShared();
+        try {
+            // log2 score a film needs to still have MIN_TRENDING_ACTIVITY at nowEpochSec
+            double minScore = (double)nowEpochSec / trendingHalfLife + Math.log(MIN_TRENDING_ACTIVITY) / Math.log(2);
+            return trendingTree.top(num, 0, minScore);
+        } finally {
+            unlockShared();
+        }
+    }
+
+    /**
+     * Gets how much recent rating activity a film has at a given time. A rating
+     * made exactly at nowEpochSec counts as 1, a rating made one half life before
+     * counts as 0.5, and so on
+     * 
+     * @param movieID     The movie ID
+     * @param nowEpochSec The current time, in seconds since 1970
+     * @return The film's activity score, 0 if the film cannot be found
+     */
+    public double getTrendingScore(int movieID, long nowEpochSec) {
+        // The movie's stripe guards its map bucket, and comes before sharedLock like in the writers
+        lockMovie(movieID);
+        lockShared();
+        try {
+            RatingData rd = movieRatings.get(movieID);
+            if(rd == null || rd.trendingScore == Double.NEGATIVE_INFINITY) return 0;
+            return Math.pow(2, rd.trendingScore - (double)nowEpochSec / trendingHalfLife);
+        } finally {
+            unlockShared();
+            unlockMovie(movieID);
+        }
+    }
+
+    /**
+     * Changes how fast rating activity decays for getTrendingMovies. Every rating
+     * has to be counted again, so this is O(number of ratings)
+     * 
+     * @param halfLifeSeconds How many seconds it takes a rating's activity to halve
+     */
+    public void setTrendingHalfLife(long halfLifeSeconds) {
+        // Every movie is read, so take all the movie stripes before sharedLock to keep the lock order
+        if(concurrent) movieLocks.lockAll();
+        lockShared();
+        try {
+            trendingHalfLife = Math.max(1, halfLifeSeconds);
+            trendingTree = new OrderStatisticTree();
+
+            int[] movies = allMovieIDs();
+            for(int i = 0; i < movies.length; i++){
+                int movieID = movies[i];
+                RatingData rd = movieRatings.get(movieID);
+                if(rd == null) continue;
+
+                rd.trendingScore = Double.NEGATIVE_INFINITY;
+                for(int j = 0; j < rd.IDsTimeOrder.size(); j++){
+                    rd.trendingScore = logAdd(rd.trendingScore, trendingExponent(rd.otherIDs.get(rd.IDsTimeOrder.get(j)).timestamp));
+                }
+                if(rd.trendingScore != Double.NEGATIVE_INFINITY){
+                    trendingTree.insert(movieID, rd.trendingScore, rd.size());
+                }
+            }
+        } finally {
+            unlockShared();
+            if(concurrent) movieLocks.unlockAll();
+        }
+    }
+
+    /**
+     * Gets the number of ratings for a given film, without copying the ratings
+     * 
+     * @param movieID The movie ID
+     * @return The number of ratings for the film. If the film cannot be found,
+     *         return 0
+     */
+    public int getMovieRatingCount(int movieID) {
+        lockMovie(movieID);
+        try {
+            return movieRatings.get(movieID) == null ? 0 : movieRatings.get(movieID).size();
 
-        return topUsers;
+        } finally {
+            unlockMovie(movieID);
+        }
+    }
+
+    /**
+     * Gets the number of ratings for a given user, without copying the ratings
+     * 
+     * @param userID The user ID
+     * @return The number of ratings made by the user. If the user cannot be found,
+     *         return 0
+     */
+    public int getUserRatingCount(int userID) {
+        lockUser(userID);
+        try {
+            return userRatings.get(userID) == null ? 0 : userRatings.get(userID).size();
+
+        } finally {
+            unlockUser(userID);
+        }
+    }
+
+    /**
+     * Checks whether a given user has rated a given film, without copying their
+     * ratings
+     * 
+     * @param userID  The user ID
+     * @param movieID The movie ID
+     * @return TRUE if the user has rated the film, FALSE otherwise
+     */
+    public boolean hasRated(int userID, int movieID) {
+        lockUser(userID);
+        try {
+            return userRatings.get(userID) != null && userRatings.get(userID).otherIDs.get(movieID) != null;
+
+        } finally {
+            unlockUser(userID);
+        }
+    }
+
+    /**
+     * Get the variance of the ratings for a given film
+     * 
+     * @param movieID The movie ID
+     * @return The population variance of the film's ratings. If the film cannot be
+     *         found, or there are no ratings, return 0
+     */
+    public float getMovieRatingVariance(int movieID) {
+        lockMovie(movieID);
+        try {
+            return movieRatings.get(movieID) == null ? 0 : movieRatings.get(movieID).getVariance();
+
+        } finally {
+            unlockMovie(movieID);
+        }
+    }
+
+    /**
+     * Get the variance of the ratings for a given user
+     * 
+     * @param userID The user ID
+     * @return The population variance of the user's ratings. If the user cannot be
+     *         found, or there are no ratings, return 0
+     */
+    public float getUserRatingVariance(int userID) {
+        lockUser(userID);
+        try {
+            return userRatings.get(userID) == null ? 0 : userRatings.get(userID).getVariance();
+
+        } finally {
+            unlockUser(userID);
+        }
+    }
+
+    /**
+     * Get a given user's ratings with their average rating taken off, so a rating
+     * above 0 means they liked the film more than they usually do. Worked out once
+     * and kept until the user's next rating change
+     * 
+     * @param userID The user ID
+     * @return The adjusted ratings, in the same order as getUserRatings. If the
+     *         user cannot be found, return an empty array
+     */
+    public float[] getUserCentredRatings(int userID) {
+        lockUser(userID);
+        try {
+            return userRatings.get(userID) == null ? new float[0] : userRatings.get(userID).getCentredRatings();
+
+        } finally {
+            unlockUser(userID);
+        }
+    }
+
+    /**
+     * Get a given user's ratings as z-scores, their average rating taken off and
+     * divided by the standard deviation of their ratings. Worked out once and kept
+     * until the user's next rating change
+     * 
+     * @param userID The user ID
+     * @return The z-scores, in the same order as getUserRatings, all 0 if every
+     *         rating is the same. If the user cannot be found, return an empty
+     *         array
+     */
+    public float[] getUserZScores(int userID) {
+        lockUser(userID);
+        try {
+            return userRatings.get(userID) == null ? new float[0] : userRatings.get(userID).getZScores();
+
+        } finally {
+            unlockUser(userID);
+        }
+    }
+
+    /**
+     * Get a given film's ratings with each rater's average rating taken off, so
+     * harsh and generous raters count the same
+     * 
+     * @param movieID The movie ID
+     * @return The adjusted ratings, in the same order as getMovieRatings. If the
+     *         film cannot be found, return an empty array
+     */
+    public float[] getMovieCentredRatings(int movieID) {
+        // Raters and ratings are read together under one lock so they stay paired up. The averages
+        // need the users' stripes, which come before the movie's, so they're read after letting go
+        int[] userIDs;
+        float[] centred;
+        lockMovie(movieID);
+        try {
+            RatingData rd = movieRatings.get(movieID);
+            if(rd == null) return new float[0];
+
+            int n = rd.IDsTimeOrder.size();
+            userIDs = new int[n];
+            centred = new float[n];
+            for(int i = 0; i < n; i++){
+                // flip order, same as getMovieRatings
+                int userID = rd.IDsTimeOrder.get(i);
+                userIDs[n - (i+1)] = userID;
+                centred[n - (i+1)] = rd.otherIDs.get(userID).rating;
+            }
+        } finally {
+            unlockMovie(movieID);
+        }
+
+        for(int i = 0; i < centred.length; i++){
+            centred[i] -= getUserAverageRatings(userIDs[i]);
+        }
+        return centred;
+    }
+
+    /**
+     * Get a percentile of the ratings for a given film, to the nearest half step
+     * 
+     * @param movieID    The movie ID
+     * @param percentile The percentile to find, between 0 and 100 inclusive
+     * @return The rating at the given percentile. If the film cannot be found, or
+     *         there are no ratings, return 0
+     */
+    public float getMovieRatingPercentile(int movieID, float percentile) {
+        lockMovie(movieID);
+        try {
+            return movieRatings.get(movieID) == null ? 0 : movieRatings.get(movieID).getPercentile(percentile);
+
+        } finally {
+            unlockMovie(movieID);
+        }
+    }
+
+    /**
+     * Get a percentile of the ratings for a given user, to the nearest half step
+     * 
+     * @param userID     The user ID
+     * @param percentile The percentile to find, between 0 and 100 inclusive
+     * @return The rating at the given percentile. If the user cannot be found, or
+     *         there are no ratings, return 0
+     */
+    public float getUserRatingPercentile(int userID, float percentile) {
+        lockUser(userID);
+        try {
+            return userRatings.get(userID) == null ? 0 : userRatings.get(userID).getPercentile(percentile);
+
+        } finally {
+            unlockUser(userID);
+        }
+    }
+
+    /**
+     * Get the median rating for a given film, to the nearest half step
+     * 
+     * @param movieID The movie ID
+     * @return The median rating. If the film cannot be found, or there are no
+     *         ratings, return 0
+     */
+    public float getMovieRatingMedian(int movieID) {
+        return getMovieRatingPercentile(movieID, 50);
+    }
+
+    /**
+     * Get the median rating for a given user, to the nearest half step
+     * 
+     * @param userID The user ID
+     * @return The median rating. If the user cannot be found, or there are no
+     *         ratings, return 0
+     */
+    public float getUserRatingMedian(int userID) {
+        return getUserRatingPercentile(userID, 50);
+    }
+
+    /**
+     * Gets a copy of the quantile sketch of a given film's ratings. Its
+     * getNormalizedRankError and getMemoryBytes give the accuracy and size
+     *
+     * @param movieID The movie ID
+     * @return A KllSketch of the film's ratings. If the film cannot be found, an
+     *         empty sketch
+     */
+    public KllSketch getMovieRatingSketch(int movieID) {
+        lockMovie(movieID);
+        try {
+            RatingData rd = movieRatings.get(movieID);
+            if(rd == null) return new KllSketch();
+            return movieSketch(rd).copy();
+
+        } finally {
+            unlockMovie(movieID);
+        }
+    }
+
+    /**
+     * Gets an estimate of a percentile of a given film's ratings from its quantile
+     * sketch, without copying or sorting the ratings. Exact for films with fewer
+     * than KllSketch.DEFAULT_K ratings
+     *
+     * @param movieID    The movie ID
+     * @param percentile The percentile to find, between 0 and 100
+     * @return The estimated rating. If the film cannot be found, or there are no
+     *         ratings, return 0
+     */
+    public float getApproxMovieRatingPercentile(int movieID, float percentile) {
+        lockMovie(movieID);
+        try {
+            RatingData rd = movieRatings.get(movieID);
+            if(rd == null) return 0;
+            return movieSketch(rd).getPercentile(percentile);
+
+        } finally {
+            unlockMovie(movieID);
+        }
+    }
+
+    /**
+     * Merges the monthly quantile sketches of every rating made in the months that
+     * start and end fall in, inclusive. Months that lost a rating since the last
+     * query are rebuilt first, in one pass over the ratings of the stripe they are
+     * kept in
+     *
+     * @param start The start time for the range
+     * @param end   The end time for the range
+     * @return A new KllSketch of the ratings in the range, empty if there are none
+     */
+    public KllSketch getRatingSketch(Calendar start, Calendar end) {
+        KllSketch merged = new KllSketch();
+        int from = RollupCube.keyOf(MONTH, start);
+        int to = RollupCube.keyOf(MONTH, end);
+        for(int s = 0; s < stripes.length; s++){
+            // Rebuilding only reads the stripe's own movies, which its lock guards
+            lockStripe(s);
+            try {
+                Stripe stripe = stripes[s];
+                if(stripe.staleMonths.size() > 0) rebuildStaleMonths(stripe);
+                for(int month = from; month <= to; month++){
+                    merged.merge(stripe.monthSketches.get(month));
+                }
+            } finally {
+                unlockStripe(s);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Gets an estimate of a percentile of every rating made in the months that
+     * start and end fall in, inclusive, by merging monthly quantile sketches
+     *
+     * @param start      The start time for the range
+     * @param end        The end time for the range
+     * @param percentile The percentile to find, between 0 and 100
+     * @return The estimated rating. If there are no ratings in the range, return 0
+     */
+    public float getApproxRatingPercentile(Calendar start, Calendar end, float percentile) {
+        return getRatingSketch(start, end).getPercentile(percentile);
+    }
+
+    /**
+     * Estimates the number of distinct users who made a rating on any day from
+     * start to end, inclusive, by merging daily and monthly HyperLogLog sketches
+     * rather than going through the ratings
+     * 
+     * @param start The start time for the range
+     * @param end   The end time for the range
+     * @return The estimated number of distinct users, see getDistinctCountError
+     */
+    public int getDistinctUsersBetween(Calendar start, Calendar end) {
+        return distinctBetween(true, start, end);
+    }
+
+    /**
+     * Estimates the number of distinct films rated on any day from start to end,
+     * inclusive, by merging daily and monthly HyperLogLog sketches
+     * 
+     * @param start The start time for the range
+     * @param end   The end time for the range
+     * @return The estimated number of distinct films, see getDistinctCountError
+     */
+    public int getDistinctMoviesBetween(Calendar start, Calendar end) {
+        return distinctBetween(false, start, end);
+    }
+
+    /**
+     * Estimates the number of distinct users active in each day, week or month
+     * from the one start falls in to the one end falls in. Weeks are seven day
+     * windows starting on start's day
+     * 
+     * @param unit  DAY, WEEK or MONTH
+     * @param start The start time for the range
+     * @param end   The end time for the range
+     * @return One estimate per bucket, oldest first. Empty if end is before start
+     */
+    public int[] getDistinctUsersPer(int unit, Calendar start, Calendar end) {
+        return distinctPer(true, unit, start, end);
+    }
+
+    /**
+     * Estimates the number of distinct films rated in each day, week or month
+     * from the one start falls in to the one end falls in. Weeks are seven day
+     * windows starting on start's day
+     * 
+     * @param unit  DAY, WEEK or MONTH
+     * @param start The start time for the range
+     * @param end   The end time for the range
+     * @return One estimate per bucket, oldest first. Empty if end is before start
+     */
+    public int[] getDistinctMoviesPer(int unit, Calendar start, Calendar end) {
+        return distinctPer(false, unit, start, end);
+    }
+
+    /**
+     * Gets the standard error of the distinct count estimates, as a share of the
+     * true count (about 0.016). Counts too small to fill many registers are
+     * usually exact
+     */
+    public double getDistinctCountError() {
+        return new HyperLogLog().getRelativeError();
+    }
+
+    /**
+     * Get the distribution of ratings for a given film
+     * 
+     * @param movieID The movie ID
+     * @return An array of 11 counts, where index i is the number of ratings of
+     *         i * 0.5 stars. If the film cannot be found, all counts are 0
+     */
+    public int[] getMovieRatingHistogram(int movieID) {
+        lockMovie(movieID);
+        try {
+            return movieRatings.get(movieID) == null ? new int[HISTOGRAM_BUCKETS] : movieRatings.get(movieID).getHistogram();
+
+        } finally {
+            unlockMovie(movieID);
+        }
+    }
+
+    /**
+     * Get the distribution of ratings for a given user
+     * 
+     * @param userID The user ID
+     * @return An array of 11 counts, where index i is the number of ratings of
+     *         i * 0.5 stars. If the user cannot be found, all counts are 0
+     */
+    public int[] getUserRatingHistogram(int userID) {
+        lockUser(userID);
+        try {
+            return userRatings.get(userID) == null ? new int[HISTOGRAM_BUCKETS] : userRatings.get(userID).getHistogram();
+
+        } finally {
+            unlockUser(userID);
+        }
+    }
+
+    /**
+     * Builds an immutable sparse matrix of every rating, so all of a user's or a
+     * movie's ratings can be walked over plain arrays. Users are copied out in
+     * parallel. In concurrent mode each user is copied as it was when its lock was
+     * taken, so ratings made while building may or may not be included
+     * 
+     * @return A new SparseRatingMatrix of all ratings
+     */
+    public SparseRatingMatrix toSparseMatrix() {
+        int[] users = allUserIDs();
+
+        // Copy each user's movies and ratings
+        int[][] userMovies = new int[users.length][];
+        float[][] userValues = new float[users.length][];
+        Parallel.forRange(0, users.length, 64, (from, to) -> {
+            for(int i = from; i < to; i++){
+                lockUser(users[i]);
+                try {
+                    RatingData rd = userRatings.get(users[i]);
+                    int n = rd.IDsTimeOrder.size();
+                    userMovies[i] = new int[n];
+                    userValues[i] = new float[n];
+                    for(int j = 0; j < n; j++){
+                        int movieID = rd.IDsTimeOrder.get(j);
+                        userMovies[i][j] = movieID;
+                        userValues[i][j] = rd.otherIDs.get(movieID).rating;
+                    }
+                } finally {
+                    unlockUser(users[i]);
+                }
+            }
+        });
+
+        // Flatten into triples
+        int total = 0;
+        for(int i = 0; i < users.length; i++){
+            total += userMovies[i].length;
+        }
+        int[] tripleUsers = new int[total];
+        int[] tripleMovies = new int[total];
+        float[] tripleRatings = new float[total];
+        int pos = 0;
+        for(int i = 0; i < users.length; i++){
+            for(int j = 0; j < userMovies[i].length; j++){
+                tripleUsers[pos] = users[i];
+                tripleMovies[pos] = userMovies[i][j];
+                tripleRatings[pos] = userValues[i][j];
+                pos++;
+            }
+        }
+
+        return SparseRatingMatrix.fromTriples(tripleUsers, tripleMovies, tripleRatings, total);
+    }
+
+    /**
+     * Registers a listener to be told which movies and users had ratings added,
+     * changed or removed. Changes are collected into batches, with each movie and
+     * user only listed once per batch, and delivered on the writing thread once
+     * getChangeBatchSize() changes have built up, or when flushChanges() is called.
+     * Listeners are called with no locks held, so they can read the store
+     *
+     * @param listener The listener to add
+     */
+    public void addChangeListener(ChangeListener listener) {
+        synchronized(deliveryLock){
+            ChangeListener[] updated = new ChangeListener[listeners.length + 1];
+            System.arraycopy(listeners, 0, updated, 0, listeners.length);
+            updated[listeners.length] = listener;
+            listeners = updated;
+        }
+    }
+
+    /**
+     * Stops a listener being told about changes. Does nothing if it was not
+     * registered
+     *
+     * @param listener The listener to remove
+     */
+    public void removeChangeListener(ChangeListener listener) {
+        synchronized(deliveryLock){
+            int count = 0;
+            ChangeListener[] updated = new ChangeListener[listeners.length];
+            for(int i = 0; i < listeners.length; i++){
+                if(listeners[i] != listener) updated[count++] = listeners[i];
+            }
+            listeners = Arrays.copyOf(updated, count);
+        }
+    }
+
+    /**
+     * Delivers every change made since the last batch to the listeners straight
+     * away, e.g. at the end of a bulk load. Must not be called while holding a
+     * lock a writer could be waiting on
+     */
+    public void flushChanges() {
+        synchronized(deliveryLock){
+            // Reset first, so a change noted while collecting is at worst delivered early
+            pendingChanges.set(0);
+
+            // A movie is only ever in its own stripe, but a user can be in several
+            int[][] movieParts = new int[stripes.length][];
+            int numMovies = 0;
+            IntIntMap users = new IntIntMap();
+            for(int s = 0; s < stripes.length; s++){
+                lockStripe(s);
+                try {
+                    Stripe stripe = stripes[s];
+                    movieParts[s] = stripe.changedMovies.keys();
+                    int[] stripeUsers = stripe.changedUsers.keys();
+                    for(int i = 0; i < stripeUsers.length; i++){
+                        users.put(stripeUsers[i], 1);
+                    }
+                    stripe.changedMovies.clear();
+                    stripe.changedUsers.clear();
+                } finally {
+                    unlockStripe(s);
+                }
+                numMovies += movieParts[s].length;
+            }
+
+            int[] movieIDs = new int[numMovies];
+            int pos = 0;
+            for(int s = 0; s < stripes.length; s++){
+                System.arraycopy(movieParts[s], 0, movieIDs, pos, movieParts[s].length);
+                pos += movieParts[s].length;
+            }
+            int[] userIDs = users.keys();
+
+            if(movieIDs.length == 0 && userIDs.length == 0) return;
+            ChangeListener[] current = listeners;
+            for(int i = 0; i < current.length; i++){
+                current[i].ratingsChanged(movieIDs, userIDs);
+            }
+        }
+    }
+
+    // Number of changes collected before a batch is delivered
+    public int getChangeBatchSize() {
+        return changeBatchSize;
+    }
+
+    /**
+     * Changes how many changes are collected before a batch is delivered. Bigger
+     * batches coalesce more repeated changes to the same movies and users
+     *
+     * @param size The batch size, at least 1
+     */
+    public void setChangeBatchSize(int size) {
+        changeBatchSize = Math.max(1, size);
+    }
+
+    /**
+     * Turns on versioned snapshots. Every rating is copied once into the first
+     * base, after which each write also appends to a change log. Does nothing if
+     * they are already on
+     */
+    public void enableSnapshots() {
+        // Every user and movie is read, so take all the stripes in the usual order
+        if(concurrent){
+            userLocks.lockAll();
+            movieLocks.lockAll();
+        }
+        lockShared();
+        try {
+            if(changeLog != null) return;
+
+            int total = numOfRatings.get();
+            int[] users = new int[total];
+            int[] movies = new int[total];
+            float[] values = new float[total];
+            long[] times = new long[total];
+            int count = 0;
+            int[] allUsers = allUserIDs();
+            for(int i = 0; i < allUsers.length; i++){
+                int userID = allUsers[i];
+                RatingData rd = userRatings.get(userID);
+                for(int j = 0; j < rd.IDsTimeOrder.size(); j++){
+                    RatingData.Rating r = rd.otherIDs.get(rd.IDsTimeOrder.get(j));
+                    users[count] = userID;
+                    movies[count] = rd.IDsTimeOrder.get(j);
+                    values[count] = r.rating;
+                    times[count] = r.timestamp.getTimeInMillis();
+                    count++;
+                }
+            }
+
+            synchronized(snapshotLock){
+                snapshotBase = RatingsSnapshot.fromEntries(0, users, movies, values, times, count);
+            }
+            changeLog = new RatingLog();
+        } finally {
+            unlockShared();
+            if(concurrent){
+                movieLocks.unlockAll();
+                userLocks.unlockAll();
+            }
+        }
+    }
+
+    /**
+     * Takes a consistent, immutable view of every rating as of now. Reading it
+     * needs no locks and is not affected by later writes, so screens and exports
+     * can use it while ratings keep being added. Costs O(changes since the last
+     * base); once enough changes have built up they are merged into a new base and
+     * the log before it is dropped. Old snapshots are freed once nobody holds them
+     *
+     * @return A RatingsSnapshot of the current version
+     * @throws IllegalStateException If enableSnapshots() has not been called
+     */
+    public RatingsSnapshot snapshot() {
+        RatingLog log = changeLog;
+        if(log == null) throw new IllegalStateException("Snapshots are not enabled, call enableSnapshots() first");
+
+        synchronized(snapshotLock){
+            RatingsSnapshot snap = snapshotBase.withChanges(log, log.version());
+            if(snap.getChangeCount() >= Math.max(MIN_COMPACTION, snapshotBase.size() / 4)){
+                snap = snap.compact();
+                snapshotBase = snap;
+                log.trim(snap.getVersion());
+            }
+            return snap;
+        }
+    }
+
+    /**
+     * Gets the number of changes made since snapshots were turned on, which is the
+     * version the next snapshot will have
+     *
+     * @return The current version, 0 if snapshots are off
+     */
+    public int getVersion() {
+        RatingLog log = changeLog;
+        return log == null ? 0 : log.version();
     }
 
     /**
@@ -481,7 +2265,7 @@ public class Ratings implements IRatings {
      */
     @Override
     public int size() {
-        return numOfRatings;
+        return numOfRatings.get();
     }
 
 }
@@ -0,0 +1,402 @@
+package stores;
+
+import java.util.Arrays;
+import java.util.Calendar;
+
+import structures.RatingLog;
+import structures.SparseRatingMatrix;
+
+/*
+ * Immutable view of every rating in a Ratings store as of one version, see Ratings.snapshot().
+ * A snapshot is a compacted base (every rating as of the base's version, sorted by user then
+ * movie) plus the changes made since, copied out of the change log when the snapshot was taken
+ * and sorted the same way, with only the latest change to each rating kept. Queries merge the two,
+ * so nothing a writer does afterwards is seen and nothing needs locking.
+ * Ratings are keyed by (user << 32 | movie). byMovie lists (movie << 32 | position) in order, so a
+ * movie's ratings can be found by binary search too.
+ * Old snapshots hold on to their own base, so a base is freed once no snapshot uses it.
+*/
+public class RatingsSnapshot {
+
+    private final int version;
+
+    private final long[] keys;
+    private final float[] values;
+    private final long[] times; // in milliseconds
+    private final long[] byMovie;
+
+    // Changes since the base, NaN for a removed rating. Empty for a base
+    private final long[] changeKeys;
+    private final float[] changeValues;
+    private final long[] changeTimes;
+    private final long[] changeByMovie;
+
+    private final int size;
+
+    private RatingsSnapshot(int version, long[] keys, float[] values, long[] times, long[] byMovie,
+            long[] changeKeys, float[] changeValues, long[] changeTimes, int size){
+        this.version = version;
+        this.keys = keys;
+        this.values = values;
+        this.times = times;
+        this.byMovie = byMovie;
+        this.changeKeys = changeKeys;
+        this.changeValues = changeValues;
+        this.changeTimes = changeTimes;
+        this.changeByMovie = movieOrder(changeKeys);
+        this.size = size;
+    }
+
+    private static long key(int userID, int movieID){
+        return ((long)userID << 32) | (movieID & 0xFFFFFFFFL);
+    }
+
+    private static int userOf(long key){
+        return (int)(key >> 32);
+    }
+
+    private static int movieOf(long key){
+        return (int)key;
+    }
+
+    // (movie << 32 | position) for every key, sorted, so each movie's positions are together in user order
+    private static long[] movieOrder(long[] keys){
+        long[] order = new long[keys.length];
+        for(int i = 0; i < keys.length; i++){
+            order[i] = ((long)movieOf(keys[i]) << 32) | i;
+        }
+        Arrays.parallelSort(order);
+        return order;
+    }
+
+    // Positions of keys in key order, equal keys stay in the order given (merge sort)
+    private static int[] sortByKey(long[] keys){
+        int n = keys.length;
+        int[] order = new int[n];
+        int[] buffer = new int[n];
+        for(int i = 0; i < n; i++) order[i] = i;
+
+        for(int width = 1; width < n; width *= 2){
+            for(int from = 0; from < n; from += 2 * width){
+                int mid = Math.min(from + width, n);
+                int to = Math.min(from + 2 * width, n);
+                int a = from, b = mid, out = from;
+                while(a < mid && b < to){
+                    buffer[out++] = keys[order[b]] < keys[order[a]] ? order[b++] : order[a++];
+                }
+                while(a < mid) buffer[out++] = order[a++];
+                while(b < to) buffer[out++] = order[b++];
+            }
+            int[] tmp = order;
+            order = buffer;
+            buffer = tmp;
+        }
+        return order;
+    }
+
+    // First index in a sorted array whose value is at least x
+    private static int lowerBound(long[] arr, long x){
+        int lo = 0, hi = arr.length;
+        while(lo < hi){
+            int mid = (lo + hi) >>> 1;
+            if(arr[mid] < x) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // First index in a sorted array whose value is more than x
+    private static int upperBound(long[] arr, long x){
+        int lo = 0, hi = arr.length;
+        while(lo < hi){
+            int mid = (lo + hi) >>> 1;
+            if(arr[mid] <= x) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Builds a base from (user, movie, rating, time) entries. Each user and movie
+     * pair must only appear once
+     */
+    static RatingsSnapshot fromEntries(int version, int[] users, int[] movies, float[] ratings, long[] times, int count){
+        long[] unsorted = new long[count];
+        for(int i = 0; i < count; i++){
+            unsorted[i] = key(users[i], movies[i]);
+        }
+        int[] order = sortByKey(unsorted);
+
+        long[] keys = new long[count];
+        float[] values = new float[count];
+        long[] sortedTimes = new long[count];
+        for(int i = 0; i < count; i++){
+            keys[i] = unsorted[order[i]];
+            values[i] = ratings[order[i]];
+            sortedTimes[i] = times[order[i]];
+        }
+        return new RatingsSnapshot(version, keys, values, sortedTimes, movieOrder(keys), new long[0], new float[0], new long[0], count);
+    }
+
+    /**
+     * Takes this base forward to a later version by copying the log entries from
+     * this version up to it. Only the latest change to each rating is kept
+     *
+     * @param log The change log, with entries from this version still held
+     * @param to  The version of the new snapshot, no more than log.version()
+     */
+    RatingsSnapshot withChanges(RatingLog log, int to){
+        int n = to - version;
+        long[] logKeys = new long[n];
+        for(int i = 0; i < n; i++){
+            logKeys[i] = key(log.user(version + i), log.movie(version + i));
+        }
+        int[] order = sortByKey(logKeys);
+
+        // Sorted with equal keys in log order, so the last of each run is the latest change
+        int unique = 0;
+        for(int i = 0; i < n; i++){
+            if(i == n - 1 || logKeys[order[i + 1]] != logKeys[order[i]]) unique++;
+        }
+        long[] cKeys = new long[unique];
+        float[] cValues = new float[unique];
+        long[] cTimes = new long[unique];
+        int newSize = size;
+        int c = 0;
+        for(int i = 0; i < n; i++){
+            if(i < n - 1 && logKeys[order[i + 1]] == logKeys[order[i]]) continue;
+            int entry = version + order[i];
+            cKeys[c] = logKeys[order[i]];
+            cValues[c] = log.rating(entry);
+            cTimes[c] = log.time(entry);
+
+            if(Arrays.binarySearch(keys, cKeys[c]) >= 0) newSize--;
+            if(!Float.isNaN(cValues[c])) newSize++;
+            c++;
+        }
+
+        return new RatingsSnapshot(to, keys, values, times, byMovie, cKeys, cValues, cTimes, newSize);
+    }
+
+    /**
+     * Merges the changes into a new base at the same version, so later snapshots
+     * don't have to copy them out of the log again
+     */
+    RatingsSnapshot compact(){
+        Merged all = merge(Long.MIN_VALUE, Long.MAX_VALUE);
+        long[] merged = Arrays.copyOf(all.keys, all.count);
+        return new RatingsSnapshot(version, merged, Arrays.copyOf(all.values, all.count), Arrays.copyOf(all.times, all.count),
+                movieOrder(merged), new long[0], new float[0], new long[0], all.count);
+    }
+
+    // Live ratings found by a merge, keys[0 .. count)
+    private static class Merged {
+        long[] keys;
+        float[] values;
+        long[] times;
+        int count;
+
+        Merged(int capacity){
+            keys = new long[capacity];
+            values = new float[capacity];
+            times = new long[capacity];
+        }
+
+        void add(long key, float value, long time){
+            keys[count] = key;
+            values[count] = value;
+            times[count] = time;
+            count++;
+        }
+    }
+
+    // Live ratings with keys from lo to hi inclusive, a change replacing the base rating with the same key
+    private Merged merge(long lo, long hi){
+        int i = lowerBound(keys, lo), iEnd = upperBound(keys, hi);
+        int j = lowerBound(changeKeys, lo), jEnd = upperBound(changeKeys, hi);
+        Merged out = new Merged((iEnd - i) + (jEnd - j));
+
+        while(i < iEnd || j < jEnd){
+            if(j == jEnd || (i < iEnd && keys[i] < changeKeys[j])){
+                out.add(keys[i], values[i], times[i]);
+                i++;
+            } else {
+                if(i < iEnd && keys[i] == changeKeys[j]) i++;
+                if(!Float.isNaN(changeValues[j])) out.add(changeKeys[j], changeValues[j], changeTimes[j]);
+                j++;
+            }
+        }
+        return out;
+    }
+
+    // Live ratings of one movie in user order, the same merge done over byMovie
+    private Merged mergeMovie(int movieID){
+        long lo = (long)movieID << 32;
+        long hi = lo | 0xFFFFFFFFL;
+        int i = lowerBound(byMovie, lo), iEnd = upperBound(byMovie, hi);
+        int j = lowerBound(changeByMovie, lo), jEnd = upperBound(changeByMovie, hi);
+        Merged out = new Merged((iEnd - i) + (jEnd - j));
+
+        while(i < iEnd || j < jEnd){
+            int p = i < iEnd ? (int)byMovie[i] : -1;
+            int q = j < jEnd ? (int)changeByMovie[j] : -1;
+            if(q < 0 || (p >= 0 && keys[p] < changeKeys[q])){
+                out.add(keys[p], values[p], times[p]);
+                i++;
+            } else {
+                if(p >= 0 && keys[p] == changeKeys[q]) i++;
+                if(!Float.isNaN(changeValues[q])) out.add(changeKeys[q], changeValues[q], changeTimes[q]);
+                j++;
+            }
+        }
+        return out;
+    }
+
+    private Merged mergeUser(int userID){
+        return merge((long)userID << 32, ((long)userID << 32) | 0xFFFFFFFFL);
+    }
+
+    private static float average(Merged m){
+        if(m.count == 0) return 0;
+        double sum = 0;
+        for(int i = 0; i < m.count; i++) sum += m.values[i];
+        return (float)(sum / m.count);
+    }
+
+    // The version of the store this is a view of, the number of changes made before it
+    public int getVersion() {
+        return version;
+    }
+
+    // Number of changes copied out of the log on top of the base
+    public int getChangeCount() {
+        return changeKeys.length;
+    }
+
+    /**
+     * Gets the rating a user gave a film
+     *
+     * @param userID  The user ID
+     * @param movieID The movie ID
+     * @return The rating, or -1 if the user had not rated the film
+     */
+    public float getRating(int userID, int movieID) {
+        long k = key(userID, movieID);
+        int c = Arrays.binarySearch(changeKeys, k);
+        if(c >= 0) return Float.isNaN(changeValues[c]) ? -1 : changeValues[c];
+        int b = Arrays.binarySearch(keys, k);
+        return b >= 0 ? values[b] : -1;
+    }
+
+    /**
+     * Get the IDs of every film a given user rated, in order of movie ID
+     *
+     * @param userID The user ID
+     * @return An array of movie IDs. If the user cannot be found, an empty array
+     */
+    public int[] getUserMovieIDs(int userID) {
+        Merged m = mergeUser(userID);
+        int[] movieIDs = new int[m.count];
+        for(int i = 0; i < m.count; i++) movieIDs[i] = movieOf(m.keys[i]);
+        return movieIDs;
+    }
+
+    /**
+     * Get all the ratings for a given user, in the same order as getUserMovieIDs
+     *
+     * @param userID The user ID
+     * @return An array of ratings. If the user cannot be found, an empty array
+     */
+    public float[] getUserRatings(int userID) {
+        Merged m = mergeUser(userID);
+        return Arrays.copyOf(m.values, m.count);
+    }
+
+    /**
+     * Get the IDs of every user who rated a given film, in order of user ID
+     *
+     * @param movieID The movie ID
+     * @return An array of user IDs. If the film cannot be found, an empty array
+     */
+    public int[] getMovieUserIDs(int movieID) {
+        Merged m = mergeMovie(movieID);
+        int[] userIDs = new int[m.count];
+        for(int i = 0; i < m.count; i++) userIDs[i] = userOf(m.keys[i]);
+        return userIDs;
+    }
+
+    /**
+     * Get all the ratings for a given film, in the same order as getMovieUserIDs
+     *
+     * @param movieID The movie ID
+     * @return An array of ratings. If the film cannot be found, an empty array
+     */
+    public float[] getMovieRatings(int movieID) {
+        Merged m = mergeMovie(movieID);
+        return Arrays.copyOf(m.values, m.count);
+    }
+
+    /**
+     * Get the average rating for a given user
+     *
+     * @param userID The user ID
+     * @return The average rating. If the user cannot be found, return 0
+     */
+    public float getUserAverageRatings(int userID) {
+        return average(mergeUser(userID));
+    }
+
+    /**
+     * Get the average rating for a given film
+     *
+     * @param movieID The movie ID
+     * @return The average rating. If the film cannot be found, return 0
+     */
+    public float getMovieAverageRatings(int movieID) {
+        return average(mergeMovie(movieID));
+    }
+
+    /**
+     * Find all ratings between a given start date and end date. If a rating falls
+     * exactly on start or end it is not included
+     *
+     * @param start The start time for the range
+     * @param end   The end time for the range
+     * @return An array of ratings, in order of user ID then movie ID
+     */
+    public float[] getRatingsBetween(Calendar start, Calendar end) {
+        long startMs = start.getTimeInMillis();
+        long endMs = end.getTimeInMillis();
+        Merged all = merge(Long.MIN_VALUE, Long.MAX_VALUE);
+
+        float[] found = new float[all.count];
+        int count = 0;
+        for(int i = 0; i < all.count; i++){
+            if(all.times[i] > startMs && all.times[i] < endMs) found[count++] = all.values[i];
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * Builds an immutable sparse matrix of every rating in this snapshot, for
+     * exports and models that need a consistent copy while ratings keep coming in
+     *
+     * @return A new SparseRatingMatrix
+     */
+    public SparseRatingMatrix toSparseMatrix() {
+        Merged all = merge(Long.MIN_VALUE, Long.MAX_VALUE);
+        int[] users = new int[all.count];
+        int[] movies = new int[all.count];
+        for(int i = 0; i < all.count; i++){
+            users[i] = userOf(all.keys[i]);
+            movies[i] = movieOf(all.keys[i]);
+        }
+        return SparseRatingMatrix.fromTriples(users, movies, all.values, all.count);
+    }
+
+    // Number of ratings in the snapshot
+    public int size() {
+        return size;
+    }
+
+}
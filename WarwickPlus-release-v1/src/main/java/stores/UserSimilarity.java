@@ -0,0 +1,384 @@
+package stores;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import structures.IntIntMap;
+import structures.SparseRatingMatrix;
+import structures.TopKHeap;
+import utils.Parallel;
+
+/*
+ * "Users like you" over a Ratings store, comparing the sets of films users have rated.
+ * Each user gets a MinHash signature: for each of bands * rows hash functions, the smallest hash
+ * of any film they rated. Two users' signatures agree in a given position with probability equal
+ * to the Jaccard similarity of their sets, so the share of positions that agree estimates it.
+ * Signatures are split into bands of rows values, and users whose band matches go in the same
+ * bucket (one bucket table per band). Only users sharing at least one bucket are compared, so a
+ * query is sub-linear in the number of users. A pair with similarity s shares a bucket with
+ * probability 1 - (1 - s^rows)^bands: more bands finds more true neighbours (recall), more rows
+ * per band lets fewer dissimilar users through (precision).
+ * Buckets are doubly linked chains through flat arrays, so a user can be moved in O(bands).
+*/
+public class UserSimilarity implements Ratings.ChangeListener {
+
+    public static final int DEFAULT_BANDS = 16;
+    public static final int DEFAULT_ROWS = 4;
+    private static final int EMPTY = Integer.MAX_VALUE; // signature value before any film is folded in
+
+    private final Ratings ratings;
+    private final int bands, rows, numHashes;
+    private final int[] seeds; // one per hash function
+    private boolean built;
+
+    private IntIntMap userIndex; // user ID -> row in the tables
+    private int[] userIDs; // row -> user ID
+    private int numUsers;
+
+    private int[] signatures; // numHashes slots per row
+    private int[] bandKeys; // bands slots per row, the bucket each band of the row is in
+    private boolean[] inBuckets; // row has ratings, so is in every band's buckets
+
+    // Per band bucket chains: heads[b] maps a band key to the first row in it, and next/prev
+    // (bands slots per row) link the rest
+    private IntIntMap[] heads;
+    private int[] next, prev;
+
+    private double buildThroughput; // users per second of the last build
+
+    /**
+     * Creates an index with DEFAULT_BANDS bands of DEFAULT_ROWS rows. Nothing is
+     * worked out until build() is called or the first query is made
+     *
+     * @param ratings The ratings to compare users by
+     */
+    public UserSimilarity(Ratings ratings) {
+        this(ratings, DEFAULT_BANDS, DEFAULT_ROWS, 126L);
+    }
+
+    /**
+     * Creates an index with a given number of bands and rows per band. Users whose
+     * Jaccard similarity is above about (1/bands)^(1/rows) are likely to be found
+     *
+     * @param ratings The ratings to compare users by
+     * @param bands   Number of bands, more finds more similar users
+     * @param rows    Rows per band, more lets through fewer dissimilar users
+     * @param seed    Seed for the hash functions
+     */
+    public UserSimilarity(Ratings ratings, int bands, int rows, long seed) {
+        if(bands < 1 || rows < 1) throw new IllegalArgumentException("bands and rows must be at least 1");
+        this.ratings = ratings;
+        this.bands = bands;
+        this.rows = rows;
+        this.numHashes = bands * rows;
+        this.built = false;
+
+        Random random = new Random(seed);
+        seeds = new int[numHashes];
+        for(int i = 0; i < numHashes; i++){
+            seeds[i] = random.nextInt();
+        }
+        allocate(16);
+    }
+
+    private void allocate(int capacity){
+        userIndex = new IntIntMap(capacity);
+        userIDs = new int[capacity];
+        signatures = new int[capacity * numHashes];
+        bandKeys = new int[capacity * bands];
+        inBuckets = new boolean[capacity];
+        next = new int[capacity * bands];
+        prev = new int[capacity * bands];
+        heads = new IntIntMap[bands];
+        for(int b = 0; b < bands; b++){
+            heads[b] = new IntIntMap();
+        }
+        numUsers = 0;
+    }
+
+    private void grow(){
+        int capacity = userIDs.length * 2;
+        userIDs = Arrays.copyOf(userIDs, capacity);
+        signatures = Arrays.copyOf(signatures, capacity * numHashes);
+        bandKeys = Arrays.copyOf(bandKeys, capacity * bands);
+        inBuckets = Arrays.copyOf(inBuckets, capacity);
+        next = Arrays.copyOf(next, capacity * bands);
+        prev = Arrays.copyOf(prev, capacity * bands);
+    }
+
+    // Row of a user, adding an empty row for it if it's new
+    private int rowOf(int userID){
+        int i = userIndex.get(userID);
+        if(i >= 0) return i;
+
+        if(numUsers == userIDs.length) grow();
+        i = numUsers++;
+        userIndex.put(userID, i);
+        userIDs[i] = userID;
+        Arrays.fill(signatures, i * numHashes, (i + 1) * numHashes, EMPTY);
+        inBuckets[i] = false;
+        return i;
+    }
+
+    // The h-th hash function, a seeded integer mix
+    private int hash(int h, int movieID){
+        int x = (movieID ^ seeds[h]) * 0x9E3779B9;
+        x ^= x >>> 16;
+        x *= 0x85EBCA6B;
+        return x ^ (x >>> 13);
+    }
+
+    // Folds in one film, a signature only ever goes down when films are added
+    private void addToSignature(int row, int movieID){
+        int off = row * numHashes;
+        for(int h = 0; h < numHashes; h++){
+            int v = hash(h, movieID);
+            if(v < signatures[off + h]) signatures[off + h] = v;
+        }
+    }
+
+    private void computeSignature(int row, int[] movieIDs, int from, int to){
+        Arrays.fill(signatures, row * numHashes, (row + 1) * numHashes, EMPTY);
+        for(int p = from; p < to; p++){
+            addToSignature(row, movieIDs[p]);
+        }
+    }
+
+    // Key of the bucket one band of a row's signature falls in
+    private int bandKey(int row, int band){
+        int off = row * numHashes + band * rows;
+        int key = band;
+        for(int r = 0; r < rows; r++){
+            key = key * 31 + signatures[off + r];
+        }
+        key *= 0x9E3779B9;
+        return key ^ (key >>> 16);
+    }
+
+    private void link(int row, int band){
+        int slot = row * bands + band;
+        int key = bandKey(row, band);
+        int head = heads[band].get(key);
+        bandKeys[slot] = key;
+        prev[slot] = -1;
+        next[slot] = head;
+        if(head >= 0) prev[head * bands + band] = row;
+        heads[band].put(key, row);
+    }
+
+    private void unlink(int row, int band){
+        int slot = row * bands + band;
+        int before = prev[slot];
+        int after = next[slot];
+        if(after >= 0) prev[after * bands + band] = before;
+        if(before >= 0){
+            next[before * bands + band] = after;
+        } else if(after >= 0){
+            heads[band].put(bandKeys[slot], after);
+        } else {
+            heads[band].remove(bandKeys[slot]);
+        }
+    }
+
+    // Moves a row to the buckets of its current signature, users with no ratings aren't in any
+    private void rebucket(int row, boolean hasRatings){
+        if(inBuckets[row]){
+            for(int b = 0; b < bands; b++) unlink(row, b);
+        }
+        inBuckets[row] = hasRatings;
+        if(inBuckets[row]){
+            for(int b = 0; b < bands; b++) link(row, b);
+        }
+    }
+
+    /**
+     * Works out every user's signature from scratch in parallel, then fills each
+     * band's buckets in parallel, as the bands don't share anything
+     */
+    public synchronized void build() {
+        long start = System.nanoTime();
+
+        SparseRatingMatrix matrix = ratings.toSparseMatrix();
+        int n = matrix.numUsers();
+        int[] rowOffsets = matrix.getRowOffsets();
+        int[] rowMovies = matrix.getRowMovies();
+
+        allocate(Math.max(16, n));
+        for(int u = 0; u < n; u++){
+            userIDs[u] = matrix.userID(u);
+            userIndex.put(userIDs[u], u);
+        }
+        numUsers = n;
+
+        // The matrix holds dense movie indexes, so map back to IDs to hash the same as later updates
+        Parallel.forRange(0, n, 64, (from, to) -> {
+            for(int u = from; u < to; u++){
+                int[] movieIDs = new int[rowOffsets[u + 1] - rowOffsets[u]];
+                for(int p = 0; p < movieIDs.length; p++){
+                    movieIDs[p] = matrix.movieID(rowMovies[rowOffsets[u] + p]);
+                }
+                computeSignature(u, movieIDs, 0, movieIDs.length);
+                inBuckets[u] = movieIDs.length > 0;
+            }
+        });
+
+        Parallel.forRange(0, bands, 1, (from, to) -> {
+            for(int b = from; b < to; b++){
+                for(int u = 0; u < n; u++){
+                    if(inBuckets[u]) link(u, b);
+                }
+            }
+        });
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        buildThroughput = seconds > 0 ? n / seconds : 0;
+        built = true;
+    }
+
+    /**
+     * Tells the index that a user's rating of a film was added, changed or removed.
+     * An added film is folded into the user's signature in O(bands * rows), a
+     * removed one means the signature is worked out again from the user's films
+     *
+     * @param userID  The user ID
+     * @param movieID The movie ID
+     */
+    public synchronized void ratingChanged(int userID, int movieID) {
+        if(!built) return; // the first build will see it anyway
+
+        int row = rowOf(userID);
+        if(ratings.hasRated(userID, movieID)){
+            addToSignature(row, movieID); // no change if it was already there
+            rebucket(row, true);
+        } else {
+            int[] movieIDs = ratings.getUserMovieIDs(userID);
+            computeSignature(row, movieIDs, 0, movieIDs.length);
+            rebucket(row, movieIDs.length > 0);
+        }
+    }
+
+    /**
+     * Takes a batch of changes from Ratings. A batch doesn't say which films were
+     * added or removed, so each changed user's signature is worked out again
+     *
+     * @param movieIDs The movies whose ratings changed
+     * @param userIDs  The users whose ratings changed
+     */
+    @Override
+    public synchronized void ratingsChanged(int[] movieIDs, int[] userIDs) {
+        if(!built) return;
+
+        for(int i = 0; i < userIDs.length; i++){
+            int row = rowOf(userIDs[i]);
+            int[] rated = ratings.getUserMovieIDs(userIDs[i]);
+            computeSignature(row, rated, 0, rated.length);
+            rebucket(row, rated.length > 0);
+        }
+    }
+
+    // Share of signature positions two rows agree on
+    private float estimate(int a, int b){
+        int offA = a * numHashes;
+        int offB = b * numHashes;
+        int same = 0;
+        for(int h = 0; h < numHashes; h++){
+            if(signatures[offA + h] == signatures[offB + h]) same++;
+        }
+        return (float)same / numHashes;
+    }
+
+    /**
+     * Gets the users most like a given user, by the films they have both rated.
+     * Only users sharing an LSH bucket are compared, so users less similar than
+     * about getThreshold() may be missed
+     *
+     * @param userID The user ID
+     * @param num    The maximum number of users to return
+     * @return The user IDs, most similar first. If the user cannot be found or has
+     *         no similar users, return an empty array
+     */
+    public synchronized int[] getSimilarUsers(int userID, int num) {
+        if(!built) build();
+        int row = userIndex.get(userID);
+        if(row < 0 || num <= 0 || !inBuckets[row]) return new int[0];
+
+        IntIntMap seen = new IntIntMap();
+        TopKHeap heap = new TopKHeap(Math.min(num, numUsers)); // num can be far more than there are users
+        for(int b = 0; b < bands; b++){
+            for(int other = heads[b].get(bandKeys[row * bands + b]); other >= 0; other = next[other * bands + b]){
+                if(other == row || seen.containsKey(other)) continue;
+                seen.put(other, 1);
+                heap.offer(userIDs[other], estimate(row, other));
+            }
+        }
+
+        int[] found = new int[heap.size()];
+        heap.drain(found, null, 0);
+        return found;
+    }
+
+    /**
+     * Estimates the Jaccard similarity of the sets of films two users have rated
+     *
+     * @param userA The first user ID
+     * @param userB The second user ID
+     * @return The estimate, between 0 and 1. If either user cannot be found, 0
+     */
+    public synchronized float getEstimatedSimilarity(int userA, int userB) {
+        if(!built) build();
+        int a = userIndex.get(userA);
+        int b = userIndex.get(userB);
+        if(a < 0 || b < 0 || !inBuckets[a] || !inBuckets[b]) return 0;
+        return estimate(a, b);
+    }
+
+    /**
+     * Gets the Jaccard similarity at which a pair of users is found half of the
+     * time, about (1/bands)^(1/rows)
+     */
+    public double getThreshold() {
+        return Math.pow(1.0 / bands, 1.0 / rows);
+    }
+
+    /**
+     * Gets the chance that a pair of users with a given Jaccard similarity shares
+     * at least one bucket, 1 - (1 - s^rows)^bands
+     *
+     * @param similarity The Jaccard similarity, between 0 and 1
+     */
+    public double getCandidateProbability(double similarity) {
+        return 1 - Math.pow(1 - Math.pow(similarity, rows), bands);
+    }
+
+    // Users per second the last build ran at, 0 before the first build
+    public double getBuildThroughput() {
+        return buildThroughput;
+    }
+
+    /**
+     * Times getSimilarUsers for a number of users spread evenly through the index
+     *
+     * @param queries Number of queries to time
+     * @param num     Number of similar users each query asks for
+     * @return The average query latency in microseconds, 0 if there are no users
+     */
+    public double benchmarkQueries(int queries, int num) {
+        int[] sample;
+        synchronized(this){
+            if(!built) build();
+            if(numUsers == 0 || queries <= 0) return 0;
+            sample = new int[queries];
+            for(int i = 0; i < queries; i++){
+                sample[i] = userIDs[(int)((long)i * numUsers / queries)];
+            }
+        }
+
+        long start = System.nanoTime();
+        for(int i = 0; i < queries; i++){
+            getSimilarUsers(sample[i], num);
+        }
+        double micros = (System.nanoTime() - start) / 1e3 / queries;
+        return micros;
+    }
+
+}
@@ -2,12 +2,15 @@ package structures;
 
 public class HashMap<K, V> {
 
+    // Number of buckets, the map never resizes
+    public static final int BUCKETS = 16;
+
     protected PairList<K,V>[] buckets;
 
     int numOfElements;
 
     public HashMap(){
-        int size = 16;
+        int size = BUCKETS;
         this.buckets = new PairList[size];
         for (int i = 0; i < size; i++) {
             this.buckets[i] = new PairList<>();
@@ -40,11 +43,22 @@ public class HashMap<K, V> {
             return false;
         }
 
-        if(!containsKey(key)) return true;
-
-        set(key, null);
-
-        numOfElements--;
+        // Unlink the pair so the key is really gone and can be counted again if it's put back
+        PairList<K, V> list = buckets[Math.abs(key.hashCode()) % buckets.length];
+        ListElement<Pair<K,V>> previous = null;
+        for (ListElement<Pair<K,V>> ptr = list.head; ptr != null; ptr = ptr.getNext()) {
+            if (ptr.getValue().getKey().equals(key)) {
+                if (previous == null) {
+                    list.head = ptr.getNext();
+                } else {
+                    previous.setNext(ptr.getNext());
+                }
+                list.size--;
+                numOfElements--;
+                return true;
+            }
+            previous = ptr;
+        }
 
         return true;
     }
@@ -60,9 +74,9 @@ public class HashMap<K, V> {
     private boolean set(K key, V value){
         int index = Math.abs(key.hashCode()) % buckets.length;
 
-        for (int i=0; i<buckets.length;i++) {
-            if (buckets[index].getIndex(i).getKey().equals(key)) {
-                buckets[index].getIndex(i).setValue(value);
+        for (ListElement<Pair<K,V>> ptr = buckets[index].head; ptr != null; ptr = ptr.getNext()) { // whole bucket, not just the first few
+            if (ptr.getValue().getKey().equals(key)) {
+                ptr.getValue().setValue(value);
                 return true;
             }
         }
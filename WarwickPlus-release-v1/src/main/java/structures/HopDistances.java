@@ -0,0 +1,92 @@
+package structures;
+
+import java.util.Arrays;
+
+/*
+ * Result of a breadth first search from one cast member to everyone, see MyGraph.allDistances.
+ * distances[i] is the number of hops to castIDs[i], -1 if they can't be reached. Everyone reached
+ * is also listed level by level: the cast IDs h hops away are members[levelOffsets[h] ..
+ * levelOffsets[h+1]), in ascending order, so level 0 is just the source.
+ * The arrays returned by the getters are shared, so they must not be changed.
+*/
+public class HopDistances {
+
+    private int sourceID;
+    private int[] castIDs;
+    private int[] distances;
+    private int[] levelOffsets;
+    private int[] members;
+
+    public HopDistances(int sourceID, int[] castIDs, int[] distances, int[] levelOffsets, int[] members){
+        this.sourceID = sourceID;
+        this.castIDs = castIDs;
+        this.distances = distances;
+        this.levelOffsets = levelOffsets;
+        this.members = members;
+    }
+
+    public int getSourceID(){
+        return sourceID;
+    }
+
+    // Cast IDs the distances line up with
+    public int[] getCastIDs(){
+        return castIDs;
+    }
+
+    // Hops to each cast member in getCastIDs, -1 if unreachable
+    public int[] getDistances(){
+        return distances;
+    }
+
+    // Number of levels, the furthest anyone is from the source plus one
+    public int numLevels(){
+        return levelOffsets.length - 1;
+    }
+
+    // Number of cast members reached, including the source
+    public int numReached(){
+        return members.length;
+    }
+
+    /**
+     * Gets everyone a given number of hops from the source
+     *
+     * @param hops The number of hops
+     * @return Their cast IDs in ascending order, empty if nobody is that far away
+     */
+    public int[] getLevel(int hops){
+        if(hops < 0 || hops >= numLevels()) return new int[0];
+        return Arrays.copyOfRange(members, levelOffsets[hops], levelOffsets[hops + 1]);
+    }
+
+    /**
+     * Gets everyone from 1 up to a given number of hops from the source
+     *
+     * @param hops The most hops away
+     * @return Their cast IDs, nearest levels first
+     */
+    public int[] getWithin(int hops){
+        int to = levelOffsets[Math.max(0, Math.min(hops, numLevels() - 1)) + 1];
+        return Arrays.copyOfRange(members, 1, Math.max(1, to));
+    }
+
+    // Number of cast members at each number of hops, index 0 is the source
+    public int[] getHistogram(){
+        int[] histogram = new int[numLevels()];
+        for(int h = 0; h < histogram.length; h++){
+            histogram[h] = levelOffsets[h + 1] - levelOffsets[h];
+        }
+        return histogram;
+    }
+
+    // Mean hops to everyone reached apart from the source, 0 if nobody else was reached
+    public double getAverageDistance(){
+        long total = 0;
+        for(int h = 1; h < numLevels(); h++){
+            total += (long)h * (levelOffsets[h + 1] - levelOffsets[h]);
+        }
+        return members.length <= 1 ? 0 : (double)total / (members.length - 1);
+    }
+
+}
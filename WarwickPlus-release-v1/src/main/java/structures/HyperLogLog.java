@@ -0,0 +1,152 @@
+package structures;
+
+/*
+ * HyperLogLog estimate of the number of distinct IDs seen (Flajolet et al.), with the small range
+ * correction. Each ID is hashed to 64 bits: the top p bits pick one of m = 2^p registers and the
+ * register keeps the longest run of leading zeros seen in the rest. Relative error is about
+ * 1.04 / sqrt(m), 1.6% with the default p = 12.
+ * Registers start out sparse, in an IntIntMap holding only the ones that are set, and switch to a
+ * dense byte per register once that would be smaller. So a bucket that only sees a few IDs costs
+ * a few hundred bytes rather than m.
+ * Two sketches with the same p merge by taking the max of each register, which gives exactly the
+ * sketch of both sets of IDs together, so buckets can be combined into any window.
+*/
+public class HyperLogLog {
+
+    public static final int DEFAULT_PRECISION = 12;
+
+    private final int p;
+    private final int m;
+    private IntIntMap sparse; // register -> value, null once dense
+    private byte[] dense; // null while sparse
+
+    public HyperLogLog(){
+        this(DEFAULT_PRECISION);
+    }
+
+    public HyperLogLog(int precision){
+        if(precision < 4 || precision > 18) throw new IllegalArgumentException("precision must be between 4 and 18");
+        this.p = precision;
+        this.m = 1 << precision;
+        this.sparse = new IntIntMap();
+        this.dense = null;
+    }
+
+    // SplitMix64 finaliser, spreads consecutive IDs across the whole 64 bits
+    private static long hash(int id){
+        long z = id + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Adds an ID to the set being counted
+     */
+    public void add(int id){
+        long h = hash(id);
+        int register = (int)(h >>> (64 - p));
+        // leading zeros of the remaining bits plus one, the extra bit caps it if they're all zero
+        int value = Long.numberOfLeadingZeros((h << p) | (1L << (p - 1))) + 1;
+        set(register, value);
+    }
+
+    // Raises a register to value if it is lower
+    private void set(int register, int value){
+        if(dense != null){
+            if(dense[register] < value) dense[register] = (byte)value;
+            return;
+        }
+        if(sparse.get(register) < value){
+            sparse.put(register, value);
+            // An IntIntMap entry takes around 18 bytes, so past m/16 entries a byte per register is smaller
+            if(sparse.size() > m / 16) toDense();
+        }
+    }
+
+    private void toDense(){
+        dense = new byte[m];
+        int[] registers = sparse.keys();
+        for(int i = 0; i < registers.length; i++){
+            dense[registers[i]] = (byte)sparse.get(registers[i]);
+        }
+        sparse = null;
+    }
+
+    /**
+     * Merges another sketch into this one, so this one counts the IDs of both. The
+     * other sketch is not changed
+     */
+    public void merge(HyperLogLog other){
+        if(other == null) return;
+        if(other.p != p) throw new IllegalArgumentException("Cannot merge sketches with different precision");
+
+        if(other.dense == null){
+            int[] registers = other.sparse.keys();
+            for(int i = 0; i < registers.length; i++){
+                set(registers[i], other.sparse.get(registers[i]));
+            }
+            return;
+        }
+
+        if(dense == null) toDense();
+        for(int i = 0; i < m; i++){
+            if(dense[i] < other.dense[i]) dense[i] = other.dense[i];
+        }
+    }
+
+    /**
+     * Gets the estimated number of distinct IDs added
+     */
+    public long estimate(){
+        if(dense == null){
+            // Only a few registers are set, which is the range linear counting is accurate in
+            int zeros = m - sparse.size();
+            if(zeros == m) return 0;
+            return Math.round(m * Math.log((double)m / zeros));
+        }
+
+        double sum = 0;
+        int zeros = 0;
+        for(int i = 0; i < m; i++){
+            sum += 1.0 / (1L << dense[i]);
+            if(dense[i] == 0) zeros++;
+        }
+        double alpha = 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+
+        // Small range correction
+        if(estimate <= 2.5 * m && zeros > 0){
+            estimate = m * Math.log((double)m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    // Standard error of the estimate, as a share of the true count
+    public double getRelativeError(){
+        return 1.04 / Math.sqrt(m);
+    }
+
+    /**
+     * Gets the approximate number of bytes the sketch takes up
+     */
+    public long getMemoryBytes(){
+        if(dense != null) return 32 + 16 + m;
+        return 32 + 48 + 9L * Math.max(16, sparse.size() * 2); // 9 bytes a slot (key, value, used flag), at most half full
+    }
+
+    public HyperLogLog copy(){
+        HyperLogLog copy = new HyperLogLog(p);
+        copy.merge(this);
+        return copy;
+    }
+
+    public int getPrecision(){
+        return p;
+    }
+
+    public boolean isSparse(){
+        return dense == null;
+    }
+
+}
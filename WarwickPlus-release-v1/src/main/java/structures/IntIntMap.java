@@ -0,0 +1,127 @@
+package structures;
+
+/*
+ * Hash map from int keys to int values, using open addressing on plain arrays so nothing is boxed.
+ * Grows when half full, so lookups stay O(1). Missing keys return -1 from get, so values
+ * are expected to be non-negative (e.g. dense indexes).
+*/
+public class IntIntMap {
+
+    private int[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int size;
+
+    public IntIntMap(){
+        this(16);
+    }
+
+    public IntIntMap(int expectedSize){
+        int capacity = 16;
+        while(capacity < expectedSize * 2) capacity *= 2;
+        keys = new int[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        size = 0;
+    }
+
+    // Spreads the bits of the key so nearby IDs don't end up in nearby slots
+    private static int hash(int key){
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // Slot the key is in, or the empty slot it would go in
+    private int slot(int key){
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while(used[i] && keys[i] != key){
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    public int get(int key){
+        int i = slot(key);
+        return used[i] ? values[i] : -1;
+    }
+
+    public boolean containsKey(int key){
+        return used[slot(key)];
+    }
+
+    public void put(int key, int value){
+        int i = slot(key);
+        if(!used[i]){
+            used[i] = true;
+            keys[i] = key;
+            size++;
+        }
+        values[i] = value;
+
+        if(size * 2 > keys.length) resize(keys.length * 2);
+    }
+
+    // Removes a key, shifting back any later entries in its run so lookups still find them
+    public boolean remove(int key){
+        int i = slot(key);
+        if(!used[i]) return false;
+
+        int mask = keys.length - 1;
+        used[i] = false;
+        size--;
+
+        int j = (i + 1) & mask;
+        while(used[j]){
+            int home = hash(keys[j]) & mask;
+            // move j back into the gap at i if its home slot isn't between i and j
+            if(((j - home) & mask) >= ((j - i) & mask)){
+                keys[i] = keys[j];
+                values[i] = values[j];
+                used[i] = true;
+                used[j] = false;
+                i = j;
+            }
+            j = (j + 1) & mask;
+        }
+
+        return true;
+    }
+
+    private void resize(int capacity){
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+
+        keys = new int[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        size = 0;
+
+        for(int i = 0; i < oldKeys.length; i++){
+            if(oldUsed[i]) put(oldKeys[i], oldValues[i]);
+        }
+    }
+
+    // Every key in the map, in no particular order
+    public int[] keys(){
+        int[] found = new int[size];
+        int count = 0;
+        for(int i = 0; i < keys.length; i++){
+            if(used[i]) found[count++] = keys[i];
+        }
+        return found;
+    }
+
+    public void clear(){
+        for(int i = 0; i < used.length; i++){
+            used[i] = false;
+        }
+        size = 0;
+    }
+
+    public int size(){
+        return size;
+    }
+
+}
@@ -0,0 +1,288 @@
+package structures;
+
+import java.util.Arrays;
+
+/*
+ * KLL quantile sketch (Karnin, Lang and Liberty). Keeps a small sample of a stream of values
+ * that can answer rank and quantile queries to within a known error, in memory that grows
+ * only with log(n).
+ * Values are kept in levels of compactors. A value on level h stands for 2^h of the original
+ * values. When the sketch is full, the lowest full level is sorted and every other value
+ * (starting at a random one of the first two) is promoted to the level above, halving it.
+ * Upper levels get k slots and each level below gets 2/3 as many (never less than 2), so most
+ * of the memory goes to the most heavily weighted values.
+ * Two sketches can be merged level by level, which gives the same guarantee as one sketch
+ * fed both streams, so sketches for small time buckets can be combined into any range.
+ * Values can't be taken back out, so anything that needs deletes has to rebuild the sketch.
+*/
+public class KllSketch {
+
+    public static final int DEFAULT_K = 200;
+    private static final int MIN_LEVEL_CAPACITY = 2;
+
+    private final int k;
+    private float[][] levels; // values on each level, level 0 being weight 1
+    private int[] sizes; // values used on each level
+    private int numLevels;
+    private long n; // number of values fed in, including merged ones
+    private float min, max;
+    private int seed = 0x5DEECE6;
+
+    public KllSketch(){
+        this(DEFAULT_K);
+    }
+
+    public KllSketch(int k){
+        if(k < 8) throw new IllegalArgumentException("k must be at least 8");
+        this.k = k;
+        levels = new float[4][];
+        sizes = new int[4];
+        levels[0] = new float[8];
+        numLevels = 1;
+        n = 0;
+        min = Float.NaN;
+        max = Float.NaN;
+    }
+
+    // xorshift coin, only used to pick which half of a level gets promoted
+    private boolean coin(){
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return (seed & 1) == 0;
+    }
+
+    // Number of values a level can hold before it has to be compacted
+    private int capacity(int level){
+        int depth = numLevels - 1 - level; // 0 for the top level
+        return Math.max(MIN_LEVEL_CAPACITY, (int)Math.ceil(k * Math.pow(2.0 / 3.0, depth)));
+    }
+
+    private int totalCapacity(){
+        int total = 0;
+        for(int h = 0; h < numLevels; h++) total += capacity(h);
+        return total;
+    }
+
+    private int retained(){
+        int total = 0;
+        for(int h = 0; h < numLevels; h++) total += sizes[h];
+        return total;
+    }
+
+    private void append(int level, float value){
+        if(level == numLevels) addLevel();
+        if(sizes[level] == levels[level].length){
+            levels[level] = Arrays.copyOf(levels[level], levels[level].length * 2);
+        }
+        levels[level][sizes[level]++] = value;
+    }
+
+    private void addLevel(){
+        if(numLevels == levels.length){
+            levels = Arrays.copyOf(levels, numLevels * 2);
+            sizes = Arrays.copyOf(sizes, numLevels * 2);
+        }
+        levels[numLevels] = new float[8];
+        sizes[numLevels] = 0;
+        numLevels++;
+    }
+
+    /**
+     * Adds a value to the sketch
+     */
+    public void update(float value){
+        if(Float.isNaN(value)) return;
+        if(n == 0){
+            min = value;
+            max = value;
+        } else {
+            if(value < min) min = value;
+            if(value > max) max = value;
+        }
+        n++;
+
+        append(0, value);
+        compress();
+    }
+
+    // Compacts the lowest over-full level until the sketch fits its capacity again
+    private void compress(){
+        while(retained() > totalCapacity()){
+            int level = 0;
+            while(sizes[level] < capacity(level)) level++;
+            compact(level);
+        }
+    }
+
+    private void compact(int level){
+        float[] values = levels[level];
+        int size = sizes[level];
+        Arrays.sort(values, 0, size);
+
+        // With an odd number the smallest value stays behind, so an even number is halved
+        // and the total weight doesn't change
+        int leftOver = size % 2;
+        int start = leftOver + (coin() ? 1 : 0);
+        for(int i = start; i < size; i += 2){
+            append(level + 1, values[i]);
+        }
+        sizes[level] = leftOver;
+
+        // Lower levels get less room as the sketch grows, so give back space they no longer need
+        int needed = Math.max(8, capacity(level) + 1);
+        if(levels[level].length > 2 * needed) levels[level] = Arrays.copyOf(levels[level], needed);
+    }
+
+    /**
+     * Merges another sketch into this one. The other sketch is not changed
+     */
+    public void merge(KllSketch other){
+        if(other == null || other.n == 0) return;
+
+        if(n == 0){
+            min = other.min;
+            max = other.max;
+        } else {
+            if(other.min < min) min = other.min;
+            if(other.max > max) max = other.max;
+        }
+        n += other.n;
+
+        for(int h = 0; h < other.numLevels; h++){
+            for(int i = 0; i < other.sizes[h]; i++){
+                append(h, other.levels[h][i]);
+            }
+        }
+        compress();
+    }
+
+    // Every kept value sorted, with the cumulative weight up to and including each one
+    private float[] sortedValues(long[] cumulative){
+        int count = retained();
+        long[] packed = new long[count];
+        int pos = 0;
+        for(int h = 0; h < numLevels; h++){
+            for(int i = 0; i < sizes[h]; i++){
+                // Order preserving int key for the float in the high half, level in the low half
+                int bits = Float.floatToIntBits(levels[h][i]);
+                bits ^= (bits >> 31) & 0x7FFFFFFF;
+                packed[pos++] = ((long)bits << 32) | h;
+            }
+        }
+        Arrays.sort(packed);
+
+        float[] values = new float[count];
+        long total = 0;
+        for(int i = 0; i < count; i++){
+            int bits = (int)(packed[i] >> 32);
+            bits ^= (bits >> 31) & 0x7FFFFFFF;
+            values[i] = Float.intBitsToFloat(bits);
+            total += 1L << (int)(packed[i] & 0xFFFFFFFFL);
+            cumulative[i] = total;
+        }
+        return values;
+    }
+
+    /**
+     * Gets the value at a given percentile, i.e. the smallest value with at least
+     * percentile% of the values at or below it
+     *
+     * @param percentile Between 0 and 100
+     * @return The estimated value, or 0 if the sketch is empty
+     */
+    public float getPercentile(float percentile){
+        if(n == 0) return 0;
+        float p = Math.max(0, Math.min(100, percentile));
+        if(p == 0) return min;
+        if(p == 100) return max;
+
+        long[] cumulative = new long[retained()];
+        float[] values = sortedValues(cumulative);
+        long total = cumulative[cumulative.length - 1];
+        long target = Math.max(1, (long)Math.ceil(p / 100.0 * total));
+        for(int i = 0; i < values.length; i++){
+            if(cumulative[i] >= target) return values[i];
+        }
+        return max;
+    }
+
+    /**
+     * Gets the estimated share of values at or below a given value
+     *
+     * @return Between 0 and 1, or 0 if the sketch is empty
+     */
+    public double getRank(float value){
+        if(n == 0) return 0;
+        long below = 0;
+        long total = 0;
+        for(int h = 0; h < numLevels; h++){
+            for(int i = 0; i < sizes[h]; i++){
+                if(levels[h][i] <= value) below += 1L << h;
+                total += 1L << h;
+            }
+        }
+        return (double)below / total;
+    }
+
+    // True while nothing has been compacted, so every answer is exact
+    public boolean isExact(){
+        return numLevels == 1;
+    }
+
+    /**
+     * Gets the bound on the rank error of a quantile query, as a share of n, that
+     * holds with about 99% confidence. This is the empirical fit for KLL sketches
+     * published with the DataSketches library, about 1.3% for k = 200
+     *
+     * @return The normalised rank error, or 0 if the sketch is still exact
+     */
+    public double getNormalizedRankError(){
+        if(isExact()) return 0;
+        return 2.296 / Math.pow(k, 0.9723);
+    }
+
+    /**
+     * Gets the approximate number of bytes the sketch takes up, counting the space
+     * allocated for each level and not just the values in use
+     */
+    public long getMemoryBytes(){
+        long bytes = 48; // object header and fields
+        bytes += 16 + 8L * levels.length; // levels array
+        bytes += 16 + 4L * sizes.length;
+        for(int h = 0; h < numLevels; h++){
+            bytes += 16 + 4L * levels[h].length;
+        }
+        return bytes;
+    }
+
+    public KllSketch copy(){
+        KllSketch copy = new KllSketch(k);
+        copy.levels = new float[levels.length][];
+        for(int h = 0; h < numLevels; h++){
+            copy.levels[h] = Arrays.copyOf(levels[h], levels[h].length);
+        }
+        copy.sizes = Arrays.copyOf(sizes, sizes.length);
+        copy.numLevels = numLevels;
+        copy.n = n;
+        copy.min = min;
+        copy.max = max;
+        copy.seed = seed;
+        return copy;
+    }
+
+    // Number of values fed in
+    public long size(){
+        return n;
+    }
+
+    // Number of values actually kept
+    public int getNumRetained(){
+        return retained();
+    }
+
+    public int getK(){
+        return k;
+    }
+
+}
@@ -0,0 +1,122 @@
+package structures;
+
+import utils.Parallel;
+
+/*
+ * Landmark (ALT) distance bounds for the cast graph. A few of the best connected cast members are
+ * picked as landmarks and the hop distance from each of them to everyone is stored, one byte per
+ * cast member. By the triangle inequality, for any landmark L the distance between a and b is at
+ * least |d(L,a) - d(L,b)| and at most d(L,a) + d(L,b), so both bounds cost O(landmarks) to check.
+ * If a landmark reaches one of them but not the other, they are in different components.
+ * The bounds are only used while the graph is unchanged since build, otherwise they give nothing.
+*/
+public class LandmarkIndex {
+
+    public static final int UNKNOWN = Integer.MAX_VALUE; // upper bound when nothing is known
+    public static final int UNREACHABLE = Integer.MAX_VALUE; // lower bound for different components
+
+    private MyGraph graph;
+    private int[] landmarks = new int[0]; // cast indexes
+    private byte[][] dist = new byte[0][]; // dist[l][c], hops from landmark l to cast c
+    private int builtVersion = -1;
+
+    public LandmarkIndex(MyGraph graph){
+        this.graph = graph;
+    }
+
+    /**
+     * Picks the cast members in the most films as landmarks and works out their
+     * distances to everyone, one breadth first search per landmark in parallel.
+     * Should be called again after a bulk load or a large batch of changes
+     *
+     * @param numLandmarks How many landmarks to use
+     */
+    public void build(int numLandmarks){
+        int numCast = graph.numCast();
+
+        TopKHeap best = new TopKHeap(Math.max(1, numLandmarks));
+        for(int c = 0; c < numCast; c++){
+            int films = graph.filmCount(c);
+            if(films > 0) best.offer(c, films);
+        }
+        int[] chosen = new int[best.size()];
+        best.drain(chosen, new float[chosen.length], 0);
+
+        byte[][] newDist = new byte[chosen.length][];
+        Parallel.forRange(0, chosen.length, 1, (from, to) -> {
+            for(int l = from; l < to; l++){
+                newDist[l] = new byte[numCast];
+                graph.distancesFrom(chosen[l], newDist[l]);
+            }
+        });
+
+        landmarks = chosen;
+        dist = newDist;
+        builtVersion = graph.version();
+    }
+
+    // True if the graph hasn't changed since the last build
+    public boolean isCurrent(){
+        return builtVersion == graph.version();
+    }
+
+    public int numLandmarks(){
+        return landmarks.length;
+    }
+
+    // Cast IDs of the landmarks
+    public int[] getLandmarkIDs(){
+        int[] ids = new int[landmarks.length];
+        for(int l = 0; l < ids.length; l++){
+            ids[l] = graph.castIDOf(landmarks[l]);
+        }
+        return ids;
+    }
+
+    /**
+     * Smallest number of hops there could be between two cast members
+     *
+     * @return The lower bound, UNREACHABLE if they are known to be in different
+     *         components, or 0 if nothing is known
+     */
+    public int lowerBound(int castIDA, int castIDB){
+        if(castIDA == castIDB || !isCurrent()) return 0;
+        int a = graph.castIndexOf(castIDA);
+        int b = graph.castIndexOf(castIDB);
+        if(a < 0 || b < 0) return UNREACHABLE;
+
+        int bound = 1;
+        for(int l = 0; l < landmarks.length; l++){
+            int da = dist[l][a], db = dist[l][b];
+            if(da == MyGraph.UNREACHED && db == MyGraph.UNREACHED) continue;
+            if(da == MyGraph.UNREACHED || db == MyGraph.UNREACHED) return UNREACHABLE;
+            if(da == MyGraph.MAX_HOPS || db == MyGraph.MAX_HOPS) continue; // too far to tell
+            bound = Math.max(bound, Math.abs(da - db));
+        }
+        return bound;
+    }
+
+    /**
+     * Largest number of hops there can be between two cast members, going
+     * through a landmark
+     *
+     * @return The upper bound, or UNKNOWN if no landmark reaches both
+     */
+    public int upperBound(int castIDA, int castIDB){
+        if(castIDA == castIDB) return 0;
+        if(!isCurrent()) return UNKNOWN;
+        int a = graph.castIndexOf(castIDA);
+        int b = graph.castIndexOf(castIDB);
+        if(a < 0 || b < 0) return UNKNOWN;
+
+        int bound = UNKNOWN;
+        for(int l = 0; l < landmarks.length; l++){
+            int da = dist[l][a], db = dist[l][b];
+            if(da == MyGraph.UNREACHED || db == MyGraph.UNREACHED) continue;
+            if(da == MyGraph.MAX_HOPS || db == MyGraph.MAX_HOPS) continue;
+            bound = Math.min(bound, da + db);
+        }
+        return bound;
+    }
+
+}
@@ -1,133 +1,835 @@
 package structures;
 
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import utils.Parallel;
+
+/*
+ * Graph of which cast members appeared in which films, stored as bipartite cast <-> film adjacency
+ * rather than linking every pair of cast members in a film. A film with n cast members costs n
+ * entries each way instead of n^2, so memory is O(total credits) and adding a film is O(n).
+ * Two cast members are one hop apart if they share a film, so a search hops cast -> film -> cast.
+ * Cast and films get dense indexes in the order they are first seen.
+ *
+ * Once loading is done freeze() packs everything into CSR form: the films of cast c are
+ * castAdj[castOffsets[c] .. castOffsets[c+1]) and the cast of film f is
+ * filmAdj[filmOffsets[f] .. filmOffsets[f+1]), so a search reads two flat arrays front to back.
+ * Edits after that go to an overlay: castFilms[c] is null while cast c still uses its frozen
+ * films, and gets a copy of them (holding castDegree[c] films) the first time they change.
+ * Films added after the freeze keep their cast in filmCast, frozen films never change.
+*/
 public class MyGraph{
 
-    // GraphNode class stores information about a single node
-    // This includes it's own ID, and an arrayList of adjacent nodes and their IDs
-    class GraphNode{
+    private IntIntMap castIndex, filmIndex; // ID -> dense index
+    private int[] castIDs, filmIDs; // dense index -> ID
+    private int numCast, numFilms;
+
+    // Frozen CSR arrays, cover the first frozenCast cast and frozenFilms films
+    private int[] castOffsets = {0}, castAdj = new int[0];
+    private int[] filmOffsets = {0}, filmAdj = new int[0];
+    private int frozenCast, frozenFilms;
+
+    // Overlay for anything added or changed since the freeze
+    private int[][] castFilms;
+    private int[] castDegree;
+    private int[][] filmCast;
+    private int overlayCast; // frozen cast members whose films have changed
+
+    private long numCredits; // total cast entries across every film
+    private int version; // bumped on every change to the links
+
+    // Connected components of cast, by dense index. Adding a film just joins its cast, removing one
+    // can split a component, so it marks them stale and they're rebuilt in one pass when next needed
+    private UnionFind components = new UnionFind(16);
+    private boolean componentsStale;
+
+    public MyGraph(){
+        castIndex = new IntIntMap();
+        filmIndex = new IntIntMap();
+        castIDs = new int[16];
+        filmIDs = new int[16];
+        castFilms = new int[16][];
+        castDegree = new int[16];
+        filmCast = new int[16][];
+    }
+
+    // Index of a cast member, adding a node with no films if it's new
+    private int castNode(int castID){
+        int c = castIndex.get(castID);
+        if(c >= 0) return c;
 
-        public int selfID;
-        ArrayList<Integer> adjList;
-    
-        public GraphNode(int id){
-            selfID = id;
-            adjList = new ArrayList<>();
+        if(numCast == castIDs.length){
+            castIDs = Arrays.copyOf(castIDs, numCast * 2);
+            castFilms = Arrays.copyOf(castFilms, numCast * 2);
+            castDegree = Arrays.copyOf(castDegree, numCast * 2);
         }
-    
-        public void addAdjacency(int id){
-        if(!adjList.contains(id))
-            adjList.add(id);
+        c = numCast++;
+        castIndex.put(castID, c);
+        components.add();
+        castIDs[c] = castID;
+        castFilms[c] = new int[4];
+        return c;
+    }
+
+    // Makes sure cast c has its own copy of its films so they can be changed
+    private void unfreezeCast(int c){
+        if(castFilms[c] != null) return;
+        int from = castOffsets[c], to = castOffsets[c + 1];
+        castFilms[c] = Arrays.copyOfRange(castAdj, from, to + 4);
+        castDegree[c] = to - from;
+        overlayCast++;
+    }
+
+    /**
+     * Adds a film and links it to each of its cast members. A film that is already
+     * in the graph has its cast replaced
+     *
+     * @param filmID  The film ID
+     * @param castIDs IDs of everyone in the film's cast, repeats are ignored
+     */
+    public void addFilm(int filmID, int[] castIDs){
+        if(filmIndex.containsKey(filmID)) removeFilm(filmID);
+
+        if(numFilms == filmIDs.length){
+            filmIDs = Arrays.copyOf(filmIDs, numFilms * 2);
+            filmCast = Arrays.copyOf(filmCast, numFilms * 2);
         }
-    
-        public void remove(int id){
-            adjList.removeIndex(adjList.indexOf(id));
+        int f = numFilms++;
+        filmIndex.put(filmID, f);
+        filmIDs[f] = filmID;
+
+        // Someone can have more than one role in a film, but only needs linking once
+        IntIntMap seen = new IntIntMap(castIDs.length);
+        int[] members = new int[castIDs.length];
+        int count = 0;
+        for(int i = 0; i < castIDs.length; i++){
+            if(seen.containsKey(castIDs[i])) continue;
+            seen.put(castIDs[i], 1);
+
+            int c = castNode(castIDs[i]);
+            unfreezeCast(c);
+            members[count++] = c;
+            if(castDegree[c] == castFilms[c].length){
+                castFilms[c] = Arrays.copyOf(castFilms[c], castDegree[c] * 2);
+            }
+            castFilms[c][castDegree[c]++] = f;
+        }
+        filmCast[f] = Arrays.copyOf(members, count);
+        numCredits += count;
+        version++;
+
+        if(!componentsStale){
+            for(int i = 1; i < count; i++) components.union(members[0], members[i]);
         }
-    
     }
 
-    // Hashmap containing a node's ID as a key and it's GraphNode class
-    HashMap<Integer, GraphNode> nodeMap;
-    
+    /**
+     * Removes a film and its links. Cast members stay in the graph, with one fewer
+     * film, even if that leaves them with none
+     *
+     * @param filmID The film ID
+     */
+    public void removeFilm(int filmID){
+        int f = filmIndex.get(filmID);
+        if(f < 0) return; // If doesnt exist, skip
 
-    public MyGraph(){
-        nodeMap = new HashMap<Integer, GraphNode>();
+        int[] members;
+        int from, to;
+        if(f < frozenFilms){
+            members = filmAdj;
+            from = filmOffsets[f];
+            to = filmOffsets[f + 1];
+        } else {
+            members = filmCast[f];
+            from = 0;
+            to = members.length;
+            filmCast[f] = null;
+        }
+
+        for(int i = from; i < to; i++){
+            int c = members[i];
+            unfreezeCast(c);
+            int[] films = castFilms[c];
+            for(int j = 0; j < castDegree[c]; j++){
+                if(films[j] == f){ // swap the last film into its place
+                    films[j] = films[--castDegree[c]];
+                    break;
+                }
+            }
+        }
+
+        numCredits -= to - from;
+        filmIndex.remove(filmID);
+        version++;
+        componentsStale = true;
     }
 
-    public void addNode(int id, int[] adjNodes){
-        if(nodeMap.containsKey(id)) return; // If node already exists, skip
-        
-        // Create new GraphNode and put into hashmap
-        GraphNode node = new GraphNode(id);
+    /**
+     * Packs the whole graph, including any edits since the last freeze, into flat
+     * CSR arrays and empties the overlay. Removed films are dropped and the rest
+     * are renumbered. Meant to be called once loading has finished
+     */
+    public void freeze(){
+        // Renumber the films still in the graph, in their current order
+        int[] newFilm = new int[numFilms];
+        int liveFilms = 0;
+        for(int f = 0; f < numFilms; f++){
+            newFilm[f] = filmIndex.get(filmIDs[f]) == f ? liveFilms++ : -1;
+        }
 
-        nodeMap.put(id, node);
+        int[] newCastOffsets = new int[numCast + 1];
+        int[] newCastAdj = new int[(int)numCredits];
+        int[] newFilmOffsets = new int[liveFilms + 1];
+        int[] newFilmAdj = new int[(int)numCredits];
+        int[] newFilmIDs = new int[Math.max(16, liveFilms)];
 
-        // Iterate through adj nodes and add to adj list
-        // Also add self to other nodes' adj list
-        for(int i = 0; i < adjNodes.length; i++){
-            int currID = adjNodes[i];
-            if(currID == id) continue; //skip self
-            node.addAdjacency(currID);
+        int pos = 0;
+        for(int c = 0; c < numCast; c++){
+            newCastOffsets[c] = pos;
+            if(castFilms[c] == null){
+                for(int i = castOffsets[c]; i < castOffsets[c + 1]; i++){
+                    newCastAdj[pos++] = newFilm[castAdj[i]];
+                }
+            } else {
+                for(int i = 0; i < castDegree[c]; i++){
+                    newCastAdj[pos++] = newFilm[castFilms[c][i]];
+                }
+            }
+        }
+        newCastOffsets[numCast] = pos;
 
-            if(nodeMap.containsKey(currID)){
-                nodeMap.get(currID).addAdjacency(id);
+        pos = 0;
+        for(int f = 0; f < numFilms; f++){
+            int nf = newFilm[f];
+            if(nf < 0) continue;
+            newFilmOffsets[nf] = pos;
+            newFilmIDs[nf] = filmIDs[f];
+            filmIndex.put(filmIDs[f], nf);
+            if(f < frozenFilms){
+                for(int i = filmOffsets[f]; i < filmOffsets[f + 1]; i++){
+                    newFilmAdj[pos++] = filmAdj[i];
+                }
             } else {
-                GraphNode newNode = new GraphNode(currID);
+                for(int i = 0; i < filmCast[f].length; i++){
+                    newFilmAdj[pos++] = filmCast[f][i];
+                }
+            }
+        }
+        newFilmOffsets[liveFilms] = pos;
 
-                newNode.addAdjacency(id);
+        castOffsets = newCastOffsets;
+        castAdj = newCastAdj;
+        filmOffsets = newFilmOffsets;
+        filmAdj = newFilmAdj;
+        filmIDs = newFilmIDs;
+        frozenCast = numCast;
+        frozenFilms = numFilms = liveFilms;
+
+        Arrays.fill(castFilms, null);
+        Arrays.fill(castDegree, 0);
+        filmCast = new int[newFilmIDs.length][];
+        overlayCast = 0;
+    }
 
-                nodeMap.put(currID, newNode);
+    /**
+     * Finds a shortest chain of cast members from start to end, where each one
+     * shared a film with the one before. Searches breadth first from both ends at
+     * once over cast -> film -> cast, a whole level at a time, always growing the
+     * side with the smaller frontier, and stops as soon as the two sides meet or
+     * either side runs out
+     *
+     * @return The cast IDs after start up to and including end, {end} if start ==
+     *         end, or an empty array if there is no connection
+     */
+    public synchronized int[] findDistance(int start, int end){ // bidirectional bfs
+
+        if(start == end) return new int[]{end};
+
+        int s = castIndex.get(start);
+        int t = castIndex.get(end);
+        if(s < 0 || t < 0) return new int[0];
+        refreshComponents();
+        if(!components.connected(s, t)) return new int[0]; // Different components, no need to search
+
+        nextEpoch();
+        castSeenF[s] = epoch;
+        parentF[s] = s;
+        queueF[0] = s;
+        castSeenB[t] = epoch;
+        parentB[t] = t;
+        queueB[0] = t;
+
+        int levelF = 0, tailF = 1; // current frontier is queue[level .. tail)
+        int levelB = 0, tailB = 1;
+
+        while(levelF < tailF && levelB < tailB){
+            int meet;
+            if(tailF - levelF <= tailB - levelB){
+                meet = expand(levelF, tailF, queueF, castSeenF, filmSeenF, parentF, castSeenB);
+                levelF = tailF;
+                tailF = frontierTail;
+            } else {
+                meet = expand(levelB, tailB, queueB, castSeenB, filmSeenB, parentB, castSeenF);
+                levelB = tailB;
+                tailB = frontierTail;
             }
+            if(meet >= 0) return path(s, t, meet);
         }
 
+        return new int[0]; // One side ran out, no connection
     }
 
-    public void removeNode(int id){
-        if(!nodeMap.containsKey(id)) return; // If doesnt exist, skip
+    /*
+     * Scratch space for findDistance, kept between queries. A cast member or film counts as seen by
+     * a side only if its mark equals the current epoch, so nothing has to be cleared between queries.
+     * F is the side searching from start, B the side searching from end.
+    */
+    private int[] castSeenF = new int[0], castSeenB = new int[0], filmSeenF = new int[0], filmSeenB = new int[0];
+    private int[] parentF = new int[0], parentB = new int[0], queueF = new int[0], queueB = new int[0];
+    private int epoch;
+    private int frontierTail; // end of the next frontier after expand
 
-        GraphNode node = new GraphNode(id);
+    // Starts a new query, growing the scratch arrays if the graph has grown
+    private void nextEpoch(){
+        if(castSeenF.length < numCast){
+            int size = Math.max(numCast, castSeenF.length * 2);
+            castSeenF = new int[size];
+            castSeenB = new int[size];
+            parentF = new int[size];
+            parentB = new int[size];
+            queueF = new int[size];
+            queueB = new int[size];
+        }
+        if(filmSeenF.length < numFilms){
+            int size = Math.max(numFilms, filmSeenF.length * 2);
+            filmSeenF = new int[size];
+            filmSeenB = new int[size];
+        }
+        if(++epoch == Integer.MAX_VALUE){ // wrap around, old marks could look current
+            Arrays.fill(castSeenF, 0);
+            Arrays.fill(castSeenB, 0);
+            Arrays.fill(filmSeenF, 0);
+            Arrays.fill(filmSeenB, 0);
+            epoch = 1;
+        }
+    }
+
+    /*
+     * Moves one side a full level on, adding everyone who shares a film with its frontier
+     * queue[from .. to) to the end of the queue. Returns the first cast member found that the other
+     * side has already seen, or -1. Stopping at the first one is enough, because the other side has
+     * only ever finished whole levels, so every meeting found in this level gives the same length.
+    */
+    private int expand(int from, int to, int[] queue, int[] castSeen, int[] filmSeen, int[] parent, int[] otherSeen){
+        int tail = to;
+        for(int q = from; q < to; q++){
+            int c = queue[q];
 
-        // Remove from adjacent nodes' adjList
-        for(int i = 0; i < node.adjList.size(); i++){
-            ArrayList<Integer> otherList = nodeMap.get(node.adjList.get(i)).adjList;
-            if(otherList.contains(id)){
-                otherList.removeIndex(otherList.indexOf(id));
+            // every film this cast member was in
+            int[] films = castFilms[c];
+            int i = 0, iEnd = castDegree[c];
+            if(films == null){
+                films = castAdj;
+                i = castOffsets[c];
+                iEnd = castOffsets[c + 1];
             }
+
+            for(; i < iEnd; i++){
+                int f = films[i];
+                if(filmSeen[f] == epoch) continue;
+                filmSeen[f] = epoch;
+
+                // everyone else in that film
+                int[] members = filmAdj;
+                int j, jEnd;
+                if(f < frozenFilms){
+                    j = filmOffsets[f];
+                    jEnd = filmOffsets[f + 1];
+                } else {
+                    members = filmCast[f];
+                    j = 0;
+                    jEnd = members.length;
+                }
+
+                for(; j < jEnd; j++){
+                    int next = members[j];
+                    if(castSeen[next] == epoch) continue;
+                    castSeen[next] = epoch;
+                    parent[next] = c;
+                    if(otherSeen[next] == epoch){
+                        frontierTail = tail;
+                        return next;
+                    }
+                    queue[tail++] = next;
+                }
+            }
+        }
+        frontierTail = tail;
+        return -1;
+    }
+
+    // Joins the two halves at meet, start's side back to s and end's side on to t, leaving out s
+    private int[] path(int s, int t, int meet){
+        int length = 0;
+        for(int c = meet; c != s; c = parentF[c]) length++;
+        int half = length;
+        for(int c = meet; c != t; c = parentB[c]) length++;
+
+        int[] returnArr = new int[length];
+        int i = half - 1;
+        for(int c = meet; c != s; c = parentF[c]){
+            returnArr[i--] = castIDs[c];
         }
+        i = half;
+        for(int c = meet; c != t; ){
+            c = parentB[c];
+            returnArr[i++] = castIDs[c];
+        }
+        return returnArr;
+    }
 
-        nodeMap.put(id, null); // remove from hashmap
-        
+    // Number of cast members ever added
+    public int numCast(){
+        return numCast;
     }
 
-    public int[] findDistance(int start, int end){ // bfs
+    // Number of films currently in the graph
+    public int numFilms(){
+        return filmIndex.size();
+    }
 
-        if(start == end) return new int[]{end};
+    // Number of cast <-> film links, the graph's memory is proportional to this
+    public long numCredits(){
+        return numCredits;
+    }
+
+    /**
+     * Finds which of a group of cast members have at least two others from the
+     * group within 2 hops, so findDistance between them would return 1 or 2 IDs.
+     * Two of them are within 2 hops exactly when some cast member x is either one
+     * of them or in a film with them, for both. So each film's cast is walked once
+     * to list the group members in it, then for every x the group members around
+     * it are gathered and paired up. Both steps run in parallel, and the work is
+     * proportional to the credits times the group members per film rather than a
+     * search per pair
+     *
+     * @param castIDs The group of cast IDs, someone listed twice counts as two
+     *                others for everyone close to them
+     * @return The cast IDs from the group that qualify, in the order given
+     */
+    public int[] withTwoCloseOthers(int[] castIDs){
+        int[] inGroup = new int[numCast]; // times each cast member is listed
+        for(int i = 0; i < castIDs.length; i++){
+            int c = castIndex.get(castIDs[i]);
+            if(c >= 0) inGroup[c]++;
+        }
+
+        // Group members in each film, null if there are none
+        int[][] filmMembers = new int[numFilms][];
+        Parallel.forRange(0, numFilms, 1024, (from, to) -> {
+            int[] buffer = new int[16];
+            for(int f = from; f < to; f++){
+                int[] members = filmAdj;
+                int j, jEnd;
+                if(f < frozenFilms){
+                    j = filmOffsets[f];
+                    jEnd = filmOffsets[f + 1];
+                } else {
+                    if(filmCast[f] == null) continue; // removed
+                    members = filmCast[f];
+                    j = 0;
+                    jEnd = members.length;
+                }
+
+                int count = 0;
+                for(; j < jEnd; j++){
+                    if(inGroup[members[j]] == 0) continue;
+                    if(count == buffer.length) buffer = Arrays.copyOf(buffer, count * 2);
+                    buffer[count++] = members[j];
+                }
+                if(count > 0) filmMembers[f] = Arrays.copyOf(buffer, count);
+            }
+        });
+
+        // other[c] is -1 until a first close group member is found, then that member, then -2 once
+        // a second different one turns up
+        int[] other = new int[numCast];
+        Arrays.fill(other, -1);
+
+        int grain = Math.max(1024, numCast / (Parallel.threads() * 4));
+        Parallel.forRange(0, numCast, grain, (from, to) -> {
+            IntIntMap found = new IntIntMap(); // same as other, just for this chunk
+            int[] stamp = new int[numCast]; // x + 1 if already gathered around x
+            int[] around = new int[16];
+
+            for(int x = from; x < to; x++){
+                int count = 0;
+                if(inGroup[x] > 0){
+                    stamp[x] = x + 1;
+                    around[count++] = x;
+                }
 
-        Queue<Integer> queue = new Queue<>();
-        ArrayList<Integer> visited = new ArrayList<>();
-        HashMap<Integer, Integer> relation = new HashMap<>();
-        
-        queue.enqueue(start);
-        visited.add(start);
-        relation.put(start, -1);
-
-        while(!queue.isEmpty()){
-            int node = queue.dequeue();
-
-            GraphNode gNode = nodeMap.get(node);
-
-            for(int i = 0; i < gNode.adjList.size(); i++){ // Start at a node and iterate through all adjacent nodes (bfs)
-                int adjacentNode = gNode.adjList.get(i);
-                if(!visited.contains(adjacentNode)){
-
-                    relation.put(adjacentNode, node);
-
-                    if(adjacentNode == end){ // Keep continuing until end node is found
-                        
-                        // Refer to hashmap to find parent node, keep backtracking until start node is reached
-                        ArrayList<Integer> path = new ArrayList<>();
-                        int currentNodeInPath = end;
-                        while(currentNodeInPath != start){
-                            path.add(currentNodeInPath);
-                            if(relation.get(currentNodeInPath) == null) break;
-                            currentNodeInPath = relation.get(currentNodeInPath);
+                int[] films = castFilms[x];
+                int i = 0, iEnd = castDegree[x];
+                if(films == null){
+                    films = castAdj;
+                    i = castOffsets[x];
+                    iEnd = castOffsets[x + 1];
+                }
+                for(; i < iEnd; i++){
+                    int[] members = filmMembers[films[i]];
+                    if(members == null) continue;
+                    for(int j = 0; j < members.length; j++){
+                        int c = members[j];
+                        if(stamp[c] == x + 1) continue;
+                        stamp[c] = x + 1;
+                        if(count == around.length) around = Arrays.copyOf(around, count * 2);
+                        around[count++] = c;
+                    }
+                }
+
+                if(count >= 3){ // everyone has two others
+                    for(int j = 0; j < count; j++) found.put(around[j], -2);
+                } else if(count == 2){
+                    noteClose(found, around[0], around[1], inGroup[around[1]]);
+                    noteClose(found, around[1], around[0], inGroup[around[0]]);
+                }
+            }
+
+            synchronized(other){
+                int[] keys = found.keys();
+                for(int i = 0; i < keys.length; i++){
+                    int c = keys[i];
+                    int v = found.get(c);
+                    if(v == -2 || (other[c] >= 0 && other[c] != v)){
+                        other[c] = -2;
+                    } else if(other[c] == -1){
+                        other[c] = v;
+                    }
+                }
+            }
+        });
+
+        int[] result = new int[castIDs.length];
+        int count = 0;
+        for(int i = 0; i < castIDs.length; i++){
+            int c = castIndex.get(castIDs[i]);
+            if(c >= 0 && other[c] == -2) result[count++] = castIDs[i];
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    // Records that d, listed times times, is close to c in found
+    private static void noteClose(IntIntMap found, int c, int d, int times){
+        int v = found.get(c);
+        if(times > 1){
+            found.put(c, -2);
+        } else if(v == -1){
+            found.put(c, d);
+        } else if(v != d && v != -2){
+            found.put(c, -2);
+        }
+    }
+
+    // Rebuilds the components from every film if a removal has made them stale
+    private void refreshComponents(){
+        if(!componentsStale) return;
+        components.reset(numCast);
+        for(int f = 0; f < numFilms; f++){
+            int[] members = filmAdj;
+            int j, jEnd;
+            if(f < frozenFilms){
+                if(filmIndex.get(filmIDs[f]) != f) continue; // removed
+                j = filmOffsets[f];
+                jEnd = filmOffsets[f + 1];
+            } else {
+                if(filmCast[f] == null) continue; // removed
+                members = filmCast[f];
+                j = 0;
+                jEnd = members.length;
+            }
+            for(int k = j + 1; k < jEnd; k++) components.union(members[j], members[k]);
+        }
+        componentsStale = false;
+    }
+
+    /**
+     * Checks if there is any chain of shared films between two cast members
+     *
+     * @return TRUE if they are connected or the same, FALSE if not or either isn't
+     *         in the graph
+     */
+    public synchronized boolean connected(int castIDA, int castIDB){
+        if(castIDA == castIDB) return true;
+        int a = castIndex.get(castIDA);
+        int b = castIndex.get(castIDB);
+        if(a < 0 || b < 0) return false;
+        refreshComponents();
+        return components.connected(a, b);
+    }
+
+    // Number of connected groups of cast, only counting cast members in at least one film
+    public synchronized int componentCount(){
+        refreshComponents();
+        int count = 0;
+        for(int c = 0; c < numCast; c++){
+            if(filmCount(c) > 0 && components.find(c) == c) count++;
+        }
+        return count;
+    }
+
+    // Size of the component a cast member is in, 0 if they aren't in any film
+    public synchronized int componentSize(int castID){
+        int c = castIndex.get(castID);
+        if(c < 0 || filmCount(c) == 0) return 0;
+        refreshComponents();
+        return components.sizeOf(c);
+    }
+
+    // Sizes of every component, biggest first
+    public synchronized int[] componentSizes(){
+        refreshComponents();
+        int[] sizes = new int[numCast];
+        int count = 0;
+        for(int c = 0; c < numCast; c++){
+            if(filmCount(c) > 0 && components.find(c) == c) sizes[count++] = components.sizeOf(c);
+        }
+        sizes = Arrays.copyOf(sizes, count);
+        Arrays.sort(sizes);
+        for(int i = 0, j = count - 1; i < j; i++, j--){
+            int tmp = sizes[i];
+            sizes[i] = sizes[j];
+            sizes[j] = tmp;
+        }
+        return sizes;
+    }
+
+    /**
+     * Finds how many hops a cast member is from everyone else, one level at a time.
+     * Each level's frontier is split across threads, and cast members and films
+     * are claimed with atomic bitmaps so each is only reached once
+     *
+     * @param castID The cast member to start from
+     * @return The distances and levels, or null if the cast member isn't in the
+     *         graph
+     */
+    public HopDistances allDistances(int castID){
+        int s = castIndex.get(castID);
+        if(s < 0) return null;
+
+        AtomicIntegerArray castSeen = new AtomicIntegerArray((numCast + 31) >>> 5);
+        AtomicIntegerArray filmSeen = new AtomicIntegerArray((numFilms + 31) >>> 5);
+        int[] dist = new int[numCast];
+        Arrays.fill(dist, -1);
+        int[] order = new int[numCast]; // cast indexes in the order reached, a level at a time
+        int[] levelOffsets = new int[16];
+        AtomicInteger tail = new AtomicInteger(1);
+
+        claim(castSeen, s);
+        dist[s] = 0;
+        order[0] = s;
+        int levels = 0;
+        int levelStart = 0, levelEnd = 1;
+
+        while(levelStart < levelEnd){
+            if(levels + 2 > levelOffsets.length) levelOffsets = Arrays.copyOf(levelOffsets, levelOffsets.length * 2);
+            levelOffsets[levels] = levelStart;
+            levelOffsets[++levels] = levelEnd;
+            int hops = levels;
+
+            Parallel.forRange(levelStart, levelEnd, 256, (from, to) -> {
+                int[] found = new int[64];
+                int count = 0;
+                for(int q = from; q < to; q++){
+                    int c = order[q];
+
+                    int[] films = castFilms[c];
+                    int i = 0, iEnd = castDegree[c];
+                    if(films == null){
+                        films = castAdj;
+                        i = castOffsets[c];
+                        iEnd = castOffsets[c + 1];
+                    }
+
+                    for(; i < iEnd; i++){
+                        int f = films[i];
+                        if(!claim(filmSeen, f)) continue;
+
+                        int[] members = filmAdj;
+                        int j, jEnd;
+                        if(f < frozenFilms){
+                            j = filmOffsets[f];
+                            jEnd = filmOffsets[f + 1];
+                        } else {
+                            members = filmCast[f];
+                            j = 0;
+                            jEnd = members.length;
                         }
 
-                        // Reverse path and convert to array
-                        int[] returnArr = new int[path.size()];
-                        for(int j = returnArr.length - 1; j >= 0; j--){
-                            returnArr[returnArr.length - (j+1)] = path.get(j);
+                        for(; j < jEnd; j++){
+                            int next = members[j];
+                            if(!claim(castSeen, next)) continue;
+                            dist[next] = hops;
+                            if(count == found.length) found = Arrays.copyOf(found, count * 2);
+                            found[count++] = next;
                         }
-                        return returnArr;
-                    } 
+                    }
+                }
+                // each chunk copies what it found into its own part of the next level
+                System.arraycopy(found, 0, order, tail.getAndAdd(count), count);
+            });
+
+            levelStart = levelEnd;
+            levelEnd = tail.get();
+            Arrays.sort(order, levelStart, levelEnd); // index order, so the next level reads the arrays front to back
+        }
+
+        int[] ids = Arrays.copyOf(castIDs, numCast);
+        int[] members = new int[levelEnd];
+        for(int i = 0; i < levelEnd; i++){
+            members[i] = castIDs[order[i]];
+        }
+        for(int h = 0; h < levels; h++){ // cast IDs within each level in ascending order
+            Arrays.sort(members, levelOffsets[h], levelOffsets[h + 1]);
+        }
+        return new HopDistances(castID, ids, dist, Arrays.copyOf(levelOffsets, levels + 1), members);
+    }
+
+    // Sets bit i, returns FALSE if another thread got there first
+    private static boolean claim(AtomicIntegerArray bits, int i){
+        int word = i >>> 5;
+        int bit = 1 << (i & 31);
+        while(true){
+            int old = bits.get(word);
+            if((old & bit) != 0) return false;
+            if(bits.compareAndSet(word, old, old | bit)) return true;
+        }
+    }
+
+    /**
+     * Estimates the degrees of separation across the whole graph by searching from
+     * a random sample of cast members, several at once in parallel
+     *
+     * @param samples How many cast members to search from
+     * @param seed    Seed for picking them, the same seed picks the same ones
+     * @return Number of (sampled cast member, other cast member) pairs at each
+     *         number of hops, index 0 is unused
+     */
+    public long[] sampleSeparation(int samples, long seed){
+        int[] candidates = new int[numCast]; // only cast members in at least one film
+        int numCandidates = 0;
+        for(int c = 0; c < numCast; c++){
+            if(filmCount(c) > 0) candidates[numCandidates++] = c;
+        }
+        if(numCandidates == 0 || samples <= 0) return new long[1];
+
+        Random random = new Random(seed);
+        int[] sources = new int[samples];
+        for(int i = 0; i < samples; i++){
+            sources[i] = candidates[random.nextInt(numCandidates)];
+        }
+
+        long[] histogram = new long[MAX_HOPS + 1];
+        Parallel.forRange(0, samples, 1, (from, to) -> {
+            long[] local = new long[MAX_HOPS + 1];
+            byte[] dist = new byte[numCast];
+            for(int i = from; i < to; i++){
+                distancesFrom(sources[i], dist);
+                for(int c = 0; c < numCast; c++){
+                    if(dist[c] > 0) local[dist[c]]++;
+                }
+            }
+            synchronized(histogram){
+                for(int h = 0; h < local.length; h++) histogram[h] += local[h];
+            }
+        });
+
+        int last = histogram.length - 1;
+        while(last > 0 && histogram[last] == 0) last--;
+        return Arrays.copyOf(histogram, last + 1);
+    }
+
+    // Goes up by one every time a film is added or removed
+    public int version(){
+        return version;
+    }
+
+    // Dense index of a cast member, -1 if they aren't in the graph
+    int castIndexOf(int castID){
+        return castIndex.get(castID);
+    }
+
+    int castIDOf(int c){
+        return castIDs[c];
+    }
+
+    // Number of films cast c was in
+    int filmCount(int c){
+        return castFilms[c] == null ? castOffsets[c + 1] - castOffsets[c] : castDegree[c];
+    }
+
+    /*
+     * Cast member hops from cast index source to everyone else, written into dist by cast index.
+     * Distances stop at MAX_HOPS, anyone further away is stored as MAX_HOPS, and UNREACHED (-1)
+     * marks cast members in another component. Only reads the graph, so several can run at once
+     * as long as nothing edits it.
+    */
+    static final byte MAX_HOPS = 126;
+    static final byte UNREACHED = -1;
 
-                
-                    visited.add(adjacentNode);
-                    queue.enqueue(adjacentNode);
+    void distancesFrom(int source, byte[] dist){
+        Arrays.fill(dist, 0, numCast, UNREACHED);
+        boolean[] filmSeen = new boolean[numFilms];
+        int[] queue = new int[numCast];
+        int head = 0, tail = 0;
+
+        dist[source] = 0;
+        queue[tail++] = source;
+
+        while(head < tail){
+            int c = queue[head++];
+            byte d = (byte)Math.min(dist[c] + 1, MAX_HOPS);
+
+            int[] films = castFilms[c];
+            int i = 0, iEnd = castDegree[c];
+            if(films == null){
+                films = castAdj;
+                i = castOffsets[c];
+                iEnd = castOffsets[c + 1];
+            }
+
+            for(; i < iEnd; i++){
+                int f = films[i];
+                if(filmSeen[f]) continue;
+                filmSeen[f] = true;
+
+                int[] members = filmAdj;
+                int j, jEnd;
+                if(f < frozenFilms){
+                    j = filmOffsets[f];
+                    jEnd = filmOffsets[f + 1];
+                } else {
+                    members = filmCast[f];
+                    j = 0;
+                    jEnd = members.length;
+                }
+
+                for(; j < jEnd; j++){
+                    int next = members[j];
+                    if(dist[next] != UNREACHED) continue;
+                    dist[next] = d;
+                    queue[tail++] = next;
                 }
             }
         }
+    }
 
-        return new int[0]; // No connection found
+    // Number of cast members and films held in the overlay rather than the frozen arrays
+    public int overlaySize(){
+        return overlayCast + (numCast - frozenCast) + (numFilms - frozenFilms);
     }
 
 }
@@ -0,0 +1,253 @@
+package structures;
+
+/*
+ * Order statistic tree of IDs sorted by score, highest score first (ties broken by lower ID).
+ * Implemented as a treap, so insert and remove are O(log n) expected, and every node
+ * knows the size of its subtree so the rank of an entry can also be found in O(log n).
+ * Each entry also carries a weight (e.g. number of votes) that can be used to filter results.
+*/
+public class OrderStatisticTree {
+
+    class TreeNode{
+        int id;
+        double score;
+        int weight;
+        int priority; // heap priority, random so the tree stays balanced
+        int size; // number of nodes in this subtree, including itself
+        TreeNode left, right;
+
+        TreeNode(int id, double score, int weight, int priority){
+            this.id = id;
+            this.score = score;
+            this.weight = weight;
+            this.priority = priority;
+            this.size = 1;
+        }
+    }
+
+    private TreeNode root;
+    private int seed = 0x2545F491;
+
+    public OrderStatisticTree(){
+        root = null;
+    }
+
+    // xorshift, only used for treap priorities
+    private int nextPriority(){
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed;
+    }
+
+    private static int size(TreeNode node){
+        return node == null ? 0 : node.size;
+    }
+
+    private static void update(TreeNode node){
+        node.size = 1 + size(node.left) + size(node.right);
+    }
+
+    // True if (score, id) should come before the node in the tree
+    private static boolean before(double score, int id, TreeNode node){
+        if(score != node.score) return score > node.score;
+        return id < node.id;
+    }
+
+    // Splits the tree into nodes before (score, id) and nodes not before it
+    private TreeNode[] split(TreeNode node, double score, int id){
+        if(node == null) return new TreeNode[]{null, null};
+
+        if(before(score, id, node)){
+            TreeNode[] parts = split(node.left, score, id);
+            node.left = parts[1];
+            update(node);
+            return new TreeNode[]{parts[0], node};
+        } else {
+            TreeNode[] parts = split(node.right, score, id);
+            node.right = parts[0];
+            update(node);
+            return new TreeNode[]{node, parts[1]};
+        }
+    }
+
+    // Joins two trees where every node in a comes before every node in b
+    private TreeNode merge(TreeNode a, TreeNode b){
+        if(a == null) return b;
+        if(b == null) return a;
+
+        if(a.priority > b.priority){
+            a.right = merge(a.right, b);
+            update(a);
+            return a;
+        } else {
+            b.left = merge(a, b.left);
+            update(b);
+            return b;
+        }
+    }
+
+    /**
+     * Inserts an ID with a given score. The caller must make sure the same
+     * (score, id) entry is not already in the tree
+     */
+    public void insert(int id, double score, int weight){
+        TreeNode[] parts = split(root, score, id);
+        root = merge(merge(parts[0], new TreeNode(id, score, weight, nextPriority())), parts[1]);
+    }
+
+    /**
+     * Removes the entry with the given ID and score, the score must be the one it
+     * was inserted with
+     *
+     * @return TRUE if the entry was found and removed, FALSE otherwise
+     */
+    public boolean remove(int id, double score){
+        TreeNode parent = null;
+        TreeNode node = root;
+
+        while(node != null && !(node.id == id && node.score == score)){
+            parent = node;
+            node = before(score, id, node) ? node.left : node.right;
+        }
+        if(node == null) return false;
+
+        TreeNode joined = merge(node.left, node.right);
+        if(parent == null){
+            root = joined;
+        } else if(parent.left == node){
+            parent.left = joined;
+        } else {
+            parent.right = joined;
+        }
+
+        // Fix subtree sizes on the path down to the removed node
+        TreeNode ptr = root;
+        while(ptr != null && ptr != joined){
+            ptr.size--;
+            ptr = before(score, id, ptr) ? ptr.left : ptr.right;
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the rank of an entry, 0 being the highest score
+     *
+     * @return The rank, or -1 if the entry is not in the tree
+     */
+    public int rank(int id, double score){
+        int rank = 0;
+        TreeNode node = root;
+        while(node != null){
+            if(node.id == id && node.score == score){
+                return rank + size(node.left);
+            }
+            if(before(score, id, node)){
+                node = node.left;
+            } else {
+                rank += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the IDs with the highest scores, skipping any entry whose weight is
+     * below minWeight
+     *
+     * @param num       The maximum number of IDs to return
+     * @param minWeight The minimum weight an entry needs to be included
+     * @return The IDs in order from highest to lowest score
+     */
+    public int[] top(int num, int minWeight){
+        return top(num, minWeight, Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Gets the IDs with the highest scores, skipping any entry whose weight is
+     * below minWeight and stopping at the first score below minScore
+     *
+     * @param num       The maximum number of IDs to return
+     * @param minWeight The minimum weight an entry needs to be included
+     * @param minScore  The minimum score an entry needs to be included
+     * @return The IDs in order from highest to lowest score
+     */
+    public int[] top(int num, int minWeight, double minScore){
+        if(num <= 0 || root == null) return new int[0];
+
+        int[] found = new int[Math.min(num, root.size)];
+        int count = walk(found, null, null, minWeight, minScore);
+        if(count == found.length) return found;
+
+        int[] returnArr = new int[count];
+        for(int i = 0; i < count; i++){
+            returnArr[i] = found[i];
+        }
+        return returnArr;
+    }
+
+    /**
+     * Gets the weights of the entries with the highest scores, in the same order
+     * as top(num, 0)
+     */
+    public int[] topWeights(int num){
+        if(num <= 0 || root == null) return new int[0];
+
+        int[] weights = new int[Math.min(num, root.size)];
+        walk(null, weights, null, Integer.MIN_VALUE, Double.NEGATIVE_INFINITY);
+        return weights;
+    }
+
+    /**
+     * Gets the highest scores, in the same order as top(num, 0)
+     */
+    public double[] topScores(int num){
+        if(num <= 0 || root == null) return new double[0];
+
+        double[] scores = new double[Math.min(num, root.size)];
+        walk(null, null, scores, Integer.MIN_VALUE, Double.NEGATIVE_INFINITY);
+        return scores;
+    }
+
+    // In order traversal with an explicit stack, stopping as soon as the output array is full
+    // or the scores drop below minScore. Output arrays can be null, the length of the first
+    // one given decides how many are found
+    private int walk(int[] ids, int[] weights, double[] scores, int minWeight, double minScore){
+        int limit = ids != null ? ids.length : (weights != null ? weights.length : scores.length);
+        int count = 0;
+
+        TreeNode[] stack = new TreeNode[64];
+        int depth = 0;
+        TreeNode node = root;
+
+        while((node != null || depth > 0) && count < limit){
+            while(node != null){
+                if(depth == stack.length){
+                    TreeNode[] bigger = new TreeNode[stack.length * 2];
+                    for(int i = 0; i < depth; i++) bigger[i] = stack[i];
+                    stack = bigger;
+                }
+                stack[depth++] = node;
+                node = node.left;
+            }
+            node = stack[--depth];
+            if(node.score < minScore) break; // everything after is lower still
+            if(node.weight >= minWeight){
+                if(ids != null) ids[count] = node.id;
+                if(weights != null) weights[count] = node.weight;
+                if(scores != null) scores[count] = node.score;
+                count++;
+            }
+            node = node.right;
+        }
+
+        return count;
+    }
+
+    public int size(){
+        return size(root);
+    }
+
+}
@@ -0,0 +1,75 @@
+package structures;
+
+/*
+ * Immutable result of a batched time range query over several movies. Movie i of the batch holds
+ * the ratings in values[offsets[i] .. offsets[i+1]), newest first, so every movie's ratings sit
+ * in one shared array instead of one array per movie. A summary only result keeps the offsets and
+ * sums but no values, for callers that only need each movie's count and mean.
+ * The arrays returned by the getters are shared, so they must not be changed.
+*/
+public class PackedRatings {
+
+    private int[] movieIDs; // the IDs asked for, in the order asked
+    private int[] offsets;
+    private float[] values; // null for a summary only result
+    private double[] sums;
+
+    public PackedRatings(int[] movieIDs, int[] offsets, float[] values, double[] sums){
+        this.movieIDs = movieIDs;
+        this.offsets = offsets;
+        this.values = values;
+        this.sums = sums;
+    }
+
+    // Number of movies in the batch
+    public int numMovies(){
+        return movieIDs.length;
+    }
+
+    // Number of ratings across every movie
+    public int size(){
+        return offsets[movieIDs.length];
+    }
+
+    public boolean hasValues(){
+        return values != null;
+    }
+
+    public int movieID(int index){
+        return movieIDs[index];
+    }
+
+    public int getCount(int index){
+        return offsets[index + 1] - offsets[index];
+    }
+
+    // Mean rating of the movie at index, 0 if it has none in the range
+    public float getMean(int index){
+        int count = getCount(index);
+        return count == 0 ? 0 : (float)(sums[index] / count);
+    }
+
+    public int[] getOffsets(){
+        return offsets;
+    }
+
+    public float[] getValues(){
+        return values;
+    }
+
+    /**
+     * Copies out the ratings of one movie in the batch, newest first, the same as
+     * Ratings.getMovieRatingsBetween for that movie
+     *
+     * @param index Position of the movie in the batch
+     * @return The ratings, or an empty array if there are none or this is a
+     *         summary only result
+     */
+    public float[] getRatings(int index){
+        if(values == null) return new float[0];
+        float[] ratings = new float[getCount(index)];
+        System.arraycopy(values, offsets[index], ratings, 0, ratings.length);
+        return ratings;
+    }
+
+}
@@ -0,0 +1,194 @@
+package structures;
+
+import java.util.Arrays;
+
+/*
+ * Bounded least recently used cache of findDistance results, keyed by the unordered pair of cast IDs.
+ * Each entry holds the graph version its path was found at, and only counts as a hit while the
+ * graph is still at that version. A pair's path is kept in both directions, the path from the
+ * lower ID and the path from the higher ID, the second being worked out from the first when it's
+ * first asked for, so every hit after that is O(1) and allocates nothing.
+ * Entries live in slots of plain arrays, chained per hash bucket, and linked most recently used
+ * first through prev/next. Returned paths are shared, so they must not be changed.
+*/
+public class PathCache {
+
+    private final int capacity;
+    private int size;
+
+    private long[] keys; // lower ID << 32 | higher ID
+    private int[] versions;
+    private int[][] fromLow, fromHigh; // null until known
+    private int[] chain; // next slot in the same bucket, -1 at the end
+    private int[] buckets; // first slot in each bucket, -1 if empty
+    private int[] prev, next; // recency list, -1 at the ends
+    private int head = -1, tail = -1; // most and least recently used
+
+    private long hits, misses;
+
+    public PathCache(int capacity){
+        this.capacity = Math.max(1, capacity);
+        keys = new long[this.capacity];
+        versions = new int[this.capacity];
+        fromLow = new int[this.capacity][];
+        fromHigh = new int[this.capacity][];
+        chain = new int[this.capacity];
+        prev = new int[this.capacity];
+        next = new int[this.capacity];
+        int numBuckets = Integer.highestOneBit(this.capacity * 2 - 1) * 2;
+        buckets = new int[numBuckets];
+        Arrays.fill(buckets, -1);
+    }
+
+    private static long key(int a, int b){
+        int low = Math.min(a, b), high = Math.max(a, b);
+        return ((long)low << 32) | (high & 0xffffffffL);
+    }
+
+    private int bucket(long key){
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int)(h >>> 32) & (buckets.length - 1);
+    }
+
+    private int find(long key){
+        for(int i = buckets[bucket(key)]; i != -1; i = chain[i]){
+            if(keys[i] == key) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the cached path from a to b
+     *
+     * @param version The graph's current version
+     * @return The path, or null if it isn't cached or was found at an older version
+     */
+    public synchronized int[] get(int a, int b, int version){
+        int i = find(key(a, b));
+        if(i == -1 || versions[i] != version){
+            misses++;
+            return null;
+        }
+
+        int[] path = a < b ? fromLow[i] : fromHigh[i];
+        if(path == null){ // only the path from b so far
+            path = reverse(a < b ? fromHigh[i] : fromLow[i], b);
+            if(a < b){
+                fromLow[i] = path;
+            } else {
+                fromHigh[i] = path;
+            }
+        }
+        moveToFront(i);
+        hits++;
+        return path;
+    }
+
+    /**
+     * Caches the path from a to b, replacing anything cached for the pair and
+     * dropping the least recently used pair if full
+     *
+     * @param version The graph version the path was found at
+     * @param path    The cast IDs after a up to and including b, or empty if there
+     *                is no connection
+     */
+    public synchronized void put(int a, int b, int version, int[] path){
+        long key = key(a, b);
+        int i = find(key);
+        if(i == -1){
+            if(size < capacity){
+                i = size++;
+            } else {
+                i = tail;
+                unlink(i);
+                removeFromBucket(i);
+            }
+            keys[i] = key;
+            int bk = bucket(key);
+            chain[i] = buckets[bk];
+            buckets[bk] = i;
+        } else {
+            unlink(i);
+        }
+
+        versions[i] = version;
+        fromLow[i] = a < b ? path : null;
+        fromHigh[i] = a < b ? null : path;
+
+        // put at the front
+        prev[i] = -1;
+        next[i] = head;
+        if(head != -1) prev[head] = i;
+        head = i;
+        if(tail == -1) tail = i;
+    }
+
+    // Path back to start, given the path from start
+    private static int[] reverse(int[] path, int start){
+        if(path.length == 0) return path;
+        int[] reversed = new int[path.length];
+        for(int i = 0; i < path.length - 1; i++){
+            reversed[i] = path[path.length - 2 - i];
+        }
+        reversed[path.length - 1] = start;
+        return reversed;
+    }
+
+    private void moveToFront(int i){
+        if(head == i) return;
+        unlink(i);
+        prev[i] = -1;
+        next[i] = head;
+        if(head != -1) prev[head] = i;
+        head = i;
+        if(tail == -1) tail = i;
+    }
+
+    private void unlink(int i){
+        if(prev[i] != -1){
+            next[prev[i]] = next[i];
+        } else {
+            head = next[i];
+        }
+        if(next[i] != -1){
+            prev[next[i]] = prev[i];
+        } else {
+            tail = prev[i];
+        }
+    }
+
+    private void removeFromBucket(int i){
+        int bk = bucket(keys[i]);
+        if(buckets[bk] == i){
+            buckets[bk] = chain[i];
+            return;
+        }
+        for(int j = buckets[bk]; j != -1; j = chain[j]){
+            if(chain[j] == i){
+                chain[j] = chain[i];
+                return;
+            }
+        }
+    }
+
+    public synchronized void clear(){
+        size = 0;
+        head = tail = -1;
+        Arrays.fill(buckets, -1);
+        Arrays.fill(fromLow, null);
+        Arrays.fill(fromHigh, null);
+    }
+
+    public synchronized int size(){
+        return size;
+    }
+
+    public synchronized long getHits(){
+        return hits;
+    }
+
+    public synchronized long getMisses(){
+        return misses;
+    }
+
+}
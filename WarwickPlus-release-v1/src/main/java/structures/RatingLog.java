@@ -0,0 +1,108 @@
+package structures;
+
+/*
+ * Append-only log of rating changes, stored in fixed size segments of plain arrays.
+ * Entry i is the i-th change ever made: a user, a movie, the new rating (NaN if it was removed)
+ * and its timestamp in milliseconds. Only one thread appends at a time, and an entry is filled in
+ * before the count is bumped, so any thread can read entries below version() without locking.
+ * Segments nobody needs any more can be trimmed off the front, entry numbers never change.
+*/
+public class RatingLog {
+
+    private static final int SEGMENT_BITS = 12;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private static class Segment {
+        final int[] users = new int[SEGMENT_SIZE];
+        final int[] movies = new int[SEGMENT_SIZE];
+        final float[] ratings = new float[SEGMENT_SIZE];
+        final long[] times = new long[SEGMENT_SIZE];
+    }
+
+    private volatile Segment[] segments;
+    private volatile int version; // number of entries ever appended
+    private int trimmedSegments; // segments before this have been dropped
+
+    public RatingLog(){
+        segments = new Segment[16];
+    }
+
+    /**
+     * Appends a change. Must not be called by two threads at once
+     *
+     * @param rating The new rating, or NaN if the rating was removed
+     */
+    public void append(int userID, int movieID, float rating, long timeMillis){
+        int i = version;
+        int s = i >>> SEGMENT_BITS;
+        Segment segment;
+        if(s == segments.length || segments[s] == null){
+            segment = addSegment(s);
+        } else {
+            segment = segments[s];
+        }
+
+        int p = i & SEGMENT_MASK;
+        segment.users[p] = userID;
+        segment.movies[p] = movieID;
+        segment.ratings[p] = rating;
+        segment.times[p] = timeMillis;
+        version = i + 1; // publishes the entry
+    }
+
+    // Synchronized with trim so a copy of the segment table can't bring back a trimmed segment
+    private synchronized Segment addSegment(int s){
+        Segment[] table = segments;
+        if(s == table.length){
+            Segment[] bigger = new Segment[table.length * 2];
+            System.arraycopy(table, 0, bigger, 0, table.length);
+            table = bigger;
+        }
+        Segment segment = new Segment();
+        table[s] = segment;
+        segments = table;
+        return segment;
+    }
+
+    // Number of entries ever appended, entries below this can be read
+    public int version(){
+        return version;
+    }
+
+    public int user(int i){
+        return segments[i >>> SEGMENT_BITS].users[i & SEGMENT_MASK];
+    }
+
+    public int movie(int i){
+        return segments[i >>> SEGMENT_BITS].movies[i & SEGMENT_MASK];
+    }
+
+    public float rating(int i){
+        return segments[i >>> SEGMENT_BITS].ratings[i & SEGMENT_MASK];
+    }
+
+    public long time(int i){
+        return segments[i >>> SEGMENT_BITS].times[i & SEGMENT_MASK];
+    }
+
+    /**
+     * Drops every whole segment before a given entry, they can't be read afterwards
+     *
+     * @param before First entry that still has to be readable
+     */
+    public synchronized void trim(int before){
+        Segment[] table = segments;
+        int upTo = Math.min(before >>> SEGMENT_BITS, table.length);
+        for(int s = trimmedSegments; s < upTo; s++){
+            table[s] = null;
+        }
+        trimmedSegments = Math.max(trimmedSegments, upTo);
+    }
+
+    // Number of entries still held in memory
+    public int retained(){
+        return version - trimmedSegments * SEGMENT_SIZE;
+    }
+
+}
@@ -0,0 +1,227 @@
+package structures;
+
+import java.util.Arrays;
+
+/*
+ * A Rollup stores the count, sum and sum of squares of values grouped into integer buckets
+ * (e.g. days since 1970). Only buckets that have been used are stored, kept in key order,
+ * so memory is proportional to the number of active buckets rather than the time span.
+ * Prefix sums are rebuilt lazily on the first range query after a change, after which any
+ * range total is answered in O(log n).
+*/
+public class Rollup {
+
+    private int[] keys;
+    private int[] counts;
+    private double[] sums, sumsOfSquares;
+    private int size;
+
+    // prefix[i] = total of buckets 0 .. i-1, only valid when dirty is false
+    private long[] prefixCounts;
+    private double[] prefixSums, prefixSumsOfSquares;
+    private boolean dirty;
+
+    public Rollup(){
+        keys = new int[8];
+        counts = new int[8];
+        sums = new double[8];
+        sumsOfSquares = new double[8];
+        size = 0;
+        dirty = true;
+    }
+
+    /**
+     * Copies the rollup with its prefix sums already built, so queries on the copy
+     * only read it and any number of threads can share it as long as nobody adds
+     * to or removes from it
+     */
+    public Rollup copy(){
+        Rollup copy = new Rollup();
+        copy.keys = Arrays.copyOf(keys, Math.max(1, size));
+        copy.counts = Arrays.copyOf(counts, copy.keys.length);
+        copy.sums = Arrays.copyOf(sums, copy.keys.length);
+        copy.sumsOfSquares = Arrays.copyOf(sumsOfSquares, copy.keys.length);
+        copy.size = size;
+        copy.rebuildPrefix();
+        return copy;
+    }
+
+    // Index of the first bucket with key >= key (binary search)
+    private int lowerBound(int key){
+        int lo = 0, hi = size;
+        while(lo < hi){
+            int mid = (lo + hi) >>> 1;
+            if(keys[mid] < key){
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Finds the bucket for a key, creating it in the right position if it doesn't exist
+    private int bucket(int key){
+        int i = lowerBound(key);
+        if(i < size && keys[i] == key) return i;
+
+        if(size == keys.length){
+            int newSize = size * 2;
+            int[] newKeys = new int[newSize];
+            int[] newCounts = new int[newSize];
+            double[] newSums = new double[newSize];
+            double[] newSumsOfSquares = new double[newSize];
+            for(int j = 0; j < size; j++){
+                newKeys[j] = keys[j];
+                newCounts[j] = counts[j];
+                newSums[j] = sums[j];
+                newSumsOfSquares[j] = sumsOfSquares[j];
+            }
+            keys = newKeys;
+            counts = newCounts;
+            sums = newSums;
+            sumsOfSquares = newSumsOfSquares;
+        }
+
+        // shift later buckets up one, ratings mostly arrive in time order so this is usually nothing
+        for(int j = size; j > i; j--){
+            keys[j] = keys[j-1];
+            counts[j] = counts[j-1];
+            sums[j] = sums[j-1];
+            sumsOfSquares[j] = sumsOfSquares[j-1];
+        }
+        keys[i] = key;
+        counts[i] = 0;
+        sums[i] = 0;
+        sumsOfSquares[i] = 0;
+        size++;
+
+        return i;
+    }
+
+    public void add(int key, float value){
+        int i = bucket(key);
+        counts[i]++;
+        sums[i] += value;
+        sumsOfSquares[i] += (double)value * value;
+        dirty = true;
+    }
+
+    public void remove(int key, float value){
+        int i = lowerBound(key);
+        if(i == size || keys[i] != key) return;
+        counts[i]--;
+        sums[i] -= value;
+        sumsOfSquares[i] -= (double)value * value;
+        dirty = true;
+    }
+
+    /**
+     * Adds every bucket of another rollup into this one, in one pass over both
+     * since they are both in key order
+     */
+    public void merge(Rollup other){
+        int n = size + other.size;
+        int[] newKeys = new int[Math.max(8, n)];
+        int[] newCounts = new int[newKeys.length];
+        double[] newSums = new double[newKeys.length];
+        double[] newSumsOfSquares = new double[newKeys.length];
+
+        int i = 0, j = 0, k = 0;
+        while(i < size || j < other.size){
+            if(j == other.size || (i < size && keys[i] < other.keys[j])){
+                newKeys[k] = keys[i];
+                newCounts[k] = counts[i];
+                newSums[k] = sums[i];
+                newSumsOfSquares[k] = sumsOfSquares[i];
+                i++;
+            } else if(i == size || other.keys[j] < keys[i]){
+                newKeys[k] = other.keys[j];
+                newCounts[k] = other.counts[j];
+                newSums[k] = other.sums[j];
+                newSumsOfSquares[k] = other.sumsOfSquares[j];
+                j++;
+            } else {
+                newKeys[k] = keys[i];
+                newCounts[k] = counts[i] + other.counts[j];
+                newSums[k] = sums[i] + other.sums[j];
+                newSumsOfSquares[k] = sumsOfSquares[i] + other.sumsOfSquares[j];
+                i++;
+                j++;
+            }
+            k++;
+        }
+
+        keys = newKeys;
+        counts = newCounts;
+        sums = newSums;
+        sumsOfSquares = newSumsOfSquares;
+        size = k;
+        dirty = true;
+    }
+
+    private void rebuildPrefix(){
+        if(!dirty) return;
+
+        if(prefixCounts == null || prefixCounts.length < size + 1){
+            prefixCounts = new long[keys.length + 1];
+            prefixSums = new double[keys.length + 1];
+            prefixSumsOfSquares = new double[keys.length + 1];
+        }
+        for(int i = 0; i < size; i++){
+            prefixCounts[i+1] = prefixCounts[i] + counts[i];
+            prefixSums[i+1] = prefixSums[i] + sums[i];
+            prefixSumsOfSquares[i+1] = prefixSumsOfSquares[i] + sumsOfSquares[i];
+        }
+        dirty = false;
+    }
+
+    /**
+     * Totals for all buckets from fromKey to toKey inclusive
+     *
+     * @return {count, sum, sum of squares}
+     */
+    public double[] total(int fromKey, int toKey){
+        if(toKey < fromKey) return new double[3];
+
+        rebuildPrefix();
+        int lo = lowerBound(fromKey);
+        int hi = lowerBound(toKey + 1);
+
+        return new double[]{prefixCounts[hi] - prefixCounts[lo], prefixSums[hi] - prefixSums[lo], prefixSumsOfSquares[hi] - prefixSumsOfSquares[lo]};
+    }
+
+    /**
+     * Count of every bucket from fromKey to toKey inclusive, one entry per bucket
+     */
+    public int[] countSeries(int fromKey, int toKey){
+        if(toKey < fromKey) return new int[0];
+
+        int[] series = new int[toKey - fromKey + 1];
+        for(int i = lowerBound(fromKey); i < size && keys[i] <= toKey; i++){
+            series[keys[i] - fromKey] = counts[i];
+        }
+        return series;
+    }
+
+    /**
+     * Average of every bucket from fromKey to toKey inclusive, 0 for empty buckets
+     */
+    public float[] averageSeries(int fromKey, int toKey){
+        if(toKey < fromKey) return new float[0];
+
+        float[] series = new float[toKey - fromKey + 1];
+        for(int i = lowerBound(fromKey); i < size && keys[i] <= toKey; i++){
+            if(counts[i] > 0){
+                series[keys[i] - fromKey] = (float)(sums[i] / counts[i]);
+            }
+        }
+        return series;
+    }
+
+    // Number of buckets stored
+    public int size(){
+        return size;
+    }
+
+}
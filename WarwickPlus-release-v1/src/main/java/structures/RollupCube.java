@@ -0,0 +1,85 @@
+package structures;
+
+import java.util.Calendar;
+
+/*
+ * Day, month and year Rollups of values stamped with a Calendar time.
+ * Day keys are days since 1970 in the calendar's own time zone, month keys are year * 12 + month,
+ * and year keys are just the year.
+*/
+public class RollupCube {
+
+    public static final int DAY = 0;
+    public static final int MONTH = 1;
+    public static final int YEAR = 2;
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private Rollup[] levels;
+
+    public RollupCube(){
+        levels = new Rollup[]{new Rollup(), new Rollup(), new Rollup()};
+    }
+
+    // Copy that only reads itself when queried, see Rollup.copy
+    public RollupCube copy(){
+        RollupCube copy = new RollupCube();
+        for(int unit = DAY; unit <= YEAR; unit++){
+            copy.levels[unit] = levels[unit].copy();
+        }
+        return copy;
+    }
+
+    // Adds every bucket of another cube into this one
+    public void merge(RollupCube other){
+        for(int unit = DAY; unit <= YEAR; unit++){
+            levels[unit].merge(other.levels[unit]);
+        }
+    }
+
+    // Bucket key for a time at the given granularity
+    public static int keyOf(int unit, Calendar time){
+        switch(unit){
+            case DAY:
+                long localMillis = time.getTimeInMillis() + time.get(Calendar.ZONE_OFFSET) + time.get(Calendar.DST_OFFSET);
+                return (int)Math.floorDiv(localMillis, MILLIS_PER_DAY);
+            case MONTH:
+                return time.get(Calendar.YEAR) * 12 + time.get(Calendar.MONTH);
+            case YEAR:
+                return time.get(Calendar.YEAR);
+            default:
+                throw new IllegalArgumentException("Unknown rollup unit: " + unit);
+        }
+    }
+
+    public void add(Calendar time, float value){
+        for(int unit = DAY; unit <= YEAR; unit++){
+            levels[unit].add(keyOf(unit, time), value);
+        }
+    }
+
+    public void remove(Calendar time, float value){
+        for(int unit = DAY; unit <= YEAR; unit++){
+            levels[unit].remove(keyOf(unit, time), value);
+        }
+    }
+
+    public Rollup get(int unit){
+        if(unit < DAY || unit > YEAR) throw new IllegalArgumentException("Unknown rollup unit: " + unit);
+        return levels[unit];
+    }
+
+    // Totals {count, sum, sum of squares} for the buckets that start and end fall in, inclusive
+    public double[] total(int unit, Calendar start, Calendar end){
+        return get(unit).total(keyOf(unit, start), keyOf(unit, end));
+    }
+
+    public int[] countSeries(int unit, Calendar start, Calendar end){
+        return get(unit).countSeries(keyOf(unit, start), keyOf(unit, end));
+    }
+
+    public float[] averageSeries(int unit, Calendar start, Calendar end){
+        return get(unit).averageSeries(keyOf(unit, start), keyOf(unit, end));
+    }
+
+}
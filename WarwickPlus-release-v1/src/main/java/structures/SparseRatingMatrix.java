@@ -0,0 +1,257 @@
+package structures;
+
+import java.util.Arrays;
+
+import utils.Parallel;
+
+/*
+ * Immutable user x movie rating matrix in compressed sparse row (CSR) and column (CSC) form.
+ * Users and movies are given dense indexes 0..n-1 in order of ID. Row u holds the movies user u
+ * rated in rowMovies[rowOffsets[u] .. rowOffsets[u+1]) with the ratings at the same positions
+ * in rowValues, and column m holds the users who rated movie m the same way. So all of a user's
+ * or a movie's ratings can be walked in O(degree) over plain arrays.
+ * The arrays returned by the getters are shared, so they must not be changed.
+*/
+public class SparseRatingMatrix {
+
+    private int[] userIDs, movieIDs; // dense index -> ID, sorted
+    private IntIntMap userIndex, movieIndex; // ID -> dense index
+
+    private int[] rowOffsets, rowMovies;
+    private float[] rowValues;
+
+    private int[] colOffsets, colUsers;
+    private float[] colValues;
+
+    private SparseRatingMatrix(){
+    }
+
+    /**
+     * Builds a matrix from (user, movie, rating) triples. Each user and movie pair
+     * must only appear once. Rows are remapped and sorted in parallel
+     *
+     * @param users   User ID of each rating
+     * @param movies  Movie ID of each rating
+     * @param ratings The ratings
+     * @param count   Number of triples to use from the start of the arrays
+     */
+    public static SparseRatingMatrix fromTriples(int[] users, int[] movies, float[] ratings, int count){
+        SparseRatingMatrix matrix = new SparseRatingMatrix();
+
+        matrix.userIDs = distinctSorted(users, count);
+        matrix.movieIDs = distinctSorted(movies, count);
+        matrix.userIndex = indexOf(matrix.userIDs);
+        matrix.movieIndex = indexOf(matrix.movieIDs);
+
+        int numUsers = matrix.userIDs.length;
+        int numMovies = matrix.movieIDs.length;
+
+        // Remap IDs to dense indexes, the maps are only read here so this is safe in parallel
+        int[] u = new int[count];
+        int[] m = new int[count];
+        Parallel.forRange(0, count, 4096, (from, to) -> {
+            for(int i = from; i < to; i++){
+                u[i] = matrix.userIndex.get(users[i]);
+                m[i] = matrix.movieIndex.get(movies[i]);
+            }
+        });
+
+        // Rows: count, prefix sum, scatter
+        matrix.rowOffsets = new int[numUsers + 1];
+        for(int i = 0; i < count; i++) matrix.rowOffsets[u[i] + 1]++;
+        for(int i = 0; i < numUsers; i++) matrix.rowOffsets[i + 1] += matrix.rowOffsets[i];
+
+        matrix.rowMovies = new int[count];
+        matrix.rowValues = new float[count];
+        int[] cursor = Arrays.copyOf(matrix.rowOffsets, numUsers);
+        for(int i = 0; i < count; i++){
+            int pos = cursor[u[i]]++;
+            matrix.rowMovies[pos] = m[i];
+            matrix.rowValues[pos] = ratings[i];
+        }
+
+        // Sort each row by movie index
+        Parallel.forRange(0, numUsers, 256, (from, to) -> {
+            for(int row = from; row < to; row++){
+                sortSegment(matrix.rowMovies, matrix.rowValues, matrix.rowOffsets[row], matrix.rowOffsets[row + 1]);
+            }
+        });
+
+        // Columns: going through the rows in order means each column's users come out sorted
+        matrix.colOffsets = new int[numMovies + 1];
+        for(int i = 0; i < count; i++) matrix.colOffsets[m[i] + 1]++;
+        for(int i = 0; i < numMovies; i++) matrix.colOffsets[i + 1] += matrix.colOffsets[i];
+
+        matrix.colUsers = new int[count];
+        matrix.colValues = new float[count];
+        cursor = Arrays.copyOf(matrix.colOffsets, numMovies);
+        for(int row = 0; row < numUsers; row++){
+            for(int k = matrix.rowOffsets[row]; k < matrix.rowOffsets[row + 1]; k++){
+                int pos = cursor[matrix.rowMovies[k]]++;
+                matrix.colUsers[pos] = row;
+                matrix.colValues[pos] = matrix.rowValues[k];
+            }
+        }
+
+        return matrix;
+    }
+
+    private static int[] distinctSorted(int[] ids, int count){
+        int[] sorted = Arrays.copyOf(ids, count);
+        Arrays.sort(sorted);
+
+        int unique = 0;
+        for(int i = 0; i < count; i++){
+            if(i == 0 || sorted[i] != sorted[i - 1]) sorted[unique++] = sorted[i];
+        }
+        return Arrays.copyOf(sorted, unique);
+    }
+
+    private static IntIntMap indexOf(int[] ids){
+        IntIntMap map = new IntIntMap(ids.length);
+        for(int i = 0; i < ids.length; i++){
+            map.put(ids[i], i);
+        }
+        return map;
+    }
+
+    // Sorts keys[from..to) and moves values with them
+    private static void sortSegment(int[] keys, float[] values, int from, int to){
+        if(to - from < 32){ // insertion sort is quicker for short rows
+            for(int i = from + 1; i < to; i++){
+                int key = keys[i];
+                float value = values[i];
+                int j = i - 1;
+                while(j >= from && keys[j] > key){
+                    keys[j + 1] = keys[j];
+                    values[j + 1] = values[j];
+                    j--;
+                }
+                keys[j + 1] = key;
+                values[j + 1] = value;
+            }
+            return;
+        }
+
+        // Pack index and value bits into one long, the index in the high half decides the order
+        long[] packed = new long[to - from];
+        for(int i = from; i < to; i++){
+            packed[i - from] = ((long)keys[i] << 32) | (Float.floatToRawIntBits(values[i]) & 0xFFFFFFFFL);
+        }
+        Arrays.sort(packed);
+        for(int i = from; i < to; i++){
+            keys[i] = (int)(packed[i - from] >>> 32);
+            values[i] = Float.intBitsToFloat((int)packed[i - from]);
+        }
+    }
+
+    public int numUsers(){
+        return userIDs.length;
+    }
+
+    public int numMovies(){
+        return movieIDs.length;
+    }
+
+    // Number of ratings stored
+    public int size(){
+        return rowMovies.length;
+    }
+
+    // Dense index of a user ID, or -1 if the user has no ratings
+    public int userIndex(int userID){
+        return userIndex.get(userID);
+    }
+
+    // Dense index of a movie ID, or -1 if the movie has no ratings
+    public int movieIndex(int movieID){
+        return movieIndex.get(movieID);
+    }
+
+    public int userID(int index){
+        return userIDs[index];
+    }
+
+    public int movieID(int index){
+        return movieIDs[index];
+    }
+
+    public int[] getRowOffsets(){
+        return rowOffsets;
+    }
+
+    public int[] getRowMovies(){
+        return rowMovies;
+    }
+
+    public float[] getRowValues(){
+        return rowValues;
+    }
+
+    public int[] getColOffsets(){
+        return colOffsets;
+    }
+
+    public int[] getColUsers(){
+        return colUsers;
+    }
+
+    public float[] getColValues(){
+        return colValues;
+    }
+
+    /**
+     * Gets the IDs of every movie a user rated, in order of movie ID
+     *
+     * @return The movie IDs, or an empty array if the user cannot be found
+     */
+    public int[] getUserMovieIDs(int userID){
+        int u = userIndex(userID);
+        if(u < 0) return new int[0];
+
+        int[] ids = new int[rowOffsets[u + 1] - rowOffsets[u]];
+        for(int k = rowOffsets[u]; k < rowOffsets[u + 1]; k++){
+            ids[k - rowOffsets[u]] = movieIDs[rowMovies[k]];
+        }
+        return ids;
+    }
+
+    /**
+     * Gets every rating a user made, in the same order as getUserMovieIDs
+     *
+     * @return The ratings, or an empty array if the user cannot be found
+     */
+    public float[] getUserRatings(int userID){
+        int u = userIndex(userID);
+        if(u < 0) return new float[0];
+        return Arrays.copyOfRange(rowValues, rowOffsets[u], rowOffsets[u + 1]);
+    }
+
+    /**
+     * Gets the IDs of every user who rated a movie, in order of user ID
+     *
+     * @return The user IDs, or an empty array if the movie cannot be found
+     */
+    public int[] getMovieUserIDs(int movieID){
+        int m = movieIndex(movieID);
+        if(m < 0) return new int[0];
+
+        int[] ids = new int[colOffsets[m + 1] - colOffsets[m]];
+        for(int k = colOffsets[m]; k < colOffsets[m + 1]; k++){
+            ids[k - colOffsets[m]] = userIDs[colUsers[k]];
+        }
+        return ids;
+    }
+
+    /**
+     * Gets every rating a movie was given, in the same order as getMovieUserIDs
+     *
+     * @return The ratings, or an empty array if the movie cannot be found
+     */
+    public float[] getMovieRatings(int movieID){
+        int m = movieIndex(movieID);
+        if(m < 0) return new float[0];
+        return Arrays.copyOfRange(colValues, colOffsets[m], colOffsets[m + 1]);
+    }
+
+}
@@ -0,0 +1,70 @@
+package structures;
+
+import java.util.Arrays;
+
+/*
+ * Keeps one copy of each distinct string and hands out a small int for it, so tables can store
+ * the int instead of their own copy. Strings are numbered 0, 1, 2... in the order first seen, and
+ * found again through an open addressing table of (number + 1), 0 meaning empty, that doubles
+ * when half full. Null is always -1. Strings are never removed.
+*/
+public class StringPool {
+
+    private String[] strings;
+    private int size;
+    private int[] table;
+
+    public StringPool(){
+        strings = new String[16];
+        table = new int[32];
+    }
+
+    /**
+     * Gets the number for a string, adding it if it's new
+     *
+     * @param s The string, can be null
+     * @return Its number, or -1 if s is null
+     */
+    public int intern(String s){
+        if(s == null) return -1;
+
+        int mask = table.length - 1;
+        int slot = spread(s.hashCode()) & mask;
+        while(table[slot] != 0){
+            int i = table[slot] - 1;
+            if(strings[i].equals(s)) return i;
+            slot = (slot + 1) & mask;
+        }
+
+        if(size == strings.length) strings = Arrays.copyOf(strings, size * 2);
+        strings[size] = s;
+        table[slot] = ++size;
+        if(size * 2 > table.length) grow();
+        return size - 1;
+    }
+
+    // The string for a number from intern, null for -1
+    public String get(int i){
+        return i < 0 ? null : strings[i];
+    }
+
+    // Number of distinct strings
+    public int size(){
+        return size;
+    }
+
+    private void grow(){
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+        for(int i = 0; i < size; i++){
+            int slot = spread(strings[i].hashCode()) & mask;
+            while(table[slot] != 0) slot = (slot + 1) & mask;
+            table[slot] = i + 1;
+        }
+    }
+
+    private static int spread(int h){
+        return h ^ (h >>> 16);
+    }
+
+}
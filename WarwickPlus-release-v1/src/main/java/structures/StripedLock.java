@@ -0,0 +1,52 @@
+package structures;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * A fixed set of locks shared out between integer IDs, so threads working on different IDs
+ * rarely wait for each other without needing one lock per ID.
+ * The stripe for an ID is picked the same way HashMap picks a bucket, so with HashMap.BUCKETS
+ * stripes the lock for an ID also guards the bucket that ID lives in.
+*/
+public class StripedLock {
+
+    private ReentrantLock[] locks;
+
+    public StripedLock(int stripes){
+        locks = new ReentrantLock[stripes];
+        for(int i = 0; i < stripes; i++){
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    public ReentrantLock get(int id){
+        return locks[stripeOf(id)];
+    }
+
+    // Index of the stripe an ID belongs to, the same as its HashMap bucket
+    public int stripeOf(int id){
+        return Math.abs(((Integer) id).hashCode()) % locks.length;
+    }
+
+    public ReentrantLock getStripe(int stripe){
+        return locks[stripe];
+    }
+
+    // Takes every stripe, always in the same order
+    public void lockAll(){
+        for(int i = 0; i < locks.length; i++){
+            locks[i].lock();
+        }
+    }
+
+    public void unlockAll(){
+        for(int i = locks.length - 1; i >= 0; i--){
+            locks[i].unlock();
+        }
+    }
+
+    public int size(){
+        return locks.length;
+    }
+
+}
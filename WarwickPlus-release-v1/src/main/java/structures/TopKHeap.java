@@ -0,0 +1,115 @@
+package structures;
+
+/*
+ * Keeps the k highest scoring IDs offered to it, using a min-heap on plain arrays so the
+ * lowest kept score is always at the root. Offering is O(log k) and nothing is boxed.
+ * Ties are broken by lower ID, the same as OrderStatisticTree.
+*/
+public class TopKHeap {
+
+    private int[] ids;
+    private float[] scores;
+    private int size;
+
+    public TopKHeap(int k){
+        ids = new int[Math.max(0, k)];
+        scores = new float[Math.max(0, k)];
+        size = 0;
+    }
+
+    // True if entry a should be kept over entry b
+    private static boolean better(float scoreA, int idA, float scoreB, int idB){
+        if(scoreA != scoreB) return scoreA > scoreB;
+        return idA < idB;
+    }
+
+    /**
+     * Offers an ID to the heap, it is kept if the heap isn't full yet or it beats
+     * the lowest entry
+     *
+     * @return TRUE if the ID was kept, FALSE otherwise
+     */
+    public boolean offer(int id, float score){
+        if(ids.length == 0) return false;
+
+        if(size < ids.length){
+            ids[size] = id;
+            scores[size] = score;
+            siftUp(size++);
+            return true;
+        }
+        if(!better(score, id, scores[0], ids[0])) return false;
+
+        ids[0] = id;
+        scores[0] = score;
+        siftDown(0);
+        return true;
+    }
+
+    private void siftUp(int i){
+        while(i > 0){
+            int parent = (i - 1) >>> 1;
+            if(!better(scores[parent], ids[parent], scores[i], ids[i])) break;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i){
+        while(true){
+            int left = 2 * i + 1;
+            if(left >= size) break;
+            int right = left + 1;
+            int worst = left;
+            if(right < size && better(scores[left], ids[left], scores[right], ids[right])) worst = right;
+            if(!better(scores[i], ids[i], scores[worst], ids[worst])) break;
+            swap(i, worst);
+            i = worst;
+        }
+    }
+
+    private void swap(int a, int b){
+        int id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+        float score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+
+    // Lowest score being kept, only meaningful when size() > 0
+    public float minScore(){
+        return scores[0];
+    }
+
+    /**
+     * Empties the heap into the given arrays, highest score first
+     *
+     * @param outIDs    Array to write the IDs into from offset
+     * @param outScores Array to write the scores into from offset, can be null
+     * @param offset    First position to write to
+     * @return The number of entries written
+     */
+    public int drain(int[] outIDs, float[] outScores, int offset){
+        int count = size;
+        // Repeatedly take the lowest, which fills the output from the back
+        while(size > 0){
+            size--;
+            outIDs[offset + size] = ids[0];
+            if(outScores != null) outScores[offset + size] = scores[0];
+            ids[0] = ids[size];
+            scores[0] = scores[size];
+            siftDown(0);
+        }
+        return count;
+    }
+
+    public void clear(){
+        size = 0;
+    }
+
+    public int size(){
+        return size;
+    }
+
+}
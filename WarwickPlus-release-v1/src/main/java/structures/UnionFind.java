@@ -0,0 +1,90 @@
+package structures;
+
+import java.util.Arrays;
+
+/*
+ * Disjoint sets over dense indexes 0 .. size()-1, union by size with path compression, so find is
+ * close to O(1). parent[x] == x for the root of each set, and size[root] is the size of its set.
+*/
+public class UnionFind {
+
+    private int[] parent;
+    private int[] size;
+    private int count; // number of indexes
+    private int sets; // number of separate sets
+
+    public UnionFind(int capacity){
+        parent = new int[Math.max(1, capacity)];
+        size = new int[parent.length];
+    }
+
+    // Adds a new index in a set of its own and returns it
+    public int add(){
+        if(count == parent.length){
+            parent = Arrays.copyOf(parent, count * 2);
+            size = Arrays.copyOf(size, count * 2);
+        }
+        parent[count] = count;
+        size[count] = 1;
+        sets++;
+        return count++;
+    }
+
+    // Root of the set holding x
+    public int find(int x){
+        int root = x;
+        while(parent[root] != root) root = parent[root];
+
+        while(parent[x] != root){ // point everything on the way straight at the root
+            int next = parent[x];
+            parent[x] = root;
+            x = next;
+        }
+        return root;
+    }
+
+    /**
+     * Joins the sets holding a and b
+     *
+     * @return TRUE if they were in different sets, FALSE if already joined
+     */
+    public boolean union(int a, int b){
+        int ra = find(a), rb = find(b);
+        if(ra == rb) return false;
+
+        if(size[ra] < size[rb]){ // smaller set goes under the bigger one
+            int tmp = ra;
+            ra = rb;
+            rb = tmp;
+        }
+        parent[rb] = ra;
+        size[ra] += size[rb];
+        sets--;
+        return true;
+    }
+
+    public boolean connected(int a, int b){
+        return find(a) == find(b);
+    }
+
+    // Size of the set holding x
+    public int sizeOf(int x){
+        return size[find(x)];
+    }
+
+    // Puts every index back in a set of its own, keeping the first n
+    public void reset(int n){
+        count = 0;
+        sets = 0;
+        for(int i = 0; i < n; i++) add();
+    }
+
+    public int size(){
+        return count;
+    }
+
+    public int sets(){
+        return sets;
+    }
+
+}
@@ -0,0 +1,64 @@
+package utils;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Splits a range of indexes into chunks and runs them across all cores using the common fork-join pool.
+*/
+public final class Parallel {
+
+    // Work done on one chunk of the range, from inclusive, to exclusive
+    public interface RangeTask {
+        void run(int from, int to);
+    }
+
+    private Parallel() {
+    }
+
+    public static int threads() {
+        return ForkJoinPool.commonPool().getParallelism();
+    }
+
+    /**
+     * Runs task over [from, to), split into chunks no smaller than grain. Small
+     * ranges just run on the calling thread
+     *
+     * @param from  First index, inclusive
+     * @param to    Last index, exclusive
+     * @param grain Smallest chunk worth handing to another thread
+     * @param task  The work for one chunk
+     */
+    public static void forRange(int from, int to, int grain, RangeTask task) {
+        if (to - from <= Math.max(1, grain) || threads() <= 1) {
+            if (to > from) task.run(from, to);
+            return;
+        }
+        ForkJoinPool.commonPool().invoke(new RangeAction(from, to, Math.max(1, grain), task));
+    }
+
+    private static class RangeAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from, to, grain;
+        private final RangeTask task;
+
+        RangeAction(int from, int to, int grain, RangeTask task) {
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.task = task;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                task.run(from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new RangeAction(from, mid, grain, task), new RangeAction(mid, to, grain, task));
+        }
+    }
+
+}
@@ -1,4 +1,7 @@
 import stores.*;
+import structures.HopDistances;
+import structures.LandmarkIndex;
+import structures.MyGraph;
 import java.util.Calendar;
 import java.util.Arrays;
 
@@ -100,6 +103,16 @@ public class CreditsTest {
         return timestamp;
     }
 
+    // Woody and Buzz share film 301, Buzz and Isastar film 302, and Notastar is on their own in 303
+    Credits chainCredits(){
+        Credits chainCredits = new Credits();
+        Crew[] tmpCrew = {johnLasseter};
+        chainCredits.add(new Cast[]{woody, buzz}, tmpCrew, 301);
+        chainCredits.add(new Cast[]{buzz, isastar}, tmpCrew, 302);
+        chainCredits.add(new Cast[]{notastar}, tmpCrew, 303);
+        return chainCredits;
+    }
+
     /**
      * Checks that the cast for film id 201 is the same using compareTo
      */
@@ -113,6 +126,28 @@ public class CreditsTest {
 
     }
 
+    /**
+     * The same person in two films keeps one name but their own character and order in each.
+     */
+    @Test void testGetCastRoles(){
+        System.out.println("\nStarting testGetCastRoles...");
+
+        Credits roleCredits = new Credits();
+        Crew[] tmpCrew = {johnLasseter};
+        Cast woodyAgain = new Cast(5, "Woody(Voice) again", "5", 2, 1, "Tom Hanks", 4, "Woody profilepath");
+        roleCredits.add(new Cast[]{woody, buzz}, tmpCrew, 301);
+        roleCredits.add(new Cast[]{woodyAgain}, tmpCrew, 302);
+
+        assertArrayEquals(new Cast[]{woody, buzz}, roleCredits.getCast(301), "Incorrect cast for the first film.");
+        assertArrayEquals(new Cast[]{woodyAgain}, roleCredits.getCast(302), "Incorrect cast for the second film.");
+        assertEquals("Woody(Voice) again", roleCredits.getCast(302)[0].getCharacter(), "Character should be kept per film.");
+        assertEquals("Tom Hanks", roleCredits.getCastName(1), "Incorrect name returned.");
+        assertArrayEquals(tmpCrew, roleCredits.getCrew(302), "Incorrect crew returned.");
+
+        roleCredits.remove(301);
+        assertArrayEquals(new Cast[]{woodyAgain}, roleCredits.findCast("hanks"), "Should find the credit from the film left.");
+    }
+
     /**
      * Should return null for a not existent ID.
      */
@@ -468,6 +503,213 @@ public class CreditsTest {
         assertArrayEquals(tmpSuperStarCast, superStarCast, "Incorrect values returned.");
     }
 
+    /**
+     * Stars 1 and 3 are only linked through 2, who isn't a star, so each is within 2 hops of one other
+     * star at first. A film putting 5 next to 2 gives 1 and 3 a second. Should hold frozen or not.
+     */
+    @Test void testSuperStarsThroughIntermediary(){
+        System.out.println("\nStarting testSuperStarsThroughIntermediary...");
+
+        MyGraph graph = new MyGraph();
+        graph.addFilm(301, new int[]{1, 2});
+        graph.addFilm(302, new int[]{2, 3});
+        graph.addFilm(303, new int[]{3, 4});
+        assertArrayEquals(new int[]{3}, graph.withTwoCloseOthers(new int[]{1, 3, 4}), "Only 3 is within 2 hops of two stars.");
+
+        graph.addFilm(304, new int[]{2, 5});
+        assertArrayEquals(new int[]{1, 3, 5}, graph.withTwoCloseOthers(new int[]{1, 3, 4, 5}), "Stars linked through 2 should count.");
+
+        graph.freeze();
+        assertArrayEquals(new int[]{1, 3, 5}, graph.withTwoCloseOthers(new int[]{1, 3, 4, 5}), "Incorrect superstars after freezing.");
+    }
+
+    /**
+     * A star listed twice counts as two other stars for everyone close to them, but never for themselves.
+     */
+    @Test void testSuperStarsListedTwice(){
+        System.out.println("\nStarting testSuperStarsListedTwice...");
+
+        MyGraph graph = new MyGraph();
+        graph.addFilm(301, new int[]{1, 2});
+        graph.addFilm(302, new int[]{2, 3});
+        assertArrayEquals(new int[]{3}, graph.withTwoCloseOthers(new int[]{1, 3, 1}), "3 should count both copies of 1.");
+        assertArrayEquals(new int[]{1, 3, 1, 3}, graph.withTwoCloseOthers(new int[]{1, 3, 1, 3}), "Each copy should be returned.");
+        assertArrayEquals(new int[0], graph.withTwoCloseOthers(new int[]{1, 1, 4}), "A star shouldn't count their own copy.");
+    }
+
+    /**
+     * Everyone in a film with two or more other stars is a superstar, but two stars sharing a film are not.
+     */
+    @Test void testSuperStarsSharingFilm(){
+        System.out.println("\nStarting testSuperStarsSharingFilm...");
+
+        MyGraph graph = new MyGraph();
+        graph.addFilm(301, new int[]{1, 2, 3, 4});
+        graph.addFilm(302, new int[]{5, 6});
+        assertArrayEquals(new int[]{1, 3, 4}, graph.withTwoCloseOthers(new int[]{1, 3, 4, 5}), "Three stars in one film should all be superstars.");
+        assertArrayEquals(new int[0], graph.withTwoCloseOthers(new int[]{1, 3, 5, 6}), "Pairs of stars should not be superstars.");
+        assertArrayEquals(new int[0], graph.withTwoCloseOthers(new int[0]), "No stars should give no superstars.");
+    }
+
+    /**
+     * Woody and Isastar are linked through Buzz, removing the film Buzz and Isastar share breaks the link.
+     */
+    @Test void testFindDistance(){
+        System.out.println("\nStarting testFindDistance...");
+
+        Credits chainCredits = new Credits();
+        Crew[] tmpCrew = {johnLasseter};
+        chainCredits.add(new Cast[]{woody, buzz}, tmpCrew, 301);
+        chainCredits.add(new Cast[]{buzz, isastar, buzz}, tmpCrew, 302);
+        chainCredits.add(new Cast[]{notastar}, tmpCrew, 303);
+
+        assertArrayEquals(new int[]{2, 3}, chainCredits.findDistance(1, 3), "Incorrect path returned.");
+        assertArrayEquals(new int[]{1}, chainCredits.findDistance(1, 1), "Path to self should only hold the end.");
+        assertArrayEquals(new int[0], chainCredits.findDistance(1, 4), "Unconnected cast should return an empty array.");
+
+        chainCredits.remove(302);
+        assertArrayEquals(new int[0], chainCredits.findDistance(1, 3), "Removed film should no longer link its cast.");
+
+        // Frozen graph should give the same answers, with later edits still seen
+        chainCredits.freezeGraph();
+        assertArrayEquals(new int[]{2}, chainCredits.findDistance(1, 2), "Incorrect path returned after freezing.");
+        assertArrayEquals(new int[0], chainCredits.findDistance(1, 3), "Removed film should stay removed after freezing.");
+
+        chainCredits.add(new Cast[]{isastar, notastar}, tmpCrew, 304);
+        chainCredits.add(new Cast[]{buzz, notastar}, tmpCrew, 305);
+        assertArrayEquals(new int[]{2, 4, 3}, chainCredits.findDistance(1, 3), "Films added after freezing should be linked.");
+
+        chainCredits.remove(301);
+        assertArrayEquals(new int[0], chainCredits.findDistance(1, 3), "Frozen film removed after freezing should no longer link its cast.");
+    }
+
+    /**
+     * Woody -> Buzz -> Isastar is a chain of 2, Notastar is on their own, the bounds should hold both.
+     */
+    @Test void testCastDistanceBounds(){
+        System.out.println("\nStarting testCastDistanceBounds...");
+
+        Credits chainCredits = chainCredits();
+        chainCredits.freezeGraph();
+
+        assertTrue(chainCredits.castDistanceLowerBound(1, 3) <= 2, "Lower bound is above the real distance.");
+        assertTrue(chainCredits.castDistanceUpperBound(1, 3) >= 2, "Upper bound is below the real distance.");
+        assertEquals(LandmarkIndex.UNREACHABLE, chainCredits.castDistanceLowerBound(1, 4), "Cast in different components should be unreachable.");
+        assertArrayEquals(new int[0], chainCredits.findDistance(1, 4), "Unconnected cast should return an empty array.");
+
+        // Bounds shouldn't be trusted once the graph changes
+        chainCredits.add(new Cast[]{woody, notastar}, new Crew[]{johnLasseter}, 304);
+        assertEquals(0, chainCredits.castDistanceLowerBound(1, 4), "Lower bound should be 0 after the graph changes.");
+        assertArrayEquals(new int[]{4}, chainCredits.findDistance(1, 4), "Incorrect path returned after the graph changed.");
+    }
+
+    /**
+     * The star index should follow films crossing an average of 4 and credits being added or removed.
+     */
+    @Test void testTrackStars(){
+        System.out.println("\nStarting testTrackStars...");
+
+        Ratings trackedRatings = new Ratings();
+        Credits trackedCredits = new Credits();
+        Crew[] tmpCrew = {johnLasseter};
+        Cast[] tmpCast = {woody, buzz};
+        for(int id = 301; id <= 303; id++){
+            trackedCredits.add(tmpCast, tmpCrew, id);
+            trackedRatings.add(1, id, 4.5f, calendarYear(2000));
+        }
+        trackedCredits.trackStars(trackedRatings);
+
+        int[] stars = trackedCredits.findStarCastID(trackedRatings);
+        Arrays.sort(stars);
+        assertArrayEquals(new int[]{1, 2}, stars, "Incorrect stars after building the index.");
+
+        // Film 303's average drops below 4
+        trackedRatings.add(2, 303, 1.0f, calendarYear(2001));
+        assertArrayEquals(new int[0], trackedCredits.findStarCastID(trackedRatings), "Stars should drop out when a film's average falls.");
+
+        // A new highly rated film for Woody only
+        trackedRatings.add(1, 304, 5.0f, calendarYear(2000));
+        trackedCredits.add(new Cast[]{woody}, tmpCrew, 304);
+        assertArrayEquals(new int[]{1}, trackedCredits.findStarCastID(trackedRatings), "Adding credits should update the stars.");
+
+        trackedCredits.remove(304);
+        assertArrayEquals(new int[0], trackedCredits.findStarCastID(trackedRatings), "Removing credits should update the stars.");
+
+        // Woody is back to three highly rated films, then a fourth where he has two roles
+        trackedRatings.add(1, 305, 5.0f, calendarYear(2000));
+        trackedCredits.add(new Cast[]{woody}, tmpCrew, 305);
+        Cast woodyAgain = new Cast(5, "Woody(Voice) again", "5", 2, 1, "Tom Hanks", 4, "Woody profilepath");
+        trackedRatings.add(1, 306, 5.0f, calendarYear(2000));
+        trackedCredits.add(new Cast[]{woody, woodyAgain}, tmpCrew, 306);
+        assertArrayEquals(new int[]{1}, trackedCredits.findStarCastID(trackedRatings), "Incorrect stars with two roles in one film.");
+
+        // Removing it takes one film off Woody's count, not one per role
+        trackedCredits.remove(306);
+        assertArrayEquals(new int[]{1}, trackedCredits.findStarCastID(trackedRatings), "Removing a film with two roles should only count it once.");
+    }
+
+    /**
+     * Woody, Buzz and Isastar form one group and Notastar another, until Isastar's only film is removed.
+     */
+    @Test void testCastComponents(){
+        System.out.println("\nStarting testCastComponents...");
+
+        Credits chainCredits = chainCredits();
+
+        assertEquals(2, chainCredits.getCastComponentCount(), "Incorrect number of groups.");
+        assertArrayEquals(new int[]{3, 1}, chainCredits.getCastComponentSizes(), "Incorrect group sizes.");
+        assertEquals(3, chainCredits.getCastComponentSize(1), "Incorrect group size for Woody.");
+
+        // Isastar is in no films after this, so isn't in any group
+        chainCredits.remove(302);
+        assertEquals(2, chainCredits.getCastComponentCount(), "Incorrect number of groups after removal.");
+        assertArrayEquals(new int[]{2, 1}, chainCredits.getCastComponentSizes(), "Incorrect group sizes after removal.");
+        assertEquals(0, chainCredits.getCastComponentSize(3), "Cast in no films should be in no group.");
+        assertArrayEquals(new int[0], chainCredits.findDistance(1, 3), "Cast in different groups should return an empty array.");
+        assertEquals(0, chainCredits.getCastComponentSize(1000), "Unknown cast should be in no group.");
+    }
+
+    /**
+     * From Woody, Buzz is 1 hop away and Isastar 2, Notastar can't be reached.
+     */
+    @Test void testGetCastDistances(){
+        System.out.println("\nStarting testGetCastDistances...");
+
+        Credits chainCredits = chainCredits();
+
+        HopDistances distances = chainCredits.getCastDistances(1);
+        assertArrayEquals(new int[]{1, 1, 1}, distances.getHistogram(), "Incorrect number of cast at each level.");
+        assertArrayEquals(new int[]{3}, distances.getLevel(2), "Incorrect cast 2 hops away.");
+        assertEquals(3, distances.numReached(), "Notastar shouldn't be reached.");
+        assertArrayEquals(new int[]{2}, chainCredits.getCastWithinHops(1, 1), "Incorrect cast within 1 hop.");
+        assertArrayEquals(new int[]{2, 3}, chainCredits.getCastWithinHops(1, 5), "Incorrect cast within 5 hops.");
+        assertNull(chainCredits.getCastDistances(1000), "Should return null for a not existent ID.");
+
+        // Connected pairs are 1 or 2 apart, so the average has to lie between
+        double average = chainCredits.getAverageSeparation(20);
+        assertTrue(average >= 1 && average <= 2, "Average separation out of range.");
+    }
+
+    /**
+     * Repeated and reversed queries should come from the cache, and adding a film should stop old paths being used.
+     */
+    @Test void testFindDistanceCache(){
+        System.out.println("\nStarting testFindDistanceCache...");
+
+        Credits chainCredits = chainCredits();
+        Crew[] tmpCrew = {johnLasseter};
+        chainCredits.add(new Cast[]{isastar, notastar}, tmpCrew, 305);
+
+        int[] first = chainCredits.findDistance(1, 4);
+        assertArrayEquals(new int[]{2, 3, 4}, first, "Incorrect path returned.");
+        assertSame(first, chainCredits.findDistance(1, 4), "Repeated query should return the cached path.");
+        assertArrayEquals(new int[]{3, 2, 1}, chainCredits.findDistance(4, 1), "Incorrect reversed path returned.");
+
+        chainCredits.add(new Cast[]{woody, notastar}, tmpCrew, 304);
+        assertArrayEquals(new int[]{4}, chainCredits.findDistance(1, 4), "Cached path should not be used after the credits change.");
+        assertArrayEquals(new int[]{1}, chainCredits.findDistance(4, 1), "Cached reversed path should not be used after the credits change.");
+    }
+
     /**
      * Should return empty array since there are no credits.
      */
@@ -0,0 +1,54 @@
+import structures.HashMap;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class HashMapTest {
+
+    @Test
+    void testRemoveThenSet(){
+        HashMap<Integer, String> map = new HashMap<>();
+        map.put(1, "a");
+        map.put(2, "b");
+
+        assertTrue(map.remove(1));
+        assertFalse(map.containsKey(1), "Removed key is still in the map");
+        assertNull(map.get(1));
+        assertEquals(1, map.size());
+
+        map.put(1, "c");
+        assertTrue(map.containsKey(1));
+        assertEquals("c", map.get(1));
+        assertEquals(2, map.size(), "Re-set key was not counted again");
+
+        map.put(1, "d");
+        assertEquals("d", map.get(1));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    void testSetInLongBucket(){
+        HashMap<Integer, Integer> map = new HashMap<>();
+
+        // the map has 16 buckets, so every multiple of 16 lands in the same one, newest first
+        int n = 20;
+        for(int i = 0; i < n; i++){
+            map.put(i * 16, i);
+        }
+        assertEquals(n, map.size());
+
+        // key 0 is the oldest, so it's past the first 16 entries of its bucket
+        map.put(0, -1);
+        assertEquals(n, map.size(), "Setting an existing key added a duplicate");
+        assertEquals(Integer.valueOf(-1), map.get(0));
+
+        map.remove(0);
+        assertFalse(map.containsKey(0));
+        assertEquals(n - 1, map.size());
+        for(int i = 1; i < n; i++){
+            assertEquals(Integer.valueOf(i), map.get(i * 16));
+        }
+    }
+
+}
@@ -0,0 +1,88 @@
+import stores.Ratings;
+import java.util.Calendar;
+
+/*
+ * Times adding ratings to a Ratings store from several threads at once, to see how ingest scales
+ * with cores. Run main for a table of throughput against thread count, e.g.
+ *   java IngestBenchmark 1000000
+*/
+public class IngestBenchmark {
+
+    /**
+     * Adds the ratings to a store from several threads at once, each thread adding
+     * an even share in a block of its own
+     *
+     * @param store      The store to add to, concurrent if threads is more than 1
+     * @param threads    Number of threads adding at once
+     * @param userIDs    The user ID of each rating
+     * @param movieIDs   The movie ID of each rating
+     * @param ratings    Each rating
+     * @param timestamps The time each rating was made
+     * @return Ratings added per second, across all threads
+     */
+    public static double ratingsPerSecond(Ratings store, int threads, int[] userIDs, int[] movieIDs, float[] ratings, Calendar[] timestamps) {
+        int n = Math.min(Math.min(userIDs.length, movieIDs.length), Math.min(ratings.length, timestamps.length));
+        int numThreads = Math.max(1, Math.min(threads, n));
+
+        Thread[] workers = new Thread[numThreads];
+        for(int t = 0; t < numThreads; t++){
+            int from = (int)((long)t * n / numThreads);
+            int to = (int)((long)(t + 1) * n / numThreads);
+            workers[t] = new Thread(() -> {
+                for(int i = from; i < to; i++){
+                    store.add(userIDs[i], movieIDs[i], ratings[i], timestamps[i]);
+                }
+            });
+        }
+
+        long start = System.nanoTime();
+        for(int t = 0; t < numThreads; t++) workers[t].start();
+        try {
+            for(int t = 0; t < numThreads; t++) workers[t].join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return seconds > 0 ? n / seconds : 0;
+    }
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int users = Math.max(1, n / 40);
+        int movies = Math.max(1, n / 50);
+
+        // Every (user, movie) pair below is different as long as n <= users * movies
+        int[] userIDs = new int[n];
+        int[] movieIDs = new int[n];
+        float[] values = new float[n];
+        Calendar[] timestamps = new Calendar[n];
+        Calendar[] days = new Calendar[365];
+        for(int d = 0; d < days.length; d++){
+            days[d] = Calendar.getInstance();
+            days[d].clear();
+            days[d].set(2020, Calendar.JANUARY, 1);
+            days[d].add(Calendar.DAY_OF_MONTH, d);
+        }
+        long pairs = (long)users * movies;
+        for(int i = 0; i < n; i++){
+            long pair = (long)i * 1000003 % pairs;
+            userIDs[i] = (int)(pair % users);
+            movieIDs[i] = (int)(pair / users);
+            values[i] = (i % 11) * 0.5f;
+            timestamps[i] = days[i % days.length];
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println(n + " ratings, " + cores + " cores");
+        System.out.println("unlocked, 1 thread: " + (long)ratingsPerSecond(new Ratings(), 1, userIDs, movieIDs, values, timestamps) + " ratings/s");
+
+        double base = 0;
+        for(int threads = 1; threads <= Math.max(8, cores * 2); threads *= 2){
+            double rate = ratingsPerSecond(new Ratings(true), threads, userIDs, movieIDs, values, timestamps);
+            if(threads == 1) base = rate;
+            System.out.println("concurrent, " + threads + " threads: " + (long)rate + " ratings/s (" + String.format("%.2f", rate / base) + "x)");
+        }
+    }
+
+}
@@ -1,4 +1,7 @@
 import stores.*;
+import structures.KllSketch;
+import structures.PackedRatings;
+import structures.SparseRatingMatrix;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.Calendar;
@@ -283,6 +286,31 @@ public class RatingsTest {
 
 
 
+    /**
+     * A batch should give each film the same ratings as asking for it on its own.
+     * 201 has 3.5, 4.4, 1.3 and 2.2 between 2000 and 2014, 202 has 4.5, 2.3 and
+     * 3.2, and the non existent film has none.
+     */
+    @Test void testGetMovieRatingsBetweenBatch(){
+        System.out.println("\nStarting testGetMovieRatingsBetweenBatch...");
+
+        Calendar after = calendarYear(2000);
+        Calendar before = calendarYear(2014);
+        int[] movieIDs = {201, fakeMovieID, 202};
+
+        PackedRatings batch = ratings.getMovieRatingsBetween(movieIDs, after, before);
+        assertEquals(7, batch.size(), "Incorrect number of ratings in the batch.");
+        assertArrayEquals(ratings.getMovieRatingsBetween(201, after, before), batch.getRatings(0), "Batch should match a single query.");
+        assertArrayEquals(new float[0], batch.getRatings(1), "Non existent ID should have no ratings.");
+        assertArrayEquals(ratings.getMovieRatingsBetween(202, after, before), batch.getRatings(2), "Batch should match a single query.");
+
+        PackedRatings summary = ratings.getMovieRatingSummariesBetween(movieIDs, after, before);
+        assertFalse(summary.hasValues(), "Summary should not copy the ratings.");
+        assertEquals(4, summary.getCount(0), "Incorrect count.");
+        assertEquals(10f / 3, summary.getMean(2), 0.001f, "Incorrect mean.");
+        assertEquals(0f, summary.getMean(1), "Non existent ID should have a mean of 0.");
+    }
+
     /**
      * One rating between 2000 and 2004 for 103, this is 1.3.
      */
@@ -304,6 +332,442 @@ public class RatingsTest {
         assertArrayEquals(new float[0], ratings.getUserRatingsBetween(103, after, after), "Returning values for date range of 0.");
     }
 
+    /**
+     * Movie 201 has 5 ratings, fake ID should have none.
+     */
+    @Test void testGetMovieRatingCount(){
+        System.out.println("\nStarting testGetMovieRatingCount...");
+
+        assertEquals(5, ratings.getMovieRatingCount(201), "Incorrect count given.");
+        assertEquals(0, ratings.getMovieRatingCount(fakeMovieID), "Value should be 0 when no ratings present.");
+    }
+
+    /**
+     * Ratings for 201 round to the 0, 1.5, 2, 3.5 and 4.5 buckets.
+     */
+    @Test void testGetMovieRatingHistogram(){
+        System.out.println("\nStarting testGetMovieRatingHistogram...");
+
+        int[] tmpHistogram = {1, 0, 0, 1, 1, 0, 0, 1, 0, 1, 0};
+
+        assertArrayEquals(tmpHistogram, ratings.getMovieRatingHistogram(201), "Incorrect histogram returned.");
+    }
+
+    /**
+     * Median of 201 is 2.2, which is in the 2.0 bucket.
+     */
+    @Test void testGetMovieRatingMedian(){
+        System.out.println("\nStarting testGetMovieRatingMedian...");
+
+        assertEquals(2.0f, ratings.getMovieRatingMedian(201), "Incorrect median given.");
+        assertEquals(0.0f, ratings.getMovieRatingMedian(fakeMovieID), "Value should be 0.0 when no ratings present.");
+    }
+
+    /**
+     * With the default prior 205 (one 4.1) ranks first, but needs at least 2 votes.
+     * So the top 3 with 2 or more votes are 204, 203, 202.
+     */
+    @Test void testGetTopRatedMovies(){
+        System.out.println("\nStarting testGetTopRatedMovies...");
+
+        int[] tmpTopRated = {204, 203, 202};
+
+        assertEquals(205, ratings.getTopRatedMovies(1, 0)[0], "Incorrect top film returned.");
+        assertArrayEquals(tmpTopRated, ratings.getTopRatedMovies(3, 2), "Incorrect values returned.");
+    }
+
+    /**
+     * 1 rating in 2009, none from 2010 to 2012, and 5 in 2013.
+     */
+    @Test void testGetRatingCountsPerYear(){
+        System.out.println("\nStarting testGetRatingCountsPerYear...");
+
+        int[] tmpCounts = {1, 0, 0, 0, 5};
+
+        assertArrayEquals(tmpCounts, ratings.getRatingCountsPer(Ratings.YEAR, calendarYear(2009), calendarYear(2013)), "Incorrect values returned.");
+    }
+
+    /**
+     * Movie 201 has 2.2 in 2001 and 1.3 in 2003 between 2000 and 2004.
+     */
+    @Test void testGetMovieRatingTotals(){
+        System.out.println("\nStarting testGetMovieRatingTotals...");
+
+        double[] totals = ratings.getMovieRatingTotals(201, Ratings.YEAR, calendarYear(2000), calendarYear(2004));
+
+        assertEquals(2.0, totals[0], "Incorrect count given.");
+        assertEquals(3.5, totals[1], 0.0001, "Incorrect sum given.");
+    }
+
+    /**
+     * 201 has two of the five 2013 ratings so is trending most in 2013.
+     * Ten years later nothing should be trending.
+     */
+    @Test void testGetTrendingMovies(){
+        System.out.println("\nStarting testGetTrendingMovies...");
+
+        long in2013 = calendarYear(2013).getTimeInMillis() / 1000 + 60;
+        long in2023 = calendarYear(2023).getTimeInMillis() / 1000;
+
+        assertEquals(201, ratings.getTrendingMovies(1, in2013)[0], "Incorrect trending film returned.");
+        assertArrayEquals(new int[0], ratings.getTrendingMovies(5, in2023), "Nothing should be trending after 10 years.");
+    }
+
+    /**
+     * User 103 rated 201 to 204, and 203 was rated by 101, 102 and 103.
+     */
+    @Test void testToSparseMatrix(){
+        System.out.println("\nStarting testToSparseMatrix...");
+
+        SparseRatingMatrix matrix = ratings.toSparseMatrix();
+
+        assertEquals(15, matrix.size(), "Incorrect number of ratings.");
+        assertArrayEquals(new int[]{201, 202, 203, 204}, matrix.getUserMovieIDs(103), "Incorrect movies for user.");
+        assertArrayEquals(new float[]{1.3f, 2.3f, 3.3f, 4.3f}, matrix.getUserRatings(103), "Incorrect ratings for user.");
+        assertArrayEquals(new int[]{101, 102, 103}, matrix.getMovieUserIDs(203), "Incorrect users for movie.");
+        assertArrayEquals(new int[0], matrix.getUserMovieIDs(fakeUserID), "Non existent ID should return empty array.");
+    }
+
+    /**
+     * User 102 rated 2.2, 3.2 and 4.2, so their mean is 3.2 and their standard
+     * deviation is sqrt(2/3). The cached values should be dropped when the user
+     * rates another film.
+     */
+    @Test void testGetUserZScores(){
+        System.out.println("\nStarting testGetUserZScores...");
+
+        float z = (float)(1 / Math.sqrt(2.0 / 3));
+        assertArrayEquals(new float[]{-1f, 0f, 1f}, ratings.getUserCentredRatings(102), 1e-5f, "Incorrect centred ratings.");
+        assertArrayEquals(new float[]{-z, 0f, z}, ratings.getUserZScores(102), 1e-5f, "Incorrect z-scores.");
+        assertArrayEquals(new float[]{0f}, ratings.getUserZScores(104), "Single rating should have a z-score of 0.");
+        assertArrayEquals(new float[0], ratings.getUserZScores(fakeUserID), "Non existent ID should return empty array.");
+
+        // Separate store so the shared ratings aren't changed
+        Ratings copy = new Ratings();
+        copy.add(1, 1, 2.0f, calendarYear(2000));
+        copy.add(1, 2, 4.0f, calendarYear(2001));
+        assertArrayEquals(new float[]{-1f, 1f}, copy.getUserZScores(1), 1e-5f, "Incorrect z-scores.");
+        copy.add(1, 3, 3.0f, calendarYear(2002));
+        assertArrayEquals(new float[]{-1f, 1f, 0f}, copy.getUserCentredRatings(1), 1e-5f, "Cache should be dropped after a new rating.");
+        assertArrayEquals(new float[]{-1f}, copy.getMovieCentredRatings(1), 1e-5f, "Incorrect centred film ratings.");
+    }
+
+    /**
+     * Every user rates the films in ID order, so 204 is most like its neighbours 203
+     * (two users) and 205 (one user) and unlike 201 and 202. After a new user rates
+     * 201, 204 and 205, and then changes their rating of 201, the incrementally
+     * updated answer for every film should match a full build.
+     */
+    @Test void testGetSimilarMovies(){
+        System.out.println("\nStarting testGetSimilarMovies...");
+
+        ItemSimilarity similarity = new ItemSimilarity(ratings);
+        assertArrayEquals(new int[]{203, 205}, similarity.getSimilarMovies(204, 5), "Incorrect similar films returned.");
+        assertArrayEquals(new int[]{203}, similarity.getSimilarMovies(204, 1), "Should return no more than num films.");
+        assertArrayEquals(new int[0], similarity.getSimilarMovies(fakeMovieID, 5), "Non existent ID should return empty array.");
+
+        // Separate store so the shared ratings aren't changed
+        Ratings copy = new Ratings();
+        SparseRatingMatrix matrix = ratings.toSparseMatrix();
+        for(int u = 101; u <= 105; u++){
+            int[] movieIDs = matrix.getUserMovieIDs(u);
+            float[] values = matrix.getUserRatings(u);
+            for(int i = 0; i < movieIDs.length; i++){
+                copy.add(u, movieIDs[i], values[i], calendarYear(2000));
+            }
+        }
+        ItemSimilarity incremental = new ItemSimilarity(copy);
+        incremental.build();
+        copy.add(106, 201, 1.0f, calendarYear(2020));
+        incremental.ratingChanged(106, 201);
+        copy.add(106, 204, 5.0f, calendarYear(2020));
+        incremental.ratingChanged(106, 204);
+        copy.add(106, 205, 5.0f, calendarYear(2020));
+        incremental.ratingChanged(106, 205);
+
+        // 106's average moves, which changes 204 and 205 for films that list them
+        copy.set(106, 201, 3.0f, calendarYear(2021));
+        incremental.ratingChanged(106, 201);
+        incremental.waitForUpdates();
+        assertSameSimilarities(new ItemSimilarity(copy), incremental, copy.getTopMovies(copy.size()));
+
+        // Larger store where an update only reaches some of the films
+        Ratings sparse = new Ratings();
+        for(int u = 0; u < 60; u++){
+            for(int i = 0; i < 4; i++){
+                sparse.add(u, 1000 + (u * 7 + i * 3) % 80, 1.0f + (u * 13 + i * 5) % 9 * 0.5f, calendarYear(2000));
+            }
+        }
+        ItemSimilarity partial = new ItemSimilarity(sparse, 5);
+        partial.build();
+        sparse.addChangeListener(partial);
+        sparse.set(3, 1000 + 21 % 80, 5.0f, calendarYear(2001));
+        sparse.add(3, 1079, 0.5f, calendarYear(2001));
+        sparse.remove(10, 1000 + 70 % 80);
+        sparse.flushChanges();
+        partial.waitForUpdates();
+        assertSameSimilarities(new ItemSimilarity(sparse, 5), partial, sparse.getTopMovies(sparse.size()));
+    }
+
+    // Every film's neighbours and scores should match between the two recommenders
+    private void assertSameSimilarities(ItemSimilarity expected, ItemSimilarity actual, int[] movieIDs){
+        for(int movieID : movieIDs){
+            assertArrayEquals(expected.getSimilarMovies(movieID, 20), actual.getSimilarMovies(movieID, 20), "Incremental update should match a full build for film " + movieID + ".");
+            assertArrayEquals(expected.getSimilarityScores(movieID, 20), actual.getSimilarityScores(movieID, 20), 1e-5f, "Incremental scores should match a full build for film " + movieID + ".");
+        }
+    }
+
+    /**
+     * User 103 rated 201 to 204, so 101 (Jaccard 0.8) and 102 (0.75) are most like
+     * them and 104 (0.25) least. A new user who rates exactly the same films should
+     * become the most similar once the index is told, and stop being identical
+     * once one of those ratings is removed.
+     */
+    @Test void testGetSimilarUsers(){
+        System.out.println("\nStarting testGetSimilarUsers...");
+
+        UserSimilarity similarity = new UserSimilarity(ratings, 64, 1, 126L);
+        int[] similar = similarity.getSimilarUsers(103, 5);
+        assertEquals(4, similar.length, "Every user shares a film with 103.");
+        assertTrue((similar[0] == 101 && similar[1] == 102) || (similar[0] == 102 && similar[1] == 101), "Incorrect most similar users.");
+        assertEquals(104, similar[3], "Incorrect least similar user.");
+        assertArrayEquals(new int[0], similarity.getSimilarUsers(fakeUserID, 5), "Non existent ID should return empty array.");
+        assertEquals(4, similarity.getSimilarUsers(103, Integer.MAX_VALUE).length, "Asking for more users than exist should return them all.");
+
+        // Separate store so the shared ratings aren't changed
+        Ratings copy = new Ratings();
+        for(int u = 101; u <= 105; u++){
+            int[] movieIDs = ratings.getUserMovieIDs(u);
+            for(int i = 0; i < movieIDs.length; i++){
+                copy.add(u, movieIDs[i], 3.0f, calendarYear(2000));
+            }
+        }
+        UserSimilarity incremental = new UserSimilarity(copy);
+        incremental.build();
+        for(int movieID = 201; movieID <= 204; movieID++){
+            copy.add(106, movieID, 3.0f, calendarYear(2020));
+            incremental.ratingChanged(106, movieID);
+        }
+        assertArrayEquals(new int[]{106}, incremental.getSimilarUsers(103, 1), "Identical user should be the most similar.");
+        assertEquals(1f, incremental.getEstimatedSimilarity(103, 106), "Identical users should have a similarity of 1.");
+
+        copy.remove(106, 204);
+        incremental.ratingChanged(106, 204);
+        assertTrue(incremental.getEstimatedSimilarity(103, 106) < 1f, "Removed rating should lower the similarity.");
+        assertTrue(incremental.benchmarkQueries(10, 5) >= 0, "Benchmark should time the queries.");
+    }
+
+    /**
+     * 201 was rated 0.1, 1.3, 2.2, 3.5 and 4.4, so the median is 2.2. The 2013
+     * ratings are 3.3, 3.5, 4.3, 4.4 and 4.5, so their median is 4.3. Both are
+     * small enough for the sketches to be exact. A sketch of a million values
+     * should stay within its error bound and be much smaller than the values.
+     */
+    @Test void testGetApproxRatingPercentile(){
+        System.out.println("\nStarting testGetApproxRatingPercentile...");
+
+        assertEquals(2.2f, ratings.getApproxMovieRatingPercentile(201, 50), "Incorrect median for film.");
+        assertEquals(4.3f, ratings.getApproxRatingPercentile(calendarYear(2013), calendarYear(2013), 50), "Incorrect median for 2013.");
+        assertEquals(0f, ratings.getApproxMovieRatingPercentile(fakeMovieID, 50), "Non existent ID should return 0.");
+        assertEquals(0.0, ratings.getMovieRatingSketch(201).getNormalizedRankError(), "Small sketch should be exact.");
+
+        KllSketch big = new KllSketch();
+        KllSketch other = new KllSketch();
+        for(int i = 0; i < 1000000; i++){
+            (i % 2 == 0 ? big : other).update(i);
+        }
+        big.merge(other);
+        double error = big.getNormalizedRankError();
+        assertTrue(error > 0 && error < 0.02, "Unexpected error bound.");
+        assertEquals(500000f, big.getPercentile(50), (float)(error * 1000000), "Median outside the error bound.");
+        assertEquals(900000f, big.getPercentile(90), (float)(error * 1000000), "90th percentile outside the error bound.");
+        assertTrue(big.getMemoryBytes() < 20000, "Sketch should be far smaller than the values.");
+    }
+
+    /**
+     * Users 103, 104 and 105 rated films 201 to 204 on the 2013 date. Over every
+     * year there are 5 users and 5 films.
+     */
+    @Test void testGetDistinctUsersBetween(){
+        System.out.println("\nStarting testGetDistinctUsersBetween...");
+
+        Calendar in2013 = calendarYear(2013);
+        Calendar weeksLater = calendarYear(2013);
+        weeksLater.add(Calendar.DAY_OF_MONTH, 20);
+
+        assertEquals(3, ratings.getDistinctUsersBetween(in2013, in2013), "Incorrect number of users on one day.");
+        assertEquals(4, ratings.getDistinctMoviesBetween(in2013, in2013), "Incorrect number of films on one day.");
+        assertEquals(5, ratings.getDistinctUsersBetween(calendarYear(1980), calendarYear(2020)), "Incorrect number of users over every year.");
+        assertEquals(5, ratings.getDistinctMoviesBetween(calendarYear(1980), calendarYear(2020)), "Incorrect number of films over every year.");
+        assertArrayEquals(new int[]{4, 0, 0}, ratings.getDistinctMoviesPer(Ratings.WEEK, in2013, weeksLater), "Incorrect weekly counts.");
+        assertArrayEquals(new int[]{3}, ratings.getDistinctUsersPer(Ratings.MONTH, in2013, in2013), "Incorrect monthly counts.");
+    }
+
+    /**
+     * Training should bring the error down, and user 101 rated 205 as 4.1 so the
+     * prediction should be close. User 104 only rated 201, so only the other four
+     * films can be recommended.
+     */
+    @Test void testMatrixFactorization(){
+        System.out.println("\nStarting testMatrixFactorization...");
+
+        MatrixFactorization model = new MatrixFactorization(ratings, 4, 0.05f, 0.01f, 126L);
+        assertEquals(0f, model.predict(101, 205), "Untrained model should predict 0.");
+
+        model.train(300);
+        float[] rmse = model.getEpochRMSE();
+        assertEquals(300, rmse.length, "Should have the RMSE of every epoch.");
+        assertTrue(rmse[rmse.length - 1] < rmse[0], "RMSE should fall while training.");
+        assertEquals(4.1f, model.predict(101, 205), 0.5f, "Prediction too far from the actual rating.");
+
+        int[] recommended = model.recommendForUser(104, 10);
+        assertEquals(4, recommended.length, "Should recommend every film not yet rated.");
+        for(int i = 0; i < recommended.length; i++){
+            assertNotEquals(201, recommended[i], "Should not recommend a film already rated.");
+        }
+        assertEquals(4, model.recommendForUser(104, Integer.MAX_VALUE).length, "Asking for more films than exist should return them all.");
+        assertArrayEquals(new int[0], model.recommendForUser(fakeUserID, 5), "Non existent ID should return empty array.");
+    }
+
+    /**
+     * A snapshot should keep showing the ratings as they were when it was taken,
+     * while a later snapshot sees every change since. Enough changes to force a
+     * compaction should still give the same view as the live store.
+     */
+    @Test void testSnapshot(){
+        System.out.println("\nStarting testSnapshot...");
+
+        // Separate store so the shared ratings aren't changed
+        Ratings copy = new Ratings();
+        copy.add(1, 1, 2.0f, calendarYear(2000));
+        copy.add(2, 1, 4.0f, calendarYear(2001));
+        copy.enableSnapshots();
+        copy.add(1, 2, 5.0f, calendarYear(2002));
+
+        RatingsSnapshot before = copy.snapshot();
+        copy.set(1, 1, 1.0f, calendarYear(2003));
+        copy.remove(2, 1);
+        RatingsSnapshot after = copy.snapshot();
+
+        assertEquals(3, before.size(), "Incorrect snapshot size.");
+        assertArrayEquals(new float[]{2.0f, 4.0f}, before.getMovieRatings(1), "Snapshot should not see later changes.");
+        assertEquals(3.0f, before.getMovieAverageRatings(1), "Incorrect snapshot average.");
+        assertEquals(2, after.size(), "Incorrect snapshot size.");
+        assertArrayEquals(new float[]{1.0f}, after.getMovieRatings(1), "Snapshot should see earlier changes.");
+        assertArrayEquals(new int[]{1, 2}, after.getUserMovieIDs(1), "Incorrect films for user.");
+        assertEquals(-1f, after.getRating(2, 1), "Removed rating should not be found.");
+        assertEquals(3, after.getVersion(), "Version should count the changes.");
+
+        for(int i = 0; i < 5000; i++){
+            copy.add(100 + i % 50, 10 + i / 50, (i % 11) * 0.5f, calendarYear(2010));
+        }
+        RatingsSnapshot compacted = copy.snapshot();
+        assertEquals(0, compacted.getChangeCount(), "Changes should have been merged into a new base.");
+        assertEquals(copy.size(), compacted.size(), "Compacted snapshot should match the store.");
+        assertArrayEquals(new float[]{1.0f, 5.0f}, compacted.getUserRatings(1), "Compacted snapshot should match the store.");
+        assertArrayEquals(new float[]{2.0f, 4.0f}, before.getMovieRatings(1), "Old snapshot should be unchanged.");
+    }
+
+    /**
+     * With a batch size of 3, the third change should deliver one batch listing
+     * film 1 once, and flushing should deliver the fourth. An item similarity
+     * index kept up to date through the listener should match a full build.
+     */
+    @Test void testChangeListener(){
+        System.out.println("\nStarting testChangeListener...");
+
+        // Separate store so the shared ratings aren't changed
+        Ratings copy = new Ratings();
+        int[][] lastBatch = new int[2][];
+        int[] batches = {0};
+        copy.addChangeListener((movieIDs, userIDs) -> {
+            lastBatch[0] = movieIDs;
+            lastBatch[1] = userIDs;
+            batches[0]++;
+        });
+        copy.setChangeBatchSize(3);
+
+        copy.add(1, 1, 2.0f, calendarYear(2000));
+        copy.add(2, 1, 4.0f, calendarYear(2000));
+        assertEquals(0, batches[0], "Should wait for a full batch.");
+        copy.set(1, 1, 3.0f, calendarYear(2001));
+        assertEquals(1, batches[0], "Full batch should be delivered.");
+        assertArrayEquals(new int[]{1}, lastBatch[0], "Changes to the same film should be coalesced.");
+        assertEquals(2, lastBatch[1].length, "Incorrect changed users.");
+
+        copy.remove(2, 1);
+        copy.flushChanges();
+        assertEquals(2, batches[0], "Flush should deliver the rest.");
+        assertArrayEquals(new int[]{2}, lastBatch[1], "Incorrect changed users.");
+        copy.flushChanges();
+        assertEquals(2, batches[0], "Nothing left to deliver.");
+
+        ItemSimilarity incremental = new ItemSimilarity(copy);
+        incremental.build();
+        copy.addChangeListener(incremental);
+        copy.add(1, 2, 5.0f, calendarYear(2002));
+        copy.add(3, 1, 1.0f, calendarYear(2002));
+        copy.add(3, 2, 2.0f, calendarYear(2002));
+        copy.flushChanges();
+        incremental.waitForUpdates();
+        assertSameSimilarities(new ItemSimilarity(copy), incremental, copy.getTopMovies(copy.size()));
+    }
+
+    /**
+     * The same 20000 ratings added by one thread and by several at once should give
+     * the same rankings, totals and sketches, as each stripe's share is merged on read.
+     */
+    @Test void testConcurrentIngest(){
+        System.out.println("\nStarting testConcurrentIngest...");
+
+        // 500 users and 400 films, 7919 is prime so every pair below is different
+        int n = 20000;
+        int[] userIDs = new int[n];
+        int[] movieIDs = new int[n];
+        float[] values = new float[n];
+        Calendar[] timestamps = new Calendar[n];
+        Calendar[] years = new Calendar[20];
+        for(int y = 0; y < years.length; y++){
+            years[y] = calendarYear(1995 + y);
+        }
+        for(int i = 0; i < n; i++){
+            int pair = (int)((long)i * 7919 % (500 * 400));
+            userIDs[i] = pair % 500;
+            movieIDs[i] = 1000 + pair / 500;
+            values[i] = (i % 11) * 0.5f;
+            timestamps[i] = years[i % years.length];
+        }
+
+        Ratings serial = new Ratings();
+        IngestBenchmark.ratingsPerSecond(serial, 1, userIDs, movieIDs, values, timestamps);
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        Ratings parallel = new Ratings(true);
+        double parallelRate = IngestBenchmark.ratingsPerSecond(parallel, threads, userIDs, movieIDs, values, timestamps);
+
+        assertTrue(parallelRate > 0, "Benchmark should time the ingest.");
+        assertEquals(n, parallel.size(), "Every rating should be added once.");
+        assertArrayEquals(serial.getTopMovies(50), parallel.getTopMovies(50), "Incorrect most rated films.");
+        assertArrayEquals(serial.getMostRatedUsers(50), parallel.getMostRatedUsers(50), "Incorrect most rated users.");
+        assertArrayEquals(serial.getRatingCountsPer(Ratings.YEAR, years[0], years[years.length - 1]),
+                parallel.getRatingCountsPer(Ratings.YEAR, years[0], years[years.length - 1]), "Incorrect counts per year.");
+        assertArrayEquals(serial.getRatingTotals(Ratings.MONTH, years[0], years[years.length - 1]),
+                parallel.getRatingTotals(Ratings.MONTH, years[0], years[years.length - 1]), 1e-6, "Incorrect totals.");
+        assertArrayEquals(serial.getTopRatedMovies(20, 1), parallel.getTopRatedMovies(20, 1), "Incorrect top rated films.");
+        assertEquals(serial.getDistinctUsersBetween(years[0], years[years.length - 1]),
+                parallel.getDistinctUsersBetween(years[0], years[years.length - 1]), "Merged stripes should count the same users.");
+        assertArrayEquals(serial.getDistinctMoviesPer(Ratings.MONTH, years[0], years[2]),
+                parallel.getDistinctMoviesPer(Ratings.MONTH, years[0], years[2]), "Merged stripes should count the same films.");
+        assertEquals(serial.getRatingSketch(years[0], years[years.length - 1]).size(),
+                parallel.getRatingSketch(years[0], years[years.length - 1]).size(), "Merged sketch should hold every rating.");
+        assertEquals(serial.getApproxRatingPercentile(years[0], years[years.length - 1], 50),
+                parallel.getApproxRatingPercentile(years[0], years[years.length - 1], 50), 0.5f, "Merged sketch should give about the same median.");
+
+        // The rollup copy readers were given should move on once more ratings arrive
+        int[] before = parallel.getRatingCountsPer(Ratings.YEAR, years[0], years[0]);
+        parallel.add(500, 1000, 4.0f, years[0]);
+        assertEquals(before[0] + 1, parallel.getRatingCountsPer(Ratings.YEAR, years[0], years[0])[0], "Rollup snapshot should see new ratings.");
+    }
+
     /**
      * Expects 15 as that is the number of ratings added.
      */